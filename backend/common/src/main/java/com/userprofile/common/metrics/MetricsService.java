@@ -1,6 +1,7 @@
 package com.userprofile.common.metrics;
 
 import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
 import io.micrometer.core.instrument.MeterRegistry;
 import io.micrometer.core.instrument.Timer;
 import lombok.RequiredArgsConstructor;
@@ -108,6 +109,43 @@ public class MetricsService {
                 .record(timeMillis, TimeUnit.MILLISECONDS);
     }
 
+    /**
+     * 记录批量写入
+     *
+     * @param operation 写入操作名称
+     * @param batchSize 本批次写入的文档数
+     * @param durationMs 本批次写入耗时（毫秒）
+     */
+    public void recordBatchWrite(String operation, int batchSize, long durationMs) {
+        DistributionSummary.builder("batch.write.size")
+                .description("Number of documents written per batch")
+                .tag("operation", operation)
+                .register(meterRegistry)
+                .record(batchSize);
+
+        Timer.builder("batch.write.duration")
+                .description("Batch write latency")
+                .tag("operation", operation)
+                .register(meterRegistry)
+                .record(durationMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 记录推荐策略耗时
+     *
+     * @param strategy 推荐策略名称
+     * @param outcome 执行结果（success、timeout、error、rejected）
+     * @param durationMs 耗时（毫秒）
+     */
+    public void recordRecommendationStrategy(String strategy, String outcome, long durationMs) {
+        Timer.builder("recommendation.strategy.latency")
+                .description("Recommendation strategy latency")
+                .tag("strategy", strategy)
+                .tag("outcome", outcome)
+                .register(meterRegistry)
+                .record(durationMs, TimeUnit.MILLISECONDS);
+    }
+
     /**
      * 记录缓存命中
      *
@@ -1,9 +1,11 @@
 package com.userprofile.profile;
 
+import com.userprofile.common.metrics.MetricsService;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
 import org.springframework.boot.autoconfigure.orm.jpa.HibernateJpaAutoConfiguration;
+import org.springframework.context.annotation.Import;
 import org.springframework.data.mongodb.repository.config.EnableMongoRepositories;
 import org.springframework.scheduling.annotation.EnableAsync;
 import org.springframework.scheduling.annotation.EnableScheduling;
@@ -11,6 +13,7 @@ import org.springframework.scheduling.annotation.EnableScheduling;
 /**
  * 画像服务启动类
  * 注意：此服务仅使用MongoDB，禁用JPA自动配置
+ * common模块不在组件扫描范围内，所需组件通过@Import显式引入
  */
 @SpringBootApplication(exclude = {
         DataSourceAutoConfiguration.class,
@@ -19,6 +22,7 @@ import org.springframework.scheduling.annotation.EnableScheduling;
 @EnableMongoRepositories
 @EnableScheduling
 @EnableAsync
+@Import(MetricsService.class)
 public class ProfileServiceApplication {
 
     public static void main(String[] args) {
@@ -0,0 +1,170 @@
+package com.userprofile.profile.analytics;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 用户行为洞察快照
+ * 一次读取用户行为数据后计算出的全部分析指标
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BehaviorInsights {
+
+    /**
+     * 用户ID
+     */
+    private Long userId;
+
+    /**
+     * 活跃度评分（0-100）
+     */
+    private double activityScore;
+
+    /**
+     * 兴趣偏好（品类 -> 0-1权重）
+     */
+    private Map<String, Double> interests;
+
+    /**
+     * RFM价值模型
+     */
+    private Rfm rfm;
+
+    /**
+     * 流失风险
+     */
+    private ChurnRisk churnRisk;
+
+    /**
+     * 购物漏斗（最近30天）
+     */
+    private Funnel funnel;
+
+    /**
+     * 购买转化率（最近90天，百分比）
+     */
+    private double conversionRate;
+
+    /**
+     * 快照生成时间
+     */
+    private LocalDateTime generatedAt;
+
+    /**
+     * RFM价值模型
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Rfm {
+        /**
+         * R评分（1-5，无购买为0）
+         */
+        private int recencyScore;
+
+        /**
+         * F评分（1-5，无购买为0）
+         */
+        private int frequencyScore;
+
+        /**
+         * M评分（1-5，无购买为0）
+         */
+        private int monetaryScore;
+
+        /**
+         * 综合评分
+         */
+        private int score;
+
+        /**
+         * 客户价值等级
+         */
+        private String level;
+
+        /**
+         * 最近购买距今天数（无购买为null）
+         */
+        private Long recencyDays;
+
+        /**
+         * 购买次数
+         */
+        private long frequency;
+
+        /**
+         * 购买总金额
+         */
+        private double totalAmount;
+    }
+
+    /**
+     * 流失风险
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class ChurnRisk {
+        /**
+         * 风险等级（高/中/低）
+         */
+        private String risk;
+
+        /**
+         * 风险评分
+         */
+        private int score;
+
+        /**
+         * 风险原因
+         */
+        private List<String> reasons;
+
+        /**
+         * 距最近活跃天数（无活跃记录为null）
+         */
+        private Long daysSinceActive;
+
+        /**
+         * 活跃度评分
+         */
+        private double activityScore;
+    }
+
+    /**
+     * 购物漏斗
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Funnel {
+        private long views;
+        private long addToCarts;
+        private long orders;
+        private long payments;
+
+        /**
+         * 浏览 -> 加购转化率（百分比）
+         */
+        private double viewToCartRate;
+
+        /**
+         * 加购 -> 下单转化率（百分比）
+         */
+        private double cartToOrderRate;
+
+        /**
+         * 下单 -> 支付转化率（百分比）
+         */
+        private double orderToPayRate;
+    }
+}
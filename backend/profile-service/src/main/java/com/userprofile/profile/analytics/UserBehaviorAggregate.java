@@ -0,0 +1,162 @@
+package com.userprofile.profile.analytics;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 用户行为聚合
+ * 每个用户一个文档，随事件写入增量更新，行为分析直接读取聚合结果而不再扫描原始事件
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "user_behavior_aggregates")
+public class UserBehaviorAggregate {
+
+    /**
+     * 按天分桶的key格式（yyyyMMdd）
+     */
+    public static final DateTimeFormatter DAY_FORMAT = DateTimeFormatter.BASIC_ISO_DATE;
+
+    /**
+     * 用户ID
+     */
+    @Id
+    private Long userId;
+
+    /**
+     * 按天分桶的行为计数，key为yyyyMMdd
+     */
+    private Map<String, DailyBucket> days;
+
+    /**
+     * 累计事件数
+     */
+    private Long totalEvents;
+
+    /**
+     * 累计支付次数
+     */
+    private Long purchaseCount;
+
+    /**
+     * 累计支付金额
+     */
+    private Double purchaseAmount;
+
+    /**
+     * 首次支付时间
+     */
+    private LocalDateTime firstPurchaseTime;
+
+    /**
+     * 最近支付时间
+     */
+    private LocalDateTime lastPurchaseTime;
+
+    /**
+     * 最近活跃时间
+     */
+    private LocalDateTime lastActiveTime;
+
+    /**
+     * 是否已用历史事件完成回填（增量更新创建的文档为false，首次读取时回填）
+     */
+    private Boolean backfilled;
+
+    /**
+     * 修订号，每次增量更新加1；回填只在修订号与读取原始事件前一致时写入
+     */
+    private Long revision;
+
+    /**
+     * 更新时间
+     */
+    private LocalDateTime updateTime;
+
+    /**
+     * 统计指定日期（含）之后的事件总数
+     */
+    public long countEventsSince(LocalDate since) {
+        return bucketsSince(since).values().stream()
+                .mapToLong(bucket -> bucket.getEvents() != null ? bucket.getEvents() : 0)
+                .sum();
+    }
+
+    /**
+     * 统计指定日期（含）之后的活跃天数
+     */
+    public long countActiveDaysSince(LocalDate since) {
+        return bucketsSince(since).values().stream()
+                .filter(bucket -> bucket.getEvents() != null && bucket.getEvents() > 0)
+                .count();
+    }
+
+    /**
+     * 统计指定日期（含）之后某类事件的数量
+     */
+    public long countTypeSince(String eventType, LocalDate since) {
+        return bucketsSince(since).values().stream()
+                .filter(bucket -> bucket.getTypes() != null)
+                .mapToLong(bucket -> bucket.getTypes().getOrDefault(eventType, 0L))
+                .sum();
+    }
+
+    /**
+     * 汇总指定日期（含）之后的兴趣品类计数
+     */
+    public Map<String, Long> interestCountsSince(LocalDate since) {
+        Map<String, Long> counts = new HashMap<>();
+        bucketsSince(since).values().stream()
+                .filter(bucket -> bucket.getInterests() != null)
+                .forEach(bucket -> bucket.getInterests().forEach(
+                        (category, count) -> counts.merge(UserBehaviorAggregateService.decodeKey(category), count, Long::sum)));
+        return counts;
+    }
+
+    private Map<String, DailyBucket> bucketsSince(LocalDate since) {
+        if (days == null) {
+            return Map.of();
+        }
+        String sinceKey = since.format(DAY_FORMAT);
+        Map<String, DailyBucket> result = new HashMap<>();
+        days.forEach((day, bucket) -> {
+            if (day.compareTo(sinceKey) >= 0) {
+                result.put(day, bucket);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * 单日行为计数
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class DailyBucket {
+        /**
+         * 当天事件总数
+         */
+        private Long events;
+
+        /**
+         * 按事件类型计数
+         */
+        private Map<String, Long> types;
+
+        /**
+         * 按兴趣品类计数（来自商品浏览、分类浏览、搜索）
+         */
+        private Map<String, Long> interests;
+    }
+}
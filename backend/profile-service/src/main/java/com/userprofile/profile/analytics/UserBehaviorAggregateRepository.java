@@ -0,0 +1,11 @@
+package com.userprofile.profile.analytics;
+
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+/**
+ * 用户行为聚合数据访问接口
+ */
+@Repository
+public interface UserBehaviorAggregateRepository extends MongoRepository<UserBehaviorAggregate, Long> {
+}
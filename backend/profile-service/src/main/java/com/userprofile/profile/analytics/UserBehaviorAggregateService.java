@@ -0,0 +1,348 @@
+package com.userprofile.profile.analytics;
+
+import com.userprofile.common.metrics.MetricsService;
+import com.userprofile.profile.event.UserEvent;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndReplaceOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.DateOperators;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * 用户行为聚合服务
+ * 事件写入时以$inc增量维护user_behavior_aggregates，读取时按需用历史事件回填。
+ * 每次增量更新都递增修订号，回填以修订号做乐观并发控制，期间有增量写入时重新回填
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class UserBehaviorAggregateService {
+
+    /**
+     * 按天分桶保留的天数（行为分析最长时间窗口为90天）
+     */
+    public static final int RETENTION_DAYS = 90;
+
+    /**
+     * 回填与增量更新冲突时的最大尝试次数
+     */
+    private static final int REBUILD_MAX_ATTEMPTS = 3;
+
+    /**
+     * 计入兴趣偏好的事件类型
+     */
+    private static final Set<UserEvent.EventType> INTEREST_EVENT_TYPES = EnumSet.of(
+            UserEvent.EventType.PRODUCT_VIEW,
+            UserEvent.EventType.CATEGORY_VIEW,
+            UserEvent.EventType.SEARCH
+    );
+
+    private final UserBehaviorAggregateRepository aggregateRepository;
+    private final MongoTemplate mongoTemplate;
+    private final MetricsService metricsService;
+
+    /**
+     * 回填时是否在MongoDB端用聚合管道完成计数和求和
+     * 关闭后在JVM内逐条读取事件计算，两种实现保留用于对比
+     */
+    @Value("${profile.analytics.pushdown-enabled:true}")
+    private boolean pushdownEnabled;
+
+    /**
+     * 将新写入的事件增量合并到聚合中
+     * 同一用户的多个事件先在内存中合并，每个用户只产生一次upsert
+     */
+    public void applyEvents(List<UserEvent> events) {
+        Map<Long, AggregateDelta> deltas = new HashMap<>();
+        for (UserEvent event : events) {
+            if (event.getUserId() != null && event.getEventTime() != null) {
+                deltas.computeIfAbsent(event.getUserId(), id -> new AggregateDelta()).add(event);
+            }
+        }
+        if (deltas.isEmpty()) {
+            return;
+        }
+
+        try {
+            if (deltas.size() == 1) {
+                Map.Entry<Long, AggregateDelta> entry = deltas.entrySet().iterator().next();
+                mongoTemplate.upsert(byUserId(entry.getKey()), entry.getValue().toUpdate(), UserBehaviorAggregate.class);
+            } else {
+                BulkOperations bulkOps = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, UserBehaviorAggregate.class);
+                deltas.forEach((userId, delta) -> bulkOps.upsert(byUserId(userId), delta.toUpdate()));
+                bulkOps.execute();
+            }
+        } catch (Exception e) {
+            // 增量更新失败时让聚合在下次读取时重新回填，避免计数长期偏差
+            log.error("更新用户行为聚合失败，标记为待回填: userIds={}", deltas.keySet(), e);
+            mongoTemplate.updateMulti(
+                    Query.query(Criteria.where("userId").in(deltas.keySet())),
+                    Update.update("backfilled", false).inc("revision", 1),
+                    UserBehaviorAggregate.class
+            );
+        }
+    }
+
+    /**
+     * 获取用户行为聚合
+     * 尚未回填的聚合（服务上线前的历史事件、增量更新失败）会先用原始事件重建
+     */
+    public UserBehaviorAggregate getAggregate(Long userId) {
+        UserBehaviorAggregate aggregate = aggregateRepository.findById(userId).orElse(null);
+        if (aggregate != null && Boolean.TRUE.equals(aggregate.getBackfilled())) {
+            return aggregate;
+        }
+        return rebuild(userId);
+    }
+
+    /**
+     * 使用原始事件重建用户行为聚合
+     * 先记下当前修订号再读取原始事件，只在修订号未变化时替换文档；
+     * 读取期间有增量更新落地时重新回填，多次冲突后本次不保存，聚合保持待回填状态
+     */
+    public UserBehaviorAggregate rebuild(Long userId) {
+        for (int attempt = 1; ; attempt++) {
+            Long revision = currentRevision(userId);
+
+            long startTime = System.currentTimeMillis();
+            AggregateDelta delta = pushdownEnabled ? summarizeWithPipeline(userId) : summarizeInJvm(userId);
+            metricsService.recordExecutionTime(pushdownEnabled ? "aggregate.rebuild.pipeline" : "aggregate.rebuild.jvm",
+                    System.currentTimeMillis() - startTime);
+
+            UserBehaviorAggregate aggregate = delta.toAggregate(userId, revision);
+            if (replaceIfUnchanged(aggregate, revision)) {
+                log.info("回填用户行为聚合: userId={}, events={}, pushdown={}", userId, aggregate.getTotalEvents(),
+                        pushdownEnabled);
+                return aggregate;
+            }
+            if (attempt >= REBUILD_MAX_ATTEMPTS) {
+                log.warn("回填用户行为聚合时持续有增量更新，本次不保存: userId={}", userId);
+                aggregate.setBackfilled(false);
+                return aggregate;
+            }
+            log.debug("回填期间聚合已被增量更新，重新回填: userId={}, attempt={}", userId, attempt);
+        }
+    }
+
+    private Long currentRevision(Long userId) {
+        Query query = byUserId(userId);
+        query.fields().include("revision");
+        UserBehaviorAggregate current = mongoTemplate.findOne(query, UserBehaviorAggregate.class);
+        return current != null ? current.getRevision() : null;
+    }
+
+    /**
+     * 修订号未变化时替换聚合文档（不存在时插入）
+     * 修订号已变化时upsert会以相同_id插入而违反唯一约束，视为冲突
+     */
+    private boolean replaceIfUnchanged(UserBehaviorAggregate aggregate, Long revision) {
+        Query query = byUserId(aggregate.getUserId()).addCriteria(Criteria.where("revision").is(revision));
+        try {
+            mongoTemplate.findAndReplace(query, aggregate, FindAndReplaceOptions.options().upsert());
+            return true;
+        } catch (DuplicateKeyException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 在JVM内汇总：流式读取用户全部事件（只投影需要的字段）逐条累加
+     */
+    private AggregateDelta summarizeInJvm(Long userId) {
+        Query query = Query.query(Criteria.where("userId").is(userId));
+        query.fields().include("userId", "eventType", "eventTime", "eventData.category", "eventData.amount");
+
+        AggregateDelta delta = new AggregateDelta();
+        try (Stream<UserEvent> events = mongoTemplate.stream(query, UserEvent.class)) {
+            events.filter(event -> event.getEventTime() != null).forEach(delta::add);
+        }
+        return delta;
+    }
+
+    /**
+     * 在MongoDB端汇总：按(日期, 事件类型, 品类)分组，只返回计数、金额和时间范围
+     * 结果行数与天数×类型×品类相关，与事件数量无关
+     */
+    private AggregateDelta summarizeWithPipeline(Long userId) {
+        String timezone = ZoneId.systemDefault().getId();
+        Aggregation aggregation = Aggregation.newAggregation(
+                Aggregation.match(Criteria.where("userId").is(userId).and("eventTime").ne(null)),
+                Aggregation.project("eventType", "eventTime")
+                        .and(DateOperators.DateToString.dateOf("eventTime")
+                                .toString("%Y%m%d")
+                                .withTimezone(DateOperators.Timezone.valueOf(timezone))).as("day")
+                        .and("eventData.category").as("category")
+                        .and("eventData.amount").as("amount"),
+                Aggregation.group("day", "eventType", "category")
+                        .count().as("count")
+                        .sum("amount").as("amount")
+                        .min("eventTime").as("firstTime")
+                        .max("eventTime").as("lastTime")
+        );
+
+        AggregateDelta delta = new AggregateDelta();
+        for (Document row : mongoTemplate.aggregate(aggregation, UserEvent.class, Document.class)) {
+            Document group = row.get("_id", Document.class);
+            String eventType = group.getString("eventType");
+            delta.addGroup(
+                    group.getString("day"),
+                    eventType != null ? UserEvent.EventType.valueOf(eventType) : null,
+                    group.get("category") instanceof String category ? category : null,
+                    ((Number) row.get("count")).longValue(),
+                    row.get("amount") instanceof Number amount ? amount.doubleValue() : 0.0,
+                    toLocalDateTime(row.getDate("firstTime")),
+                    toLocalDateTime(row.getDate("lastTime"))
+            );
+        }
+        return delta;
+    }
+
+    /**
+     * 清理超出保留期的按天分桶
+     *
+     * @param lookbackDays 从保留期边界往前清理的天数，应覆盖两次清理之间的间隔
+     */
+    public void pruneExpiredBuckets(int lookbackDays) {
+        LocalDate boundary = LocalDate.now().minusDays(RETENTION_DAYS);
+        Update update = new Update();
+        for (int i = 1; i <= lookbackDays; i++) {
+            update.unset("days." + boundary.minusDays(i).format(UserBehaviorAggregate.DAY_FORMAT));
+        }
+        long modified = mongoTemplate.updateMulti(new Query(), update, UserBehaviorAggregate.class).getModifiedCount();
+        log.info("清理过期行为分桶完成，涉及{}个用户", modified);
+    }
+
+    /**
+     * 编码Map的key，MongoDB字段名不能包含'.'且不能以'$'开头
+     */
+    static String encodeKey(String key) {
+        String encoded = key.replace(".", "．");
+        return encoded.startsWith("$") ? "＄" + encoded.substring(1) : encoded;
+    }
+
+    /**
+     * 解码Map的key
+     */
+    static String decodeKey(String key) {
+        String decoded = key.replace("．", ".");
+        return decoded.startsWith("＄") ? "$" + decoded.substring(1) : decoded;
+    }
+
+    private static LocalDateTime toLocalDateTime(Date date) {
+        return LocalDateTime.ofInstant(date.toInstant(), ZoneId.systemDefault());
+    }
+
+    private static Query byUserId(Long userId) {
+        return Query.query(Criteria.where("userId").is(userId));
+    }
+
+    /**
+     * 单个用户的聚合增量
+     */
+    private static class AggregateDelta {
+        private final Map<String, UserBehaviorAggregate.DailyBucket> days = new TreeMap<>();
+        private long totalEvents;
+        private long purchaseCount;
+        private double purchaseAmount;
+        private LocalDateTime firstPurchaseTime;
+        private LocalDateTime lastPurchaseTime;
+        private LocalDateTime lastActiveTime;
+
+        void add(UserEvent event) {
+            Map<String, Object> eventData = event.getEventData() != null ? event.getEventData() : Map.of();
+            addGroup(
+                    event.getEventTime().toLocalDate().format(UserBehaviorAggregate.DAY_FORMAT),
+                    event.getEventType(),
+                    eventData.get("category") instanceof String category ? category : null,
+                    1,
+                    eventData.get("amount") instanceof Number amount ? amount.doubleValue() : 0.0,
+                    event.getEventTime(),
+                    event.getEventTime()
+            );
+        }
+
+        /**
+         * 累加同一天、同一类型、同一品类的一组事件
+         */
+        void addGroup(String day, UserEvent.EventType eventType, String category, long count,
+                      double amount, LocalDateTime firstTime, LocalDateTime lastTime) {
+            UserBehaviorAggregate.DailyBucket bucket = days.computeIfAbsent(day,
+                    key -> new UserBehaviorAggregate.DailyBucket(0L, new HashMap<>(), new HashMap<>()));
+            bucket.setEvents(bucket.getEvents() + count);
+            totalEvents += count;
+            lastActiveTime = max(lastActiveTime, lastTime);
+
+            if (eventType == null) {
+                return;
+            }
+            bucket.getTypes().merge(eventType.name(), count, Long::sum);
+
+            if (INTEREST_EVENT_TYPES.contains(eventType) && category != null) {
+                bucket.getInterests().merge(encodeKey(category), count, Long::sum);
+            }
+
+            if (eventType == UserEvent.EventType.PAY) {
+                purchaseCount += count;
+                purchaseAmount += amount;
+                lastPurchaseTime = max(lastPurchaseTime, lastTime);
+                firstPurchaseTime = firstPurchaseTime == null || firstTime.isBefore(firstPurchaseTime)
+                        ? firstTime : firstPurchaseTime;
+            }
+        }
+
+        Update toUpdate() {
+            Update update = new Update()
+                    .inc("revision", 1)
+                    .inc("totalEvents", totalEvents)
+                    .max("lastActiveTime", lastActiveTime)
+                    .setOnInsert("backfilled", false)
+                    .set("updateTime", LocalDateTime.now());
+
+            days.forEach((day, bucket) -> {
+                String prefix = "days." + day + ".";
+                update.inc(prefix + "events", bucket.getEvents());
+                bucket.getTypes().forEach((type, count) -> update.inc(prefix + "types." + type, count));
+                bucket.getInterests().forEach((category, count) -> update.inc(prefix + "interests." + category, count));
+            });
+
+            if (purchaseCount > 0) {
+                update.inc("purchaseCount", purchaseCount)
+                        .inc("purchaseAmount", purchaseAmount)
+                        .max("lastPurchaseTime", lastPurchaseTime)
+                        .min("firstPurchaseTime", firstPurchaseTime);
+            }
+            return update;
+        }
+
+        UserBehaviorAggregate toAggregate(Long userId, Long revision) {
+            LocalDate retentionStart = LocalDate.now().minusDays(RETENTION_DAYS);
+            String retentionKey = retentionStart.format(UserBehaviorAggregate.DAY_FORMAT);
+            Map<String, UserBehaviorAggregate.DailyBucket> retained = days.entrySet().stream()
+                    .filter(entry -> entry.getKey().compareTo(retentionKey) >= 0)
+                    .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+
+            return new UserBehaviorAggregate(userId, retained, totalEvents, purchaseCount, purchaseAmount,
+                    firstPurchaseTime, lastPurchaseTime, lastActiveTime, true, revision, LocalDateTime.now());
+        }
+
+        private static LocalDateTime max(LocalDateTime current, LocalDateTime candidate) {
+            return current == null || candidate.isAfter(current) ? candidate : current;
+        }
+    }
+}
@@ -6,6 +6,7 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
@@ -13,7 +14,7 @@ import java.util.stream.Collectors;
 
 /**
  * 用户行为分析服务
- * 基于用户事件进行深度分析
+ * 基于用户行为聚合（user_behavior_aggregates）进行深度分析，每次分析只读取一个聚合文档
  */
 @Slf4j
 @Service
@@ -21,33 +22,51 @@ import java.util.stream.Collectors;
 public class UserBehaviorAnalytics {
 
     private final UserEventRepository eventRepository;
+    private final UserBehaviorAggregateService aggregateService;
+
+    /**
+     * 综合行为洞察
+     * 只读取一次用户行为数据，一并计算活跃度、兴趣、RFM、流失风险、漏斗和转化率
+     */
+    public BehaviorInsights analyzeInsights(Long userId) {
+        UserBehaviorAggregate aggregate = aggregateService.getAggregate(userId);
+        double activityScore = activityScore(aggregate);
+
+        return BehaviorInsights.builder()
+                .userId(userId)
+                .activityScore(activityScore)
+                .interests(interests(aggregate))
+                .rfm(rfm(aggregate))
+                .churnRisk(churnRisk(aggregate, activityScore))
+                .funnel(funnel(aggregate))
+                .conversionRate(conversionRate(aggregate))
+                .generatedAt(LocalDateTime.now())
+                .build();
+    }
+
+    /**
+     * 分群所需的行为洞察
+     * 只读取一次用户行为数据，计算活跃度、RFM和流失风险，其余字段为空
+     */
+    public BehaviorInsights analyzeSegmentationInsights(Long userId) {
+        UserBehaviorAggregate aggregate = aggregateService.getAggregate(userId);
+        double activityScore = activityScore(aggregate);
+
+        return BehaviorInsights.builder()
+                .userId(userId)
+                .activityScore(activityScore)
+                .rfm(rfm(aggregate))
+                .churnRisk(churnRisk(aggregate, activityScore))
+                .generatedAt(LocalDateTime.now())
+                .build();
+    }
 
     /**
      * 计算用户活跃度
      * 基于最近30天的行为频率
      */
     public double calculateActivityScore(Long userId) {
-        LocalDateTime thirtyDaysAgo = LocalDateTime.now().minus(30, ChronoUnit.DAYS);
-        List<UserEvent> recentEvents = eventRepository.findRecentEvents(userId, thirtyDaysAgo);
-
-        if (recentEvents.isEmpty()) {
-            return 0.0;
-        }
-
-        // 活跃天数
-        long activeDays = recentEvents.stream()
-                .map(e -> e.getEventTime().toLocalDate())
-                .distinct()
-                .count();
-
-        // 事件总数
-        int totalEvents = recentEvents.size();
-
-        // 加权计算：活跃天数占60%，事件数量占40%
-        double dayScore = Math.min((activeDays / 30.0) * 60, 60);
-        double eventScore = Math.min((totalEvents / 100.0) * 40, 40);
-
-        return Math.round((dayScore + eventScore) * 100.0) / 100.0;
+        return activityScore(aggregateService.getAggregate(userId));
     }
 
     /**
@@ -55,53 +74,14 @@ public class UserBehaviorAnalytics {
      * 基于浏览和搜索行为
      */
     public Map<String, Double> analyzeInterests(Long userId) {
-        LocalDateTime thirtyDaysAgo = LocalDateTime.now().minus(30, ChronoUnit.DAYS);
-        List<UserEvent> events = eventRepository.findRecentEvents(userId, thirtyDaysAgo);
-
-        Map<String, Integer> interestCount = new HashMap<>();
-
-        for (UserEvent event : events) {
-            if (event.getEventType() == UserEvent.EventType.PRODUCT_VIEW ||
-                event.getEventType() == UserEvent.EventType.CATEGORY_VIEW ||
-                event.getEventType() == UserEvent.EventType.SEARCH) {
-
-                String category = (String) event.getEventData().get("category");
-                if (category != null) {
-                    interestCount.put(category, interestCount.getOrDefault(category, 0) + 1);
-                }
-            }
-        }
-
-        // 归一化为0-1的权重
-        int maxCount = interestCount.values().stream().max(Integer::compareTo).orElse(1);
-        Map<String, Double> interests = new HashMap<>();
-        for (Map.Entry<String, Integer> entry : interestCount.entrySet()) {
-            interests.put(entry.getKey(), (double) entry.getValue() / maxCount);
-        }
-
-        return interests;
+        return interests(aggregateService.getAggregate(userId));
     }
 
     /**
      * 计算购买转化率
      */
     public double calculateConversionRate(Long userId) {
-        LocalDateTime ninetyDaysAgo = LocalDateTime.now().minus(90, ChronoUnit.DAYS);
-        List<UserEvent> events = eventRepository.findRecentEvents(userId, ninetyDaysAgo);
-
-        long viewCount = events.stream()
-                .filter(e -> e.getEventType() == UserEvent.EventType.PRODUCT_VIEW)
-                .count();
-
-        long purchaseCount = events.stream()
-                .filter(e -> e.getEventType() == UserEvent.EventType.PAY)
-                .count();
-
-        if (viewCount == 0) {
-            return 0.0;
-        }
-
-        return Math.round((purchaseCount * 100.0 / viewCount) * 100.0) / 100.0;
+        return conversionRate(aggregateService.getAggregate(userId));
     }
 
     /**
@@ -138,39 +118,139 @@ public class UserBehaviorAnalytics {
      * M: Monetary（购买金额）
      */
     public Map<String, Object> calculateRFM(Long userId) {
-        List<UserEvent> purchases = eventRepository.findByUserIdAndEventType(
-                userId, UserEvent.EventType.PAY
-        );
+        BehaviorInsights.Rfm rfm = rfm(aggregateService.getAggregate(userId));
 
-        if (purchases.isEmpty()) {
+        if (rfm.getFrequency() == 0) {
             return Map.of(
                     "R", 0,
                     "F", 0,
                     "M", 0.0,
                     "score", 0,
-                    "level", "无购买记录"
+                    "level", rfm.getLevel()
             );
         }
 
+        return Map.of(
+                "R", rfm.getRecencyScore(),
+                "F", rfm.getFrequencyScore(),
+                "M", rfm.getMonetaryScore(),
+                "score", rfm.getScore(),
+                "level", rfm.getLevel(),
+                "recencyDays", rfm.getRecencyDays(),
+                "frequency", rfm.getFrequency(),
+                "totalAmount", rfm.getTotalAmount()
+        );
+    }
+
+    /**
+     * 预测用户流失风险
+     * 基于活跃度和购买行为
+     */
+    public Map<String, Object> predictChurnRisk(Long userId) {
+        UserBehaviorAggregate aggregate = aggregateService.getAggregate(userId);
+        BehaviorInsights.ChurnRisk risk = churnRisk(aggregate, activityScore(aggregate));
+
+        if (risk.getDaysSinceActive() == null) {
+            return Map.of("risk", risk.getRisk(), "score", risk.getScore(), "reason", risk.getReasons().get(0));
+        }
+
+        return Map.of(
+                "risk", risk.getRisk(),
+                "score", risk.getScore(),
+                "reasons", risk.getReasons(),
+                "daysSinceActive", risk.getDaysSinceActive(),
+                "activityScore", risk.getActivityScore()
+        );
+    }
+
+    /**
+     * 分析用户购物路径
+     * 返回从浏览到购买的转化漏斗
+     */
+    public Map<String, Object> analyzePurchaseFunnel(Long userId) {
+        BehaviorInsights.Funnel funnel = funnel(aggregateService.getAggregate(userId));
+
+        return Map.of(
+                "浏览商品", funnel.getViews(),
+                "加入购物车", funnel.getAddToCarts(),
+                "提交订单", funnel.getOrders(),
+                "完成支付", funnel.getPayments(),
+                "浏览转化率", funnel.getViewToCartRate(),
+                "下单转化率", funnel.getCartToOrderRate(),
+                "支付转化率", funnel.getOrderToPayRate()
+        );
+    }
+
+    /**
+     * 活跃度：活跃天数占60%，事件数量占40%
+     */
+    private double activityScore(UserBehaviorAggregate aggregate) {
+        LocalDate thirtyDaysAgo = LocalDate.now().minusDays(30);
+
+        // 事件总数
+        long totalEvents = aggregate.countEventsSince(thirtyDaysAgo);
+        if (totalEvents == 0) {
+            return 0.0;
+        }
+
+        // 活跃天数
+        long activeDays = aggregate.countActiveDaysSince(thirtyDaysAgo);
+
+        // 加权计算：活跃天数占60%，事件数量占40%
+        double dayScore = Math.min((activeDays / 30.0) * 60, 60);
+        double eventScore = Math.min((totalEvents / 100.0) * 40, 40);
+
+        return Math.round((dayScore + eventScore) * 100.0) / 100.0;
+    }
+
+    /**
+     * 兴趣偏好：最近30天各品类计数，归一化为0-1的权重
+     */
+    private Map<String, Double> interests(UserBehaviorAggregate aggregate) {
+        Map<String, Long> interestCount = aggregate.interestCountsSince(LocalDate.now().minusDays(30));
+
+        long maxCount = interestCount.values().stream().max(Long::compareTo).orElse(1L);
+        Map<String, Double> interests = new HashMap<>();
+        for (Map.Entry<String, Long> entry : interestCount.entrySet()) {
+            interests.put(entry.getKey(), (double) entry.getValue() / maxCount);
+        }
+
+        return interests;
+    }
+
+    /**
+     * 购买转化率：最近90天支付次数 / 商品浏览次数
+     */
+    private double conversionRate(UserBehaviorAggregate aggregate) {
+        LocalDate ninetyDaysAgo = LocalDate.now().minusDays(90);
+        long viewCount = aggregate.countTypeSince(UserEvent.EventType.PRODUCT_VIEW.name(), ninetyDaysAgo);
+        long purchaseCount = aggregate.countTypeSince(UserEvent.EventType.PAY.name(), ninetyDaysAgo);
+
+        if (viewCount == 0) {
+            return 0.0;
+        }
+
+        return percentage(purchaseCount, viewCount);
+    }
+
+    /**
+     * RFM模型
+     */
+    private BehaviorInsights.Rfm rfm(UserBehaviorAggregate aggregate) {
+        long frequency = aggregate.getPurchaseCount() != null ? aggregate.getPurchaseCount() : 0;
+        if (frequency == 0 || aggregate.getLastPurchaseTime() == null) {
+            return new BehaviorInsights.Rfm(0, 0, 0, 0, "无购买记录", null, 0, 0.0);
+        }
+
         // R: 最近购买距今天数
-        LocalDateTime lastPurchase = purchases.stream()
-                .map(UserEvent::getEventTime)
-                .max(LocalDateTime::compareTo)
-                .orElse(LocalDateTime.now());
-        long recencyDays = ChronoUnit.DAYS.between(lastPurchase, LocalDateTime.now());
+        long recencyDays = ChronoUnit.DAYS.between(aggregate.getLastPurchaseTime(), LocalDateTime.now());
         int rScore = recencyDays <= 30 ? 5 : recencyDays <= 60 ? 4 : recencyDays <= 90 ? 3 : recencyDays <= 180 ? 2 : 1;
 
         // F: 购买频次
-        int frequency = purchases.size();
         int fScore = frequency >= 10 ? 5 : frequency >= 5 ? 4 : frequency >= 3 ? 3 : frequency >= 2 ? 2 : 1;
 
-        // M: 购买金额（从事件数据中获取）
-        double totalAmount = purchases.stream()
-                .mapToDouble(e -> {
-                    Object amount = e.getEventData().get("amount");
-                    return amount != null ? ((Number) amount).doubleValue() : 0.0;
-                })
-                .sum();
+        // M: 购买金额（从事件数据中累计）
+        double totalAmount = aggregate.getPurchaseAmount() != null ? aggregate.getPurchaseAmount() : 0.0;
         int mScore = totalAmount >= 10000 ? 5 : totalAmount >= 5000 ? 4 : totalAmount >= 2000 ? 3 : totalAmount >= 500 ? 2 : 1;
 
         // 综合评分
@@ -180,37 +260,21 @@ public class UserBehaviorAnalytics {
                       totalScore >= 7 ? "重要保持客户" :
                       totalScore >= 4 ? "一般客户" : "低价值客户";
 
-        return Map.of(
-                "R", rScore,
-                "F", fScore,
-                "M", mScore,
-                "score", totalScore,
-                "level", level,
-                "recencyDays", recencyDays,
-                "frequency", frequency,
-                "totalAmount", totalAmount
-        );
+        return new BehaviorInsights.Rfm(rScore, fScore, mScore, totalScore, level, recencyDays, frequency, totalAmount);
     }
 
     /**
-     * 预测用户流失风险
-     * 基于活跃度和购买行为
+     * 流失风险：最近活跃、最近购买和活跃度三项加权
      */
-    public Map<String, Object> predictChurnRisk(Long userId) {
+    private BehaviorInsights.ChurnRisk churnRisk(UserBehaviorAggregate aggregate, double activityScore) {
         // 最近活跃时间
-        List<UserEvent> recentEvents = eventRepository.findByUserIdOrderByEventTimeDesc(userId);
-        if (recentEvents.isEmpty()) {
-            return Map.of("risk", "高", "score", 100, "reason", "无活跃记录");
+        LocalDateTime lastActive = aggregate.getLastActiveTime();
+        if (lastActive == null) {
+            return new BehaviorInsights.ChurnRisk("高", 100, List.of("无活跃记录"), null, activityScore);
         }
 
-        LocalDateTime lastActive = recentEvents.get(0).getEventTime();
         long daysSinceActive = ChronoUnit.DAYS.between(lastActive, LocalDateTime.now());
 
-        // 购买行为
-        List<UserEvent> purchases = eventRepository.findByUserIdAndEventType(
-                userId, UserEvent.EventType.PAY
-        );
-
         int riskScore = 0;
         List<String> reasons = new ArrayList<>();
 
@@ -224,9 +288,8 @@ public class UserBehaviorAnalytics {
         }
 
         // 购买频率下降
-        if (!purchases.isEmpty()) {
-            LocalDateTime lastPurchase = purchases.get(0).getEventTime();
-            long daysSincePurchase = ChronoUnit.DAYS.between(lastPurchase, LocalDateTime.now());
+        if (aggregate.getLastPurchaseTime() != null) {
+            long daysSincePurchase = ChronoUnit.DAYS.between(aggregate.getLastPurchaseTime(), LocalDateTime.now());
 
             if (daysSincePurchase > 90) {
                 riskScore += 30;
@@ -241,7 +304,6 @@ public class UserBehaviorAnalytics {
         }
 
         // 活跃度下降
-        double activityScore = calculateActivityScore(userId);
         if (activityScore < 20) {
             riskScore += 30;
             reasons.add("活跃度过低");
@@ -252,47 +314,32 @@ public class UserBehaviorAnalytics {
 
         String riskLevel = riskScore >= 70 ? "高" : riskScore >= 40 ? "中" : "低";
 
-        return Map.of(
-                "risk", riskLevel,
-                "score", riskScore,
-                "reasons", reasons,
-                "daysSinceActive", daysSinceActive,
-                "activityScore", activityScore
-        );
+        return new BehaviorInsights.ChurnRisk(riskLevel, riskScore, reasons, daysSinceActive, activityScore);
     }
 
     /**
-     * 分析用户购物路径
-     * 返回从浏览到购买的转化漏斗
+     * 购物漏斗：最近30天浏览 -> 加购 -> 下单 -> 支付
      */
-    public Map<String, Object> analyzePurchaseFunnel(Long userId) {
-        LocalDateTime thirtyDaysAgo = LocalDateTime.now().minus(30, ChronoUnit.DAYS);
-        List<UserEvent> events = eventRepository.findRecentEvents(userId, thirtyDaysAgo);
-
-        long views = events.stream()
-                .filter(e -> e.getEventType() == UserEvent.EventType.PRODUCT_VIEW)
-                .count();
-
-        long addToCarts = events.stream()
-                .filter(e -> e.getEventType() == UserEvent.EventType.ADD_TO_CART)
-                .count();
-
-        long orders = events.stream()
-                .filter(e -> e.getEventType() == UserEvent.EventType.PLACE_ORDER)
-                .count();
-
-        long payments = events.stream()
-                .filter(e -> e.getEventType() == UserEvent.EventType.PAY)
-                .count();
-
-        return Map.of(
-                "浏览商品", views,
-                "加入购物车", addToCarts,
-                "提交订单", orders,
-                "完成支付", payments,
-                "浏览转化率", views > 0 ? Math.round((addToCarts * 100.0 / views) * 100.0) / 100.0 : 0,
-                "下单转化率", addToCarts > 0 ? Math.round((orders * 100.0 / addToCarts) * 100.0) / 100.0 : 0,
-                "支付转化率", orders > 0 ? Math.round((payments * 100.0 / orders) * 100.0) / 100.0 : 0
+    private BehaviorInsights.Funnel funnel(UserBehaviorAggregate aggregate) {
+        LocalDate thirtyDaysAgo = LocalDate.now().minusDays(30);
+
+        long views = aggregate.countTypeSince(UserEvent.EventType.PRODUCT_VIEW.name(), thirtyDaysAgo);
+        long addToCarts = aggregate.countTypeSince(UserEvent.EventType.ADD_TO_CART.name(), thirtyDaysAgo);
+        long orders = aggregate.countTypeSince(UserEvent.EventType.PLACE_ORDER.name(), thirtyDaysAgo);
+        long payments = aggregate.countTypeSince(UserEvent.EventType.PAY.name(), thirtyDaysAgo);
+
+        return new BehaviorInsights.Funnel(
+                views, addToCarts, orders, payments,
+                views > 0 ? percentage(addToCarts, views) : 0,
+                addToCarts > 0 ? percentage(orders, addToCarts) : 0,
+                orders > 0 ? percentage(payments, orders) : 0
         );
     }
+
+    /**
+     * 百分比，保留两位小数
+     */
+    private static double percentage(long numerator, long denominator) {
+        return Math.round((numerator * 100.0 / denominator) * 100.0) / 100.0;
+    }
 }
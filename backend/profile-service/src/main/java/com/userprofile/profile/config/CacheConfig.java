@@ -4,6 +4,10 @@ import com.fasterxml.jackson.annotation.JsonAutoDetect;
 import com.fasterxml.jackson.annotation.PropertyAccessor;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.jsontype.impl.LaissezFaireSubTypeValidator;
+import com.fasterxml.jackson.databind.type.TypeFactory;
+import com.userprofile.common.metrics.MetricsService;
+import com.userprofile.profile.entity.UserProfile;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.EnableCaching;
 import org.springframework.context.annotation.Bean;
@@ -12,6 +16,8 @@ import org.springframework.data.redis.cache.RedisCacheConfiguration;
 import org.springframework.data.redis.cache.RedisCacheManager;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
 import org.springframework.data.redis.serializer.RedisSerializationContext;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
@@ -26,10 +32,23 @@ import java.time.Duration;
 public class CacheConfig {
 
     /**
-     * 配置Redis缓存管理器
+     * 用户画像缓存的逻辑有效期
+     */
+    private static final Duration USER_PROFILES_TTL = Duration.ofHours(2);
+
+    /**
+     * 配置两级缓存管理器
+     * 本地Caffeine缓存在前、Redis缓存在后，本地缓存通过Redis pub/sub跨实例失效
      */
     @Bean
-    public CacheManager cacheManager(RedisConnectionFactory connectionFactory) {
+    public CacheManager cacheManager(RedisConnectionFactory connectionFactory,
+                                     StringRedisTemplate stringRedisTemplate,
+                                     RedisMessageListenerContainer redisMessageListenerContainer,
+                                     MetricsService metricsService,
+                                     @Value("${profile.cache.local-max-size:10000}") long localMaxSize,
+                                     @Value("${profile.cache.local-ttl-seconds:60}") long localTtlSeconds,
+                                     @Value("${profile.cache.stale-grace-minutes:10}") long staleGraceMinutes,
+                                     @Value("${profile.cache.early-refresh-beta:1.0}") double earlyRefreshBeta) {
         // 配置序列化
         Jackson2JsonRedisSerializer<Object> serializer = new Jackson2JsonRedisSerializer<>(Object.class);
         ObjectMapper mapper = new ObjectMapper();
@@ -44,12 +63,19 @@ public class CacheConfig {
                 .serializeValuesWith(RedisSerializationContext.SerializationPair.fromSerializer(serializer))
                 .disableCachingNullValues();  // 不缓存null值
 
-        // 创建缓存管理器
-        return RedisCacheManager.builder(connectionFactory)
+        // 创建Redis缓存管理器
+        RedisCacheManager redisCacheManager = RedisCacheManager.builder(connectionFactory)
                 .cacheDefaults(config)
                 // 为不同的缓存配置不同的过期时间
+                // 用户画像使用按类型的紧凑二进制序列化，不写入类名；
+                // 逻辑有效期2小时，Redis中多保留一段陈旧期供后台刷新期间继续使用
                 .withCacheConfiguration("userProfiles",
-                        config.entryTtl(Duration.ofHours(2)))
+                        config.entryTtl(USER_PROFILES_TTL.plusMinutes(staleGraceMinutes))
+                                .serializeValuesWith(RedisSerializationContext.SerializationPair.fromSerializer(
+                                        new CompactRedisSerializer<CacheEnvelope<UserProfile>>(
+                                                TypeFactory.defaultInstance().constructParametricType(
+                                                        CacheEnvelope.class, UserProfile.class),
+                                                CompactRedisSerializer.DEFAULT_COMPRESSION_THRESHOLD))))
                 .withCacheConfiguration("userEvents",
                         config.entryTtl(Duration.ofMinutes(30)))
                 .withCacheConfiguration("recommendations",
@@ -57,6 +83,12 @@ public class CacheConfig {
                 .withCacheConfiguration("segments",
                         config.entryTtl(Duration.ofHours(6)))
                 .build();
+        redisCacheManager.afterPropertiesSet();
+
+        TwoLevelCacheManager cacheManager = new TwoLevelCacheManager(redisCacheManager, stringRedisTemplate,
+                redisMessageListenerContainer, metricsService, localMaxSize, Duration.ofSeconds(localTtlSeconds));
+        cacheManager.enableEarlyRefresh("userProfiles", USER_PROFILES_TTL, earlyRefreshBeta);
+        return cacheManager;
     }
 
     /**
@@ -86,4 +118,15 @@ public class CacheConfig {
 
         return template;
     }
+
+    /**
+     * Redis消息监听容器
+     * 用于跨实例的本地缓存失效通知
+     */
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory connectionFactory) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        return container;
+    }
 }
@@ -0,0 +1,30 @@
+package com.userprofile.profile.config;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 缓存条目信封
+ * 除缓存值外记录逻辑过期时间和加载耗时，用于概率提前刷新（XFetch）和过期后后台刷新
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CacheEnvelope<T> {
+
+    /**
+     * 缓存值
+     */
+    private T value;
+
+    /**
+     * 逻辑过期时间（毫秒时间戳），之后的数据视为陈旧；物理过期时间更晚
+     */
+    private long expiresAt;
+
+    /**
+     * 加载耗时（毫秒），XFetch中的delta
+     */
+    private long loadMillis;
+}
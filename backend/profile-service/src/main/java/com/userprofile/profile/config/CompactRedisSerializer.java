@@ -0,0 +1,141 @@
+package com.userprofile.profile.config;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.jsontype.BasicPolymorphicTypeValidator;
+import com.fasterxml.jackson.databind.jsontype.PolymorphicTypeValidator;
+import com.fasterxml.jackson.databind.type.TypeFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import lombok.extern.slf4j.Slf4j;
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FastDecompressor;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * 紧凑二进制Redis序列化器
+ * 按固定类型以Smile（二进制JSON）编码，不写入类名；超过阈值的数据再做LZ4压缩。
+ * 声明为Object的值（如{@code Map<String, Object>}中的值）例外，写入类名以保证Long、Date、集合等类型往返不变。
+ * 数据格式：1字节格式标记 + [LZ4时4字节原始长度] + 数据体
+ */
+@Slf4j
+public class CompactRedisSerializer<T> implements RedisSerializer<T> {
+
+    /**
+     * 格式标记：未压缩的Smile
+     * Object值开始写入类名后由0x01/0x02改为0x03/0x04，之前写入的数据按未命中处理
+     */
+    static final byte FORMAT_SMILE = 0x03;
+
+    /**
+     * 格式标记：LZ4压缩的Smile
+     */
+    static final byte FORMAT_SMILE_LZ4 = 0x04;
+
+    /**
+     * 默认压缩阈值（字节）
+     */
+    public static final int DEFAULT_COMPRESSION_THRESHOLD = 1024;
+
+    private static final LZ4Compressor COMPRESSOR = LZ4Factory.fastestInstance().fastCompressor();
+    private static final LZ4FastDecompressor DECOMPRESSOR = LZ4Factory.fastestInstance().fastDecompressor();
+
+    /**
+     * Object值允许反序列化的类型：只限JDK的基础值类型和集合
+     */
+    private static final PolymorphicTypeValidator OBJECT_VALUE_TYPES = BasicPolymorphicTypeValidator.builder()
+            .allowIfSubType("java.lang.")
+            .allowIfSubType("java.math.")
+            .allowIfSubType("java.util.")
+            .allowIfSubType("java.time.")
+            .build();
+
+    private final ObjectMapper mapper;
+    private final JavaType type;
+    private final int compressionThreshold;
+
+    public CompactRedisSerializer(Class<T> type) {
+        this(type, DEFAULT_COMPRESSION_THRESHOLD);
+    }
+
+    public CompactRedisSerializer(Class<T> type, int compressionThreshold) {
+        this(TypeFactory.defaultInstance().constructType(type), compressionThreshold);
+    }
+
+    /**
+     * 泛型类型，如{@code CacheEnvelope<UserProfile>}
+     */
+    public CompactRedisSerializer(JavaType type, int compressionThreshold) {
+        this.mapper = new ObjectMapper(new SmileFactory())
+                .registerModule(new JavaTimeModule())
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+                .activateDefaultTyping(OBJECT_VALUE_TYPES, ObjectMapper.DefaultTyping.JAVA_LANG_OBJECT);
+        this.type = type;
+        this.compressionThreshold = compressionThreshold;
+    }
+
+    @Override
+    public byte[] serialize(T value) throws SerializationException {
+        if (value == null) {
+            return new byte[0];
+        }
+
+        byte[] smile;
+        try {
+            smile = mapper.writerFor(type).writeValueAsBytes(value);
+        } catch (IOException e) {
+            throw new SerializationException("Smile序列化失败: " + type, e);
+        }
+
+        if (smile.length < compressionThreshold) {
+            ByteBuffer buffer = ByteBuffer.allocate(1 + smile.length);
+            return buffer.put(FORMAT_SMILE).put(smile).array();
+        }
+
+        byte[] compressed = new byte[COMPRESSOR.maxCompressedLength(smile.length)];
+        int compressedLength = COMPRESSOR.compress(smile, 0, smile.length, compressed, 0);
+        ByteBuffer buffer = ByteBuffer.allocate(1 + 4 + compressedLength);
+        return buffer.put(FORMAT_SMILE_LZ4)
+                .putInt(smile.length)
+                .put(compressed, 0, compressedLength)
+                .array();
+    }
+
+    @Override
+    public T deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+
+        try {
+            switch (bytes[0]) {
+                case FORMAT_SMILE:
+                    return mapper.readValue(bytes, 1, bytes.length - 1, type);
+                case FORMAT_SMILE_LZ4:
+                    int originalLength = ByteBuffer.wrap(bytes, 1, 4).getInt();
+                    byte[] smile = new byte[originalLength];
+                    DECOMPRESSOR.decompress(bytes, 5, smile, 0, originalLength);
+                    return mapper.readValue(smile, type);
+                default:
+                    // 旧格式（如升级前写入的JSON、Object值未写类名的Smile）按未命中处理，由调用方重新加载
+                    log.debug("无法识别的缓存数据格式，按未命中处理: type={}", type);
+                    return null;
+            }
+        } catch (IOException | RuntimeException e) {
+            throw new SerializationException("缓存反序列化失败: " + type, e);
+        }
+    }
+
+    @Override
+    public Class<?> getTargetType() {
+        return type.getRawClass();
+    }
+}
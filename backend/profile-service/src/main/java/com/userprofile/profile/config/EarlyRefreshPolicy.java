@@ -0,0 +1,40 @@
+package com.userprofile.profile.config;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 提前刷新策略
+ * XFetch：剩余有效期越短、加载越慢，越可能在过期前由某次读取触发后台刷新；
+ * 逻辑过期后仍在物理保留期内的数据照常返回，同时触发后台刷新（stale-while-revalidate）
+ */
+class EarlyRefreshPolicy {
+
+    private final Duration ttl;
+    private final double beta;
+
+    EarlyRefreshPolicy(Duration ttl, double beta) {
+        this.ttl = ttl;
+        this.beta = beta;
+    }
+
+    /**
+     * 为新加载的值创建信封
+     */
+    <T> CacheEnvelope<T> wrap(T value, long loadMillis, long nowMillis) {
+        return new CacheEnvelope<>(value, nowMillis + ttl.toMillis(), loadMillis);
+    }
+
+    /**
+     * 是否需要后台刷新
+     */
+    boolean shouldRefresh(CacheEnvelope<?> envelope, long nowMillis) {
+        if (nowMillis >= envelope.getExpiresAt()) {
+            return true;
+        }
+        // XFetch: now - delta * beta * ln(rand) >= expiry
+        double random = ThreadLocalRandom.current().nextDouble();
+        double gap = -envelope.getLoadMillis() * beta * Math.log(random);
+        return nowMillis + gap >= envelope.getExpiresAt();
+    }
+}
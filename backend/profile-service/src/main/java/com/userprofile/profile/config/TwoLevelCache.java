@@ -0,0 +1,393 @@
+package com.userprofile.profile.config;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.userprofile.common.metrics.MetricsService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.support.SimpleValueWrapper;
+import org.springframework.data.redis.cache.RedisCache;
+import org.springframework.data.redis.cache.RedisCacheConfiguration;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.util.ByteUtils;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * 两级缓存
+ * L1为进程内Caffeine缓存（以key的字符串形式存储已反序列化的对象），L2为Redis缓存；
+ * 写入和删除时通过{@link TwoLevelCacheManager}广播，其他实例清除各自的L1。
+ * 配置了{@link EarlyRefreshPolicy}的缓存在两级中都存储{@link CacheEnvelope}，
+ * 临近或超过逻辑过期时返回现有值并在后台刷新，避免过期瞬间各实例同时回源
+ */
+@Slf4j
+public class TwoLevelCache implements org.springframework.cache.Cache {
+
+    /**
+     * 同一实例内同一key的同步加载锁分段数
+     */
+    private static final int LOCK_STRIPES = 64;
+
+    private final String name;
+    private final Cache<String, Object> localCache;
+    private final org.springframework.cache.Cache redisCache;
+    private final TwoLevelCacheManager cacheManager;
+    private final MetricsService metricsService;
+    private final EarlyRefreshPolicy refreshPolicy;
+    private final Object[] locks = new Object[LOCK_STRIPES];
+    private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 最近的加载耗时（毫秒），用于@CachePut写入时估计XFetch的delta
+     */
+    private volatile long recentLoadMillis;
+
+    TwoLevelCache(String name, Cache<String, Object> localCache, org.springframework.cache.Cache redisCache,
+                  TwoLevelCacheManager cacheManager, MetricsService metricsService, EarlyRefreshPolicy refreshPolicy) {
+        this.name = name;
+        this.localCache = localCache;
+        this.redisCache = redisCache;
+        this.cacheManager = cacheManager;
+        this.metricsService = metricsService;
+        this.refreshPolicy = refreshPolicy;
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return this;
+    }
+
+    @Override
+    public ValueWrapper get(Object key) {
+        CacheEnvelope<Object> envelope = lookup(key);
+        return envelope != null ? new SimpleValueWrapper(envelope.getValue()) : null;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Class<T> type) {
+        ValueWrapper wrapper = get(key);
+        Object value = wrapper != null ? wrapper.get() : null;
+        if (value != null && type != null && !type.isInstance(value)) {
+            throw new IllegalStateException("缓存值类型不匹配: cache=" + name + ", key=" + key + ", type=" + type.getName());
+        }
+        return (T) value;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        CacheEnvelope<Object> envelope = lookup(key);
+        if (envelope != null) {
+            if (refreshPolicy != null && refreshPolicy.shouldRefresh(envelope, System.currentTimeMillis())) {
+                refreshAsync(key, valueLoader);
+            }
+            return (T) envelope.getValue();
+        }
+
+        if (refreshPolicy == null) {
+            // Redis缓存自身保证同一实例内对同一key只加载一次
+            T value = redisCache.get(key, () -> timedLoad(valueLoader).getValue());
+            if (value != null) {
+                localCache.put(localKey(key), value);
+            }
+            return value;
+        }
+
+        synchronized (locks[Math.floorMod(localKey(key).hashCode(), LOCK_STRIPES)]) {
+            envelope = lookup(key);
+            if (envelope != null) {
+                return (T) envelope.getValue();
+            }
+            CacheEnvelope<T> loaded = timedLoad(valueLoader);
+            if (loaded.getValue() != null) {
+                write(key, loaded);
+            }
+            return loaded.getValue();
+        }
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        if (value == null) {
+            evict(key);
+            return;
+        }
+        write(key, refreshPolicy != null
+                ? refreshPolicy.wrap(value, recentLoadMillis, System.currentTimeMillis())
+                : new CacheEnvelope<>(value, Long.MAX_VALUE, 0));
+    }
+
+    @Override
+    public void evict(Object key) {
+        redisCache.evict(key);
+        localCache.invalidate(localKey(key));
+        cacheManager.publishEviction(name, localKey(key));
+    }
+
+    @Override
+    public void clear() {
+        redisCache.clear();
+        localCache.invalidateAll();
+        cacheManager.publishEviction(name, null);
+    }
+
+    /**
+     * 批量读取
+     * 先查L1，剩余key通过一次Redis MGET读取并回填L1；已超过逻辑有效期的条目按未命中返回，由调用方批量重新加载
+     *
+     * @return 命中的key -> 缓存值
+     */
+    public Map<Object, Object> getAll(Collection<?> keys) {
+        Map<Object, Object> result = new LinkedHashMap<>();
+        List<Object> remaining = new ArrayList<>();
+        long now = System.currentTimeMillis();
+
+        for (Object key : keys) {
+            Object local = localCache.getIfPresent(localKey(key));
+            CacheEnvelope<Object> envelope = local != null ? envelopeOf(local) : null;
+            metricsService.recordCacheHit(name + ".local", envelope != null);
+            if (envelope != null && envelope.getExpiresAt() > now) {
+                result.put(key, envelope.getValue());
+            } else {
+                remaining.add(key);
+            }
+        }
+        if (remaining.isEmpty()) {
+            return result;
+        }
+
+        if (!(redisCache instanceof RedisCache rc)) {
+            for (Object key : remaining) {
+                ValueWrapper wrapper = get(key);
+                if (wrapper != null && wrapper.get() != null) {
+                    result.put(key, wrapper.get());
+                }
+            }
+            return result;
+        }
+
+        RedisCacheConfiguration configuration = rc.getCacheConfiguration();
+        byte[][] redisKeys = remaining.stream().map(key -> redisKey(configuration, key)).toArray(byte[][]::new);
+        List<byte[]> values = cacheManager.redisTemplate().execute(
+                (RedisCallback<List<byte[]>>) connection -> connection.stringCommands().mGet(redisKeys));
+
+        for (int i = 0; i < remaining.size(); i++) {
+            byte[] bytes = values != null ? values.get(i) : null;
+            Object stored = bytes != null ? configuration.getValueSerializationPair().read(ByteBuffer.wrap(bytes)) : null;
+            CacheEnvelope<Object> envelope = stored != null ? envelopeOf(stored) : null;
+            boolean hit = envelope != null && envelope.getValue() != null && envelope.getExpiresAt() > now;
+            metricsService.recordCacheHit(name + ".redis", hit);
+            if (hit) {
+                Object key = remaining.get(i);
+                localCache.put(localKey(key), refreshPolicy != null ? envelope : envelope.getValue());
+                result.put(key, envelope.getValue());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 批量写入
+     * 通过一次Redis pipeline写入并回填L1
+     *
+     * <p>{@link #getAll}未命中的key不代表Redis和其他实例的L1中没有：超过逻辑有效期、处于过期宽限期内的条目
+     * 仍然存在并被其他实例的L1持有，回源后写入这类key时需要广播失效，否则其他实例会继续返回旧值
+     *
+     * @param broadcastEviction 是否在同一个pipeline中广播失效通知，使其他实例的L1失效
+     */
+    public void putAll(Map<?, ?> values, boolean broadcastEviction) {
+        if (values.isEmpty()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        Map<Object, Object> stored = new LinkedHashMap<>();
+        values.forEach((key, value) -> {
+            if (value != null) {
+                stored.put(key, refreshPolicy != null ? refreshPolicy.wrap(value, recentLoadMillis, now) : value);
+            }
+        });
+
+        if (redisCache instanceof RedisCache rc) {
+            RedisCacheConfiguration configuration = rc.getCacheConfiguration();
+            cacheManager.redisTemplate().executePipelined((RedisCallback<Object>) connection -> {
+                stored.forEach((key, value) -> {
+                    byte[] bytes = ByteUtils.getBytes(configuration.getValueSerializationPair().write(value));
+                    Duration ttl = configuration.getTtlFunction().getTimeToLive(key, value);
+                    connection.stringCommands().set(redisKey(configuration, key), bytes,
+                            ttl != null && !ttl.isZero() && !ttl.isNegative()
+                                    ? Expiration.from(ttl) : Expiration.persistent(),
+                            RedisStringCommands.SetOption.upsert());
+                    if (broadcastEviction) {
+                        connection.publish(TwoLevelCacheManager.EVICTION_CHANNEL.getBytes(StandardCharsets.UTF_8),
+                                cacheManager.evictionMessage(name, localKey(key)).getBytes(StandardCharsets.UTF_8));
+                    }
+                });
+                return null;
+            });
+        } else {
+            stored.forEach(redisCache::put);
+            if (broadcastEviction) {
+                stored.keySet().forEach(key -> cacheManager.publishEviction(name, localKey(key)));
+            }
+        }
+        stored.forEach((key, value) -> localCache.put(localKey(key), value));
+    }
+
+    /**
+     * 批量失效
+     * 通过一次Redis pipeline删除并广播失效，再清除本地缓存
+     */
+    public void evictAll(Collection<?> keys) {
+        if (keys.isEmpty()) {
+            return;
+        }
+
+        if (redisCache instanceof RedisCache rc) {
+            RedisCacheConfiguration configuration = rc.getCacheConfiguration();
+            cacheManager.redisTemplate().executePipelined((RedisCallback<Object>) connection -> {
+                for (Object key : keys) {
+                    connection.keyCommands().del(redisKey(configuration, key));
+                    connection.publish(TwoLevelCacheManager.EVICTION_CHANNEL.getBytes(StandardCharsets.UTF_8),
+                            cacheManager.evictionMessage(name, localKey(key)).getBytes(StandardCharsets.UTF_8));
+                }
+                return null;
+            });
+        } else {
+            keys.forEach(key -> {
+                redisCache.evict(key);
+                cacheManager.publishEviction(name, localKey(key));
+            });
+        }
+        keys.forEach(key -> localCache.invalidate(localKey(key)));
+    }
+
+    /**
+     * 收到其他实例的失效通知时清除本地缓存
+     *
+     * @param localKey 为null时清空
+     */
+    void evictLocal(String localKey) {
+        if (localKey == null) {
+            localCache.invalidateAll();
+        } else {
+            localCache.invalidate(localKey);
+        }
+    }
+
+    /**
+     * 依次查找L1、L2，L2命中时回填L1
+     */
+    private CacheEnvelope<Object> lookup(Object key) {
+        String localKey = localKey(key);
+        Object local = localCache.getIfPresent(localKey);
+        metricsService.recordCacheHit(name + ".local", local != null);
+        if (local != null) {
+            return envelopeOf(local);
+        }
+
+        ValueWrapper wrapper = redisCache.get(key);
+        CacheEnvelope<Object> envelope = wrapper != null && wrapper.get() != null ? envelopeOf(wrapper.get()) : null;
+        if (envelope != null && envelope.getValue() == null) {
+            // 旧格式或损坏的数据按未命中处理
+            envelope = null;
+        }
+        metricsService.recordCacheHit(name + ".redis", envelope != null);
+        if (envelope != null) {
+            localCache.put(localKey, refreshPolicy != null ? envelope : envelope.getValue());
+        }
+        return envelope;
+    }
+
+    /**
+     * 写入两级缓存并通知其他实例
+     */
+    private void write(Object key, CacheEnvelope<?> envelope) {
+        redisCache.put(key, refreshPolicy != null ? envelope : envelope.getValue());
+        localCache.put(localKey(key), refreshPolicy != null ? envelope : envelope.getValue());
+        cacheManager.publishEviction(name, localKey(key));
+    }
+
+    /**
+     * 后台刷新：同一实例内同一key只提交一次，跨实例由Redis短锁去重
+     */
+    private void refreshAsync(Object key, Callable<?> valueLoader) {
+        String localKey = localKey(key);
+        if (!refreshing.add(localKey)) {
+            return;
+        }
+        try {
+            cacheManager.refreshExecutor().execute(() -> {
+                try {
+                    if (!cacheManager.tryAcquireRefresh(name, localKey)) {
+                        return;
+                    }
+                    CacheEnvelope<?> loaded = timedLoad(valueLoader);
+                    if (loaded.getValue() != null) {
+                        write(key, loaded);
+                        log.debug("缓存后台刷新完成: cache={}, key={}, 耗时={}ms", name, localKey, loaded.getLoadMillis());
+                    }
+                } catch (Exception e) {
+                    log.warn("缓存后台刷新失败，继续使用现有数据: cache={}, key={}", name, localKey, e);
+                } finally {
+                    refreshing.remove(localKey);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            refreshing.remove(localKey);
+        }
+    }
+
+    /**
+     * 调用加载函数并记录耗时
+     */
+    private <T> CacheEnvelope<T> timedLoad(Callable<T> valueLoader) {
+        long startTime = System.currentTimeMillis();
+        T value;
+        try {
+            value = valueLoader.call();
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new ValueRetrievalException(null, valueLoader, e);
+        }
+        long now = System.currentTimeMillis();
+        long loadMillis = now - startTime;
+        recentLoadMillis = loadMillis;
+        metricsService.recordExecutionTime("cache.load." + name, loadMillis);
+        return refreshPolicy != null
+                ? refreshPolicy.wrap(value, loadMillis, now)
+                : new CacheEnvelope<>(value, Long.MAX_VALUE, loadMillis);
+    }
+
+    @SuppressWarnings("unchecked")
+    private CacheEnvelope<Object> envelopeOf(Object stored) {
+        if (refreshPolicy != null && stored instanceof CacheEnvelope<?> envelope) {
+            return (CacheEnvelope<Object>) envelope;
+        }
+        return new CacheEnvelope<>(stored, Long.MAX_VALUE, 0);
+    }
+
+    private byte[] redisKey(RedisCacheConfiguration configuration, Object key) {
+        return ByteUtils.getBytes(configuration.getKeySerializationPair()
+                .write(configuration.getKeyPrefixFor(name) + localKey(key)));
+    }
+
+    private static String localKey(Object key) {
+        return String.valueOf(key);
+    }
+}
@@ -0,0 +1,156 @@
+package com.userprofile.profile.config;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.userprofile.common.metrics.MetricsService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.*;
+
+/**
+ * 两级缓存管理器
+ * 在Redis缓存管理器前加一层有界的Caffeine本地缓存，本地缓存通过Redis pub/sub做跨实例失效
+ */
+@Slf4j
+public class TwoLevelCacheManager implements CacheManager, DisposableBean {
+
+    static final String EVICTION_CHANNEL = "cache:evict";
+
+    /**
+     * 清空整个缓存时的消息key
+     */
+    private static final String CLEAR_ALL = "*";
+
+    private static final String REFRESH_LOCK_PREFIX = "cache:refresh:";
+
+    /**
+     * 跨实例后台刷新去重锁的持有时间
+     */
+    private static final Duration REFRESH_LOCK_TTL = Duration.ofSeconds(30);
+
+    private final CacheManager redisCacheManager;
+    private final StringRedisTemplate redisTemplate;
+    private final MetricsService metricsService;
+    private final long localMaxSize;
+    private final Duration localTtl;
+    private final String instanceId = UUID.randomUUID().toString();
+    private final Map<String, TwoLevelCache> caches = new ConcurrentHashMap<>();
+    private final Map<String, EarlyRefreshPolicy> refreshPolicies = new ConcurrentHashMap<>();
+    private final ThreadPoolExecutor refreshExecutor = new ThreadPoolExecutor(2, 2, 60, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(1000), r -> {
+                Thread thread = new Thread(r, "CacheRefresh-" + UUID.randomUUID().toString().substring(0, 8));
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    public TwoLevelCacheManager(CacheManager redisCacheManager, StringRedisTemplate redisTemplate,
+                                RedisMessageListenerContainer listenerContainer, MetricsService metricsService,
+                                long localMaxSize, Duration localTtl) {
+        this.redisCacheManager = redisCacheManager;
+        this.redisTemplate = redisTemplate;
+        this.metricsService = metricsService;
+        this.localMaxSize = localMaxSize;
+        this.localTtl = localTtl;
+        listenerContainer.addMessageListener((message, pattern) ->
+                onEviction(new String(message.getBody(), StandardCharsets.UTF_8)), new ChannelTopic(EVICTION_CHANNEL));
+    }
+
+    @Override
+    public Cache getCache(String name) {
+        TwoLevelCache cache = caches.get(name);
+        if (cache != null) {
+            return cache;
+        }
+        Cache redisCache = redisCacheManager.getCache(name);
+        if (redisCache == null) {
+            return null;
+        }
+        return caches.computeIfAbsent(name, n -> new TwoLevelCache(n,
+                Caffeine.newBuilder().maximumSize(localMaxSize).expireAfterWrite(localTtl).build(),
+                redisCache, this, metricsService, refreshPolicies.get(n)));
+    }
+
+    /**
+     * 为缓存开启提前刷新
+     * Redis中的物理过期时间应比逻辑有效期更长，超出部分即为陈旧数据可继续使用的时长
+     *
+     * @param cacheName 缓存名称
+     * @param ttl       逻辑有效期
+     * @param beta      XFetch系数，越大越倾向提前刷新（默认1.0）
+     */
+    public void enableEarlyRefresh(String cacheName, Duration ttl, double beta) {
+        refreshPolicies.put(cacheName, new EarlyRefreshPolicy(ttl, beta));
+    }
+
+    @Override
+    public Collection<String> getCacheNames() {
+        return redisCacheManager.getCacheNames();
+    }
+
+    /**
+     * 广播本地缓存失效，消息格式：实例ID|缓存名|key
+     */
+    void publishEviction(String cacheName, String localKey) {
+        try {
+            redisTemplate.convertAndSend(EVICTION_CHANNEL, evictionMessage(cacheName, localKey));
+        } catch (Exception e) {
+            // 广播失败时其他实例依赖本地缓存TTL兜底
+            log.warn("缓存失效广播失败: cache={}, key={}", cacheName, localKey, e);
+        }
+    }
+
+    /**
+     * 失效通知消息体：instanceId|cacheName|key，key为*时表示清空
+     */
+    String evictionMessage(String cacheName, String localKey) {
+        return instanceId + "|" + cacheName + "|" + (localKey != null ? localKey : CLEAR_ALL);
+    }
+
+    StringRedisTemplate redisTemplate() {
+        return redisTemplate;
+    }
+
+    Executor refreshExecutor() {
+        return refreshExecutor;
+    }
+
+    /**
+     * 抢占跨实例的后台刷新锁，锁到期自动释放，期间其他实例不再重复刷新同一key
+     */
+    boolean tryAcquireRefresh(String cacheName, String localKey) {
+        try {
+            return Boolean.TRUE.equals(redisTemplate.opsForValue().setIfAbsent(
+                    REFRESH_LOCK_PREFIX + cacheName + ":" + localKey, instanceId, REFRESH_LOCK_TTL));
+        } catch (Exception e) {
+            // Redis不可用时退化为仅实例内去重
+            log.warn("获取缓存刷新锁失败: cache={}, key={}", cacheName, localKey, e);
+            return true;
+        }
+    }
+
+    @Override
+    public void destroy() {
+        refreshExecutor.shutdownNow();
+    }
+
+    void onEviction(String message) {
+        String[] parts = message.split("\\|", 3);
+        if (parts.length < 3 || instanceId.equals(parts[0])) {
+            return;
+        }
+        TwoLevelCache cache = caches.get(parts[1]);
+        if (cache != null) {
+            cache.evictLocal(CLEAR_ALL.equals(parts[2]) ? null : parts[2]);
+        }
+    }
+}
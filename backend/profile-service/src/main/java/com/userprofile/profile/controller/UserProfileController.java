@@ -1,6 +1,7 @@
 package com.userprofile.profile.controller;
 
 import com.userprofile.common.response.Result;
+import com.userprofile.profile.dto.BatchProfileRequest;
 import com.userprofile.profile.dto.InitialProfileRequest;
 import com.userprofile.profile.dto.UserProfileDTO;
 import com.userprofile.profile.entity.UserProfile;
@@ -47,6 +48,14 @@ public class UserProfileController {
         return Result.success(profile);
     }
 
+    @Operation(summary = "批量获取用户画像", description = "单次最多500个用户，可通过fields只返回需要的字段")
+    @PostMapping("/batch")
+    public Result<List<UserProfile>> getProfiles(@RequestBody BatchProfileRequest request) {
+        List<UserProfile> profiles = profileService.getProfiles(
+                request.getUserIds() != null ? request.getUserIds() : List.of(), request.getFields());
+        return Result.success(profiles);
+    }
+
     @Operation(summary = "获取所有用户画像")
     @GetMapping
     public Result<List<UserProfile>> getAllProfiles() {
@@ -94,6 +103,13 @@ public class UserProfileController {
         return Result.success("评分重新计算完成", profile);
     }
 
+    @Operation(summary = "批量重新计算画像评分", description = "只写回评分输入有变化的画像")
+    @PutMapping("/recalculate/batch")
+    public Result<UserProfileService.BatchRecalculationResult> recalculateScores(
+            @RequestBody BatchProfileRequest request) {
+        return Result.success("评分批量重新计算完成", profileService.recalculateScoresBatch(request.getUserIds()));
+    }
+
     @Operation(summary = "获取画像统计信息")
     @GetMapping("/statistics")
     public Result<Map<String, Object>> getStatistics() {
@@ -0,0 +1,31 @@
+package com.userprofile.profile.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * 批量用户画像请求（批量查询、批量重算评分）
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchProfileRequest implements Serializable {
+
+    /**
+     * 用户ID列表
+     */
+    private List<Long> userIds;
+
+    /**
+     * 需要返回的画像字段（仅批量查询使用，为空时返回完整画像）
+     * 可选：digitalBehavior、coreNeeds、valueAssessment、stickinessAndLoyalty、profileScore、createTime、updateTime；
+     * userId、username始终返回
+     */
+    private List<String> fields;
+}
@@ -3,7 +3,9 @@ package com.userprofile.profile.engine;
 import com.userprofile.profile.entity.UserProfile;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
 
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 
 /**
@@ -14,8 +16,50 @@ import java.util.*;
 @Component
 public class ProfileCalculationEngine {
 
+    /**
+     * 评分算法版本，修改calculateProfileScore的计算逻辑时必须递增，使已有画像的评分指纹全部失效
+     */
+    public static final int SCORING_VERSION = 1;
+
+    /**
+     * 计算评分输入指纹
+     * 覆盖calculateProfileScore读取的全部字段及评分算法版本，指纹不变则评分结果不变
+     *
+     * @return 形如"v1:&lt;md5&gt;"的指纹
+     */
+    public String scoreFingerprint(UserProfile profile) {
+        StringBuilder inputs = new StringBuilder();
+
+        UserProfile.DigitalBehavior behavior = profile.getDigitalBehavior();
+        if (behavior != null) {
+            inputs.append("d|").append(behavior.getProductCategories())
+                    .append('|').append(behavior.getBrandPreferences())
+                    .append('|').append(behavior.getInfoAcquisitionHabit())
+                    .append('|').append(behavior.getPurchaseDecisionPreference());
+        }
+
+        UserProfile.ValueAssessment assessment = profile.getValueAssessment();
+        if (assessment != null) {
+            // 偏好分析按key排序，避免Map迭代顺序不同导致指纹变化
+            Map<String, Object> preferences = assessment.getPreferenceAnalysis() != null
+                    ? new TreeMap<>(assessment.getPreferenceAnalysis()) : null;
+            inputs.append("|v|").append(preferences)
+                    .append('|').append(assessment.getProfileQuality());
+        }
+
+        UserProfile.StickinessAndLoyalty stickiness = profile.getStickinessAndLoyalty();
+        if (stickiness != null) {
+            inputs.append("|s|").append(stickiness.getLoyaltyScore())
+                    .append('|').append(stickiness.getConcerns());
+        }
+
+        return "v" + SCORING_VERSION + ":"
+                + DigestUtils.md5DigestAsHex(inputs.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
     /**
      * 计算综合画像评分
+     * 修改计算逻辑或读取的字段时需同步递增SCORING_VERSION、扩展scoreFingerprint
      */
     public Double calculateProfileScore(UserProfile profile) {
         double score = 0.0;
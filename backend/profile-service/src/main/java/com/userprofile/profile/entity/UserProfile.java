@@ -68,6 +68,11 @@ public class UserProfile {
      */
     private Double profileScore;
 
+    /**
+     * 评分输入指纹（含评分算法版本），输入未变化时夜间重算跳过写入
+     */
+    private String scoreFingerprint;
+
     /**
      * 创建时间
      */
@@ -0,0 +1,51 @@
+package com.userprofile.profile.event;
+
+import com.userprofile.common.event.DomainEvent;
+import com.userprofile.profile.entity.UserProfile;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+/**
+ * 用户画像变更事件
+ * 画像创建、更新、重算或删除后发布，供内存索引等派生数据同步
+ */
+@Data
+@EqualsAndHashCode(callSuper = true)
+public class ProfileChangedEvent extends DomainEvent {
+
+    /**
+     * 用户ID
+     */
+    private Long userId;
+
+    /**
+     * 变更后的画像（删除时为null）
+     */
+    private UserProfile profile;
+
+    /**
+     * 是否为删除
+     */
+    private boolean deleted;
+
+    private ProfileChangedEvent(Long userId, UserProfile profile, boolean deleted) {
+        super(String.valueOf(userId));
+        this.userId = userId;
+        this.profile = profile;
+        this.deleted = deleted;
+    }
+
+    /**
+     * 画像已保存
+     */
+    public static ProfileChangedEvent updated(UserProfile profile) {
+        return new ProfileChangedEvent(profile.getUserId(), profile, false);
+    }
+
+    /**
+     * 画像已删除
+     */
+    public static ProfileChangedEvent deleted(Long userId) {
+        return new ProfileChangedEvent(userId, null, true);
+    }
+}
@@ -4,6 +4,8 @@ import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.time.LocalDateTime;
@@ -17,6 +19,10 @@ import java.util.Map;
 @NoArgsConstructor
 @AllArgsConstructor
 @Document(collection = "user_events")
+@CompoundIndexes({
+    @CompoundIndex(name = "idx_processed_userId", def = "{'processed': 1, 'userId': 1, '_id': 1}"),
+    @CompoundIndex(name = "idx_userId_eventType", def = "{'userId': 1, 'eventType': 1}")
+})
 public class UserEvent {
 
     @Id
@@ -1,6 +1,7 @@
 package com.userprofile.profile.event;
 
 import com.userprofile.common.response.Result;
+import com.userprofile.profile.analytics.BehaviorInsights;
 import com.userprofile.profile.analytics.UserBehaviorAnalytics;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
@@ -43,6 +44,13 @@ public class UserEventController {
         return Result.success(events);
     }
 
+    @Operation(summary = "综合行为洞察", description = "一次读取计算活跃度、兴趣、RFM、流失风险、漏斗和转化率")
+    @GetMapping("/user/{userId}/insights")
+    public Result<BehaviorInsights> getInsights(@PathVariable Long userId) {
+        BehaviorInsights insights = behaviorAnalytics.analyzeInsights(userId);
+        return Result.success(insights);
+    }
+
     @Operation(summary = "计算用户活跃度")
     @GetMapping("/user/{userId}/activity")
     public Result<Map<String, Object>> getUserActivity(@PathVariable Long userId) {
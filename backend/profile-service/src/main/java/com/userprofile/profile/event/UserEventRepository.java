@@ -13,7 +13,7 @@ import java.util.List;
  * 用户事件数据访问接口
  */
 @Repository
-public interface UserEventRepository extends MongoRepository<UserEvent, String> {
+public interface UserEventRepository extends MongoRepository<UserEvent, String>, UserEventRepositoryCustom {
 
     /**
      * 查询用户的事件列表
@@ -35,7 +35,7 @@ public interface UserEventRepository extends MongoRepository<UserEvent, String>
     List<UserEvent> findByUserIdAndEventType(Long userId, UserEvent.EventType eventType);
 
     /**
-     * 查询未处理的事件（用于批量计算画像）
+     * 查询未处理的事件（一次性加载到内存，数据量大时请使用{@link #streamUnprocessedEvents(Long)}）
      */
     @Query("{'processed': false}")
     List<UserEvent> findUnprocessedEvents();
@@ -0,0 +1,41 @@
+package com.userprofile.profile.event;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * 用户事件自定义数据访问接口
+ * 提供基于MongoTemplate实现的游标式查询
+ */
+public interface UserEventRepositoryCustom {
+
+    /**
+     * 以游标方式流式读取未处理事件，按userId升序排列
+     * 只返回id、userId、eventType字段，调用方必须关闭返回的Stream以释放服务端游标
+     *
+     * @param afterUserId 断点续跑时的起始用户ID（不包含），为null时从头开始
+     */
+    Stream<UserEvent> streamUnprocessedEvents(Long afterUserId);
+
+    /**
+     * 批量标记事件为已处理
+     * 单次updateMany写入，替代逐条save
+     *
+     * @param eventIds 事件ID列表
+     * @return 实际更新的事件数
+     */
+    long markProcessed(Collection<String> eventIds);
+
+    /**
+     * 查询用户已支付过的商品ID（去重）
+     * 服务端distinct，只返回商品ID，不加载事件文档
+     */
+    List<String> findPurchasedProductIds(Long userId);
+
+    /**
+     * 批量查询多个用户的支付事件
+     * 一次$in查询，只返回userId、eventData.productId、weight字段
+     */
+    List<UserEvent> findPurchasesByUserIds(Collection<Long> userIds);
+}
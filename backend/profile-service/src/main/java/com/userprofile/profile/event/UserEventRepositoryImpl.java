@@ -0,0 +1,86 @@
+package com.userprofile.profile.event;
+
+import com.userprofile.common.metrics.MetricsService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * 用户事件自定义数据访问实现
+ */
+@RequiredArgsConstructor
+public class UserEventRepositoryImpl implements UserEventRepositoryCustom {
+
+    /**
+     * 每次getMore从服务端拉取的文档数，控制单次内存占用
+     */
+    private static final int CURSOR_BATCH_SIZE = 1000;
+
+    private final MongoTemplate mongoTemplate;
+    private final MetricsService metricsService;
+
+    @Override
+    public Stream<UserEvent> streamUnprocessedEvents(Long afterUserId) {
+        Criteria criteria = Criteria.where("processed").is(false);
+        if (afterUserId != null) {
+            criteria = criteria.and("userId").gt(afterUserId);
+        }
+
+        Query query = Query.query(criteria)
+                .with(Sort.by(Sort.Direction.ASC, "userId", "_id"))
+                .cursorBatchSize(CURSOR_BATCH_SIZE);
+        query.fields().include("userId", "eventType");
+
+        return mongoTemplate.stream(query, UserEvent.class);
+    }
+
+    @Override
+    public long markProcessed(Collection<String> eventIds) {
+        if (eventIds.isEmpty()) {
+            return 0;
+        }
+
+        long startTime = System.currentTimeMillis();
+        long modified = mongoTemplate.updateMulti(
+                Query.query(Criteria.where("id").in(eventIds)),
+                Update.update("processed", true),
+                UserEvent.class
+        ).getModifiedCount();
+
+        metricsService.recordBatchWrite("events.markProcessed", eventIds.size(),
+                System.currentTimeMillis() - startTime);
+        return modified;
+    }
+
+    @Override
+    public List<String> findPurchasedProductIds(Long userId) {
+        Query query = Query.query(Criteria.where("userId").is(userId)
+                .and("eventType").is(UserEvent.EventType.PAY));
+
+        return mongoTemplate.findDistinct(query, "eventData.productId", UserEvent.class, Object.class).stream()
+                .filter(String.class::isInstance)
+                .map(String.class::cast)
+                .toList();
+    }
+
+    @Override
+    public List<UserEvent> findPurchasesByUserIds(Collection<Long> userIds) {
+        if (userIds.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        Query query = Query.query(Criteria.where("userId").in(userIds)
+                .and("eventType").is(UserEvent.EventType.PAY));
+        query.fields().include("userId", "eventData.productId", "weight");
+
+        return mongoTemplate.find(query, UserEvent.class);
+    }
+}
@@ -1,11 +1,17 @@
 package com.userprofile.profile.event;
 
+import com.userprofile.profile.analytics.UserBehaviorAggregateService;
+import com.userprofile.profile.recommendation.RecommendationCache;
+import com.userprofile.profile.recommendation.TrendingService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 /**
  * 用户事件服务
@@ -16,6 +22,9 @@ import java.util.List;
 public class UserEventService {
 
     private final UserEventRepository eventRepository;
+    private final UserBehaviorAggregateService aggregateService;
+    private final TrendingService trendingService;
+    private final RecommendationCache recommendationCache;
 
     /**
      * 保存单个事件
@@ -32,7 +41,11 @@ public class UserEventService {
         }
 
         log.info("记录用户事件: userId={}, type={}", event.getUserId(), event.getEventType());
-        return eventRepository.save(event);
+        UserEvent saved = eventRepository.save(event);
+        aggregateService.applyEvents(List.of(saved));
+        trendingService.recordPurchases(List.of(saved));
+        invalidateRecommendations(List.of(saved));
+        return saved;
     }
 
     /**
@@ -51,7 +64,11 @@ public class UserEventService {
             }
         });
 
-        return eventRepository.saveAll(events);
+        List<UserEvent> saved = eventRepository.saveAll(events);
+        aggregateService.applyEvents(saved);
+        trendingService.recordPurchases(saved);
+        invalidateRecommendations(saved);
+        return saved;
     }
 
     /**
@@ -61,6 +78,19 @@ public class UserEventService {
         return eventRepository.findByUserIdOrderByEventTimeDesc(userId);
     }
 
+    /**
+     * 支付和商品浏览会改变推荐结果（已购过滤、兴趣偏好），清除相关用户的推荐缓存
+     */
+    private void invalidateRecommendations(List<UserEvent> events) {
+        Set<Long> userIds = events.stream()
+                .filter(e -> e.getEventType() == UserEvent.EventType.PAY
+                        || e.getEventType() == UserEvent.EventType.PRODUCT_VIEW)
+                .map(UserEvent::getUserId)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+        recommendationCache.invalidate(userIds);
+    }
+
     /**
      * 获取事件的默认权重
      */
@@ -0,0 +1,39 @@
+package com.userprofile.profile.recommendation;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * 用户已购商品集合
+ * 每次推荐请求加载一次，随请求上下文释放，推荐结果过滤时只做内存查找
+ */
+public class PurchasedItems {
+
+    private final Set<String> productIds;
+
+    private PurchasedItems(Set<String> productIds) {
+        this.productIds = productIds;
+    }
+
+    /**
+     * 由商品ID列表构建
+     */
+    public static PurchasedItems of(Collection<String> productIds) {
+        return new PurchasedItems(new HashSet<>(productIds));
+    }
+
+    /**
+     * 是否已购买该商品
+     */
+    public boolean contains(String productId) {
+        return productIds.contains(productId);
+    }
+
+    /**
+     * 已购商品数
+     */
+    public int size() {
+        return productIds.size();
+    }
+}
@@ -0,0 +1,252 @@
+package com.userprofile.profile.recommendation;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.userprofile.common.metrics.MetricsService;
+import com.userprofile.profile.config.CacheEnvelope;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.serializer.GenericToStringSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * 推荐结果缓存
+ * 本地Caffeine近缓存 + Redis哈希（每个用户一个key，field为策略:数量），
+ * 每个field带有自己的过期时间，读取时检查；哈希key的TTL只用于回收不再访问的用户。
+ * 用户产生支付或商品浏览行为时递增该用户的缓存版本号并删除Redis key，通过pub/sub通知各实例清除本地缓存；
+ * 计算结果只在版本号与计算开始时一致时写入，失效之前开始的计算不会把旧结果写回缓存。
+ * 有子策略未成功的降级结果不写入缓存，下次请求重新计算
+ */
+@Slf4j
+@Component
+public class RecommendationCache {
+
+    private static final String KEY_PREFIX = "recommendations:";
+    private static final String GENERATION_PREFIX = "recommendations:gen:";
+    private static final String INVALIDATION_CHANNEL = "recommendations:invalidate";
+
+    /**
+     * 版本号未变化时写入field并设置key的过期时间
+     * KEYS[1]=推荐缓存哈希，KEYS[2]=版本号；ARGV[1]=计算开始时的版本号（不存在时为空串），
+     * ARGV[2]=field，ARGV[3]=序列化后的值，ARGV[4]=过期毫秒数
+     */
+    private static final RedisScript<Long> PUT_IF_CURRENT_SCRIPT = new DefaultRedisScript<>(
+            "if (redis.call('GET', KEYS[2]) or '') ~= ARGV[1] then return 0 end " +
+            "redis.call('HSET', KEYS[1], ARGV[2], ARGV[3]) " +
+            "redis.call('PEXPIRE', KEYS[1], ARGV[4]) " +
+            "return 1",
+            Long.class);
+
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final RedisMessageListenerContainer listenerContainer;
+    private final MetricsService metricsService;
+    private final Duration ttl;
+    private final Cache<Long, ConcurrentMap<String, List<RecommendationResult>>> localCache;
+
+    public RecommendationCache(RedisTemplate<String, Object> redisTemplate,
+                               StringRedisTemplate stringRedisTemplate,
+                               RedisMessageListenerContainer listenerContainer,
+                               MetricsService metricsService,
+                               @Value("${profile.recommendation.cache.ttl-minutes:15}") long ttlMinutes,
+                               @Value("${profile.recommendation.cache.local-max-users:10000}") long localMaxUsers,
+                               @Value("${profile.recommendation.cache.local-ttl-seconds:60}") long localTtlSeconds) {
+        this.redisTemplate = redisTemplate;
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.listenerContainer = listenerContainer;
+        this.metricsService = metricsService;
+        this.ttl = Duration.ofMinutes(ttlMinutes);
+        this.localCache = Caffeine.newBuilder()
+                .maximumSize(localMaxUsers)
+                .expireAfterWrite(Duration.ofSeconds(localTtlSeconds))
+                .build();
+    }
+
+    @PostConstruct
+    public void subscribe() {
+        listenerContainer.addMessageListener((message, pattern) -> {
+            String body = new String(message.getBody(), StandardCharsets.UTF_8);
+            List<Long> userIds = Arrays.stream(body.split(","))
+                    .filter(s -> !s.isBlank())
+                    .map(Long::valueOf)
+                    .toList();
+            localCache.invalidateAll(userIds);
+        }, new ChannelTopic(INVALIDATION_CHANNEL));
+    }
+
+    /**
+     * 读取缓存，未命中时计算并写入两级缓存
+     *
+     * @param userId   用户ID
+     * @param strategy 推荐策略
+     * @param limit    推荐数量
+     * @param loader   未命中时的计算逻辑
+     * @return 推荐结果副本，调用方可自由修改
+     */
+    @SuppressWarnings("unchecked")
+    public List<RecommendationResult> get(Long userId, String strategy, int limit, Supplier<Loaded> loader) {
+        String field = strategy + ":" + limit;
+
+        // 1. 本地缓存
+        ConcurrentMap<String, List<RecommendationResult>> local = localCache.getIfPresent(userId);
+        List<RecommendationResult> cached = local != null ? local.get(field) : null;
+        metricsService.recordCacheHit("recommendations.local", cached != null);
+        if (cached != null) {
+            return copy(cached);
+        }
+
+        // 2. Redis
+        try {
+            Object value = redisTemplate.opsForHash().get(key(userId), field);
+            // 哈希key的TTL随其他field的写入而延长，单个field是否过期以其自身的过期时间为准
+            boolean hit = value instanceof CacheEnvelope<?> envelope
+                    && envelope.getExpiresAt() > System.currentTimeMillis()
+                    && envelope.getValue() instanceof List<?>;
+            metricsService.recordCacheHit("recommendations.redis", hit);
+            if (hit) {
+                List<RecommendationResult> results =
+                        (List<RecommendationResult>) ((CacheEnvelope<?>) value).getValue();
+                putLocal(userId, field, results);
+                return copy(results);
+            }
+        } catch (Exception e) {
+            log.warn("读取推荐缓存失败: userId={}, field={}", userId, field, e);
+        }
+
+        // 3. 计算并回填，写入前确认计算期间没有发生失效
+        String generation = readGeneration(userId);
+        long loadStart = System.currentTimeMillis();
+        Loaded loaded = loader.get();
+        long loadEnd = System.currentTimeMillis();
+        List<RecommendationResult> results = loaded.results();
+        if (!loaded.complete()) {
+            log.debug("推荐结果降级，不写入缓存: userId={}, field={}", userId, field);
+            return copy(results);
+        }
+        if (generation == null) {
+            return copy(results);
+        }
+
+        // 先写本地缓存：写入Redis之后发生的失效广播一定晚于本地写入，不会被本地写入覆盖
+        putLocal(userId, field, results);
+        boolean written = false;
+        try {
+            written = putIfCurrent(userId, field,
+                    new CacheEnvelope<>(new ArrayList<>(results), loadEnd + ttl.toMillis(), loadEnd - loadStart),
+                    generation);
+            if (!written) {
+                log.debug("计算期间推荐缓存已失效，不写入: userId={}, field={}", userId, field);
+            }
+        } catch (Exception e) {
+            log.warn("写入推荐缓存失败: userId={}, field={}", userId, field, e);
+        }
+        if (!written) {
+            ConcurrentMap<String, List<RecommendationResult>> fields = localCache.getIfPresent(userId);
+            if (fields != null) {
+                fields.remove(field);
+            }
+        }
+        return copy(results);
+    }
+
+    /**
+     * 读取用户的缓存版本号，不存在时为空串；读取失败时为null，此时本次结果不写入缓存
+     */
+    private String readGeneration(Long userId) {
+        try {
+            String generation = stringRedisTemplate.opsForValue().get(generationKey(userId));
+            return generation != null ? generation : "";
+        } catch (Exception e) {
+            log.warn("读取推荐缓存版本号失败: userId={}", userId, e);
+            return null;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private boolean putIfCurrent(Long userId, String field, CacheEnvelope<List<RecommendationResult>> envelope,
+                                 String generation) {
+        byte[] value = ((RedisSerializer<Object>) redisTemplate.getHashValueSerializer()).serialize(envelope);
+        Long written = redisTemplate.execute(PUT_IF_CURRENT_SCRIPT, RedisSerializer.byteArray(),
+                new GenericToStringSerializer<>(Long.class),
+                List.of(key(userId), generationKey(userId)),
+                generation.getBytes(StandardCharsets.UTF_8),
+                field.getBytes(StandardCharsets.UTF_8),
+                value,
+                String.valueOf(ttl.toMillis()).getBytes(StandardCharsets.UTF_8));
+        return written != null && written == 1L;
+    }
+
+    /**
+     * 清除用户的推荐缓存（所有策略），并通知其他实例清除本地缓存
+     */
+    public void invalidate(Collection<Long> userIds) {
+        if (userIds.isEmpty()) {
+            return;
+        }
+        localCache.invalidateAll(userIds);
+        try {
+            // 先递增版本号再删除key，版本号变化之前开始的计算不会再写入
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (Long userId : userIds) {
+                    byte[] generationKey = generationKey(userId).getBytes(StandardCharsets.UTF_8);
+                    connection.stringCommands().incr(generationKey);
+                    connection.keyCommands().pExpire(generationKey, ttl.toMillis());
+                }
+                return null;
+            });
+            redisTemplate.delete(userIds.stream().map(RecommendationCache::key).toList());
+            stringRedisTemplate.convertAndSend(INVALIDATION_CHANNEL,
+                    userIds.stream().map(String::valueOf).collect(Collectors.joining(",")));
+        } catch (Exception e) {
+            log.warn("清除推荐缓存失败: userIds={}", userIds, e);
+        }
+    }
+
+    /**
+     * 计算结果
+     *
+     * @param results  推荐结果
+     * @param complete 是否所有子策略都正常完成；为false时结果不写入缓存
+     */
+    public record Loaded(List<RecommendationResult> results, boolean complete) {
+
+        public static Loaded complete(List<RecommendationResult> results) {
+            return new Loaded(results, true);
+        }
+    }
+
+    private void putLocal(Long userId, String field, List<RecommendationResult> results) {
+        localCache.get(userId, k -> new ConcurrentHashMap<>()).put(field, copy(results));
+    }
+
+    private static List<RecommendationResult> copy(List<RecommendationResult> results) {
+        return results.stream()
+                .map(r -> new RecommendationResult(r.getItemId(), r.getScore(), r.getMethod(), r.getReason(), r.getMetadata()))
+                .collect(Collectors.toList());
+    }
+
+    private static String key(Long userId) {
+        return KEY_PREFIX + userId;
+    }
+
+    private static String generationKey(Long userId) {
+        return GENERATION_PREFIX + userId;
+    }
+}
@@ -0,0 +1,74 @@
+package com.userprofile.profile.recommendation;
+
+import com.userprofile.profile.entity.UserProfile;
+import com.userprofile.profile.event.UserEvent;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+/**
+ * 单次推荐请求的上下文
+ * 缓存目标画像、已购商品和相似用户购买记录，混合推荐中各策略共享同一次查询结果
+ */
+class RecommendationContext {
+
+    private final Long userId;
+    private final Supplier<Optional<UserProfile>> profileLoader;
+    private final Supplier<PurchasedItems> purchasedLoader;
+
+    private Optional<UserProfile> targetProfile;
+    private PurchasedItems purchasedItems;
+    private List<SimilarUserIndex.Neighbor> neighbors;
+    private Map<Long, List<UserEvent>> neighborPurchases;
+
+    RecommendationContext(Long userId,
+                          Supplier<Optional<UserProfile>> profileLoader,
+                          Supplier<PurchasedItems> purchasedLoader) {
+        this.userId = userId;
+        this.profileLoader = profileLoader;
+        this.purchasedLoader = purchasedLoader;
+    }
+
+    Long getUserId() {
+        return userId;
+    }
+
+    /**
+     * 目标用户画像（首次访问时加载）
+     */
+    synchronized Optional<UserProfile> getTargetProfile() {
+        if (targetProfile == null) {
+            targetProfile = profileLoader.get();
+        }
+        return targetProfile;
+    }
+
+    /**
+     * 目标用户已购商品（首次访问时加载）
+     */
+    synchronized PurchasedItems getPurchasedItems() {
+        if (purchasedItems == null) {
+            purchasedItems = purchasedLoader.get();
+        }
+        return purchasedItems;
+    }
+
+    /**
+     * 相似用户及其购买记录（首次访问时加载）
+     */
+    synchronized List<SimilarUserIndex.Neighbor> getNeighbors(Supplier<List<SimilarUserIndex.Neighbor>> loader) {
+        if (neighbors == null) {
+            neighbors = loader.get();
+        }
+        return neighbors;
+    }
+
+    synchronized Map<Long, List<UserEvent>> getNeighborPurchases(Supplier<Map<Long, List<UserEvent>>> loader) {
+        if (neighborPurchases == null) {
+            neighborPurchases = loader.get();
+        }
+        return neighborPurchases;
+    }
+}
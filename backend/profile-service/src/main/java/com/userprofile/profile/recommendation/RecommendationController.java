@@ -37,11 +37,13 @@ public class RecommendationController {
         return Result.success(results);
     }
 
-    @Operation(summary = "热门商品推荐")
+    @Operation(summary = "热门商品推荐", description = "window可选1h、24h、7d，默认7d")
     @GetMapping("/trending")
     public Result<List<RecommendationResult>> trending(
-            @RequestParam(defaultValue = "10") int limit) {
-        List<RecommendationResult> results = recommendationEngine.trendingRecommendation(limit);
+            @RequestParam(defaultValue = "10") int limit,
+            @RequestParam(defaultValue = "7d") String window) {
+        List<RecommendationResult> results = recommendationEngine.trendingRecommendation(
+                TrendingWindow.fromCode(window), limit);
         return Result.success(results);
     }
 
@@ -4,6 +4,7 @@ import com.userprofile.profile.analytics.UserBehaviorAnalytics;
 import com.userprofile.profile.entity.UserProfile;
 import com.userprofile.profile.event.UserEvent;
 import com.userprofile.profile.event.UserEventRepository;
+import com.userprofile.profile.recommendation.RecommendationExecutor.StrategyResult;
 import com.userprofile.profile.repository.UserProfileRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -12,6 +13,7 @@ import org.springframework.stereotype.Service;
 import java.time.LocalDateTime;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
 /**
@@ -26,43 +28,50 @@ public class RecommendationEngine {
     private final UserProfileRepository profileRepository;
     private final UserEventRepository eventRepository;
     private final UserBehaviorAnalytics behaviorAnalytics;
+    private final SimilarUserIndex similarUserIndex;
+    private final RecommendationExecutor recommendationExecutor;
+    private final TrendingService trendingService;
+    private final RecommendationCache recommendationCache;
 
     /**
      * 协同过滤推荐 - 基于用户的协同过滤
      * 找到相似用户，推荐他们喜欢的商品
      */
     public List<RecommendationResult> collaborativeFilteringByUser(Long userId, int limit) {
+        return recommendationCache.get(userId, "collaborative", limit,
+                () -> RecommendationCache.Loaded.complete(collaborativeFiltering(newContext(userId), limit)));
+    }
+
+    private List<RecommendationResult> collaborativeFiltering(RecommendationContext context, int limit) {
+        Long userId = context.getUserId();
         log.info("执行基于用户的协同过滤推荐: userId={}", userId);
 
         // 1. 获取目标用户画像
-        UserProfile targetProfile = profileRepository.findByUserId(userId).orElse(null);
+        UserProfile targetProfile = context.getTargetProfile().orElse(null);
         if (targetProfile == null) {
             return Collections.emptyList();
         }
 
-        // 2. 找到相似用户
-        List<UserProfile> allProfiles = profileRepository.findAll();
-        List<SimilarUser> similarUsers = allProfiles.stream()
-                .filter(p -> !p.getUserId().equals(userId))
-                .map(p -> new SimilarUser(p.getUserId(), calculateSimilarity(targetProfile, p)))
-                .filter(s -> s.similarity > 0.5)  // 相似度阈值
-                .sorted(Comparator.comparingDouble(SimilarUser::similarity).reversed())
-                .limit(10)
-                .collect(Collectors.toList());
+        // 2. 从近邻索引中找到相似用户（相似度阈值0.5）
+        List<SimilarUserIndex.Neighbor> similarUsers = context.getNeighbors(
+                () -> similarUserIndex.findSimilar(targetProfile, 10, 0.5));
 
         log.info("找到{}个相似用户", similarUsers.size());
+        RecommendationExecutor.checkInterrupted();
 
-        // 3. 获取相似用户的购买记录
+        // 3. 一次查询获取所有相似用户的购买记录
+        Map<Long, List<UserEvent>> purchasesByUser = context.getNeighborPurchases(
+                () -> loadNeighborPurchases(similarUsers));
+        PurchasedItems purchased = context.getPurchasedItems();
         Map<String, Double> recommendedItems = new HashMap<>();
-        for (SimilarUser similarUser : similarUsers) {
-            List<UserEvent> purchases = eventRepository.findByUserIdAndEventType(
-                    similarUser.userId, UserEvent.EventType.PAY
-            );
+        for (SimilarUserIndex.Neighbor similarUser : similarUsers) {
+            RecommendationExecutor.checkInterrupted();
+            List<UserEvent> purchases = purchasesByUser.getOrDefault(similarUser.userId(), Collections.emptyList());
 
             for (UserEvent event : purchases) {
-                String productId = (String) event.getEventData().get("productId");
-                if (productId != null && !hasUserPurchased(userId, productId)) {
-                    double weight = similarUser.similarity * event.getWeight();
+                String productId = event.getEventData() != null ? (String) event.getEventData().get("productId") : null;
+                if (productId != null && !purchased.contains(productId)) {
+                    double weight = similarUser.similarity() * (event.getWeight() != null ? event.getWeight() : 1.0);
                     recommendedItems.put(productId, recommendedItems.getOrDefault(productId, 0.0) + weight);
                 }
             }
@@ -86,6 +95,12 @@ public class RecommendationEngine {
      * 根据用户兴趣偏好推荐相关品类商品
      */
     public List<RecommendationResult> contentBasedRecommendation(Long userId, int limit) {
+        return recommendationCache.get(userId, "content-based", limit,
+                () -> RecommendationCache.Loaded.complete(contentBased(newContext(userId), limit)));
+    }
+
+    private List<RecommendationResult> contentBased(RecommendationContext context, int limit) {
+        Long userId = context.getUserId();
         log.info("执行基于内容的推荐: userId={}", userId);
 
         // 1. 分析用户兴趣偏好
@@ -93,6 +108,7 @@ public class RecommendationEngine {
         if (interests.isEmpty()) {
             return Collections.emptyList();
         }
+        RecommendationExecutor.checkInterrupted();
 
         // 2. 获取用户最近浏览但未购买的商品
         LocalDateTime thirtyDaysAgo = LocalDateTime.now().minus(30, ChronoUnit.DAYS);
@@ -101,12 +117,14 @@ public class RecommendationEngine {
                 .collect(Collectors.toList());
 
         // 3. 根据兴趣权重计算推荐分数
+        RecommendationExecutor.checkInterrupted();
+        PurchasedItems purchased = context.getPurchasedItems();
         Map<String, Double> scores = new HashMap<>();
         for (UserEvent view : recentViews) {
             String productId = (String) view.getEventData().get("productId");
             String category = (String) view.getEventData().get("category");
 
-            if (productId != null && category != null && !hasUserPurchased(userId, productId)) {
+            if (productId != null && category != null && !purchased.contains(productId)) {
                 double interestWeight = interests.getOrDefault(category, 0.0);
                 double recencyWeight = calculateRecencyWeight(view.getEventTime());
                 double score = interestWeight * recencyWeight * 100;
@@ -130,33 +148,23 @@ public class RecommendationEngine {
 
     /**
      * 热门商品推荐
-     * 推荐当前热销的商品
+     * 推荐最近7天热销的商品
      */
     public List<RecommendationResult> trendingRecommendation(int limit) {
-        log.info("执行热门商品推荐");
-
-        LocalDateTime sevenDaysAgo = LocalDateTime.now().minus(7, ChronoUnit.DAYS);
-
-        // 统计最近7天的购买次数
-        Map<String, Long> purchaseCount = new HashMap<>();
-        List<UserEvent> recentPurchases = eventRepository.findUnprocessedEvents().stream()
-                .filter(e -> e.getEventType() == UserEvent.EventType.PAY)
-                .filter(e -> e.getEventTime().isAfter(sevenDaysAgo))
-                .collect(Collectors.toList());
+        return trendingRecommendation(TrendingWindow.DAY_7, limit);
+    }
 
-        for (UserEvent event : recentPurchases) {
-            String productId = (String) event.getEventData().get("productId");
-            if (productId != null) {
-                purchaseCount.put(productId, purchaseCount.getOrDefault(productId, 0L) + 1);
-            }
-        }
+    /**
+     * 热门商品推荐
+     * 读取滑动窗口计数的TopN，不扫描事件集合
+     */
+    public List<RecommendationResult> trendingRecommendation(TrendingWindow window, int limit) {
+        log.info("执行热门商品推荐: window={}", window.getCode());
 
-        return purchaseCount.entrySet().stream()
-                .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
-                .limit(limit)
+        return trendingService.top(window, limit).entrySet().stream()
                 .map(e -> new RecommendationResult(
                         e.getKey(),
-                        e.getValue().doubleValue(),
+                        e.getValue(),
                         "热门推荐",
                         "最近热销商品"
                 ))
@@ -165,25 +173,40 @@ public class RecommendationEngine {
 
     /**
      * 智能混合推荐
-     * 综合多种推荐算法，提供多样化推荐
+     * 综合多种推荐算法，提供多样化推荐；各策略并发执行，超时的策略不参与混合，此时结果不缓存
      */
     public List<RecommendationResult> hybridRecommendation(Long userId, int limit) {
+        return recommendationCache.get(userId, "hybrid", limit, () -> hybrid(userId, limit));
+    }
+
+    private RecommendationCache.Loaded hybrid(Long userId, int limit) {
         log.info("执行混合推荐策略: userId={}", userId);
 
         List<RecommendationResult> results = new ArrayList<>();
+        RecommendationContext context = newContext(userId);
+
+        CompletableFuture<StrategyResult<RecommendationResult>> cfFuture = recommendationExecutor.submit(
+                "collaborative", () -> collaborativeFiltering(context, limit * 2));
+        CompletableFuture<StrategyResult<RecommendationResult>> cbFuture = recommendationExecutor.submit(
+                "content-based", () -> contentBased(context, limit * 2));
+        CompletableFuture<StrategyResult<RecommendationResult>> trendingFuture = recommendationExecutor.submit(
+                "trending", () -> trendingRecommendation(limit));
 
         // 1. 协同过滤（权重40%）
-        List<RecommendationResult> cfResults = collaborativeFilteringByUser(userId, limit * 2);
+        StrategyResult<RecommendationResult> cf = cfFuture.join();
+        List<RecommendationResult> cfResults = cf.results();
         cfResults.forEach(r -> r.setScore(r.getScore() * 0.4));
         results.addAll(cfResults);
 
         // 2. 基于内容（权重40%）
-        List<RecommendationResult> cbResults = contentBasedRecommendation(userId, limit * 2);
+        StrategyResult<RecommendationResult> cb = cbFuture.join();
+        List<RecommendationResult> cbResults = cb.results();
         cbResults.forEach(r -> r.setScore(r.getScore() * 0.4));
         results.addAll(cbResults);
 
         // 3. 热门商品（权重20%）
-        List<RecommendationResult> trendingResults = trendingRecommendation(limit);
+        StrategyResult<RecommendationResult> trending = trendingFuture.join();
+        List<RecommendationResult> trendingResults = trending.results();
         trendingResults.forEach(r -> r.setScore(r.getScore() * 0.2));
         results.addAll(trendingResults);
 
@@ -199,34 +222,37 @@ public class RecommendationEngine {
             }
         }
 
-        return mergedResults.values().stream()
+        List<RecommendationResult> merged = mergedResults.values().stream()
                 .sorted(Comparator.comparingDouble(RecommendationResult::getScore).reversed())
                 .limit(limit)
                 .collect(Collectors.toList());
+        return new RecommendationCache.Loaded(merged, cf.succeeded() && cb.succeeded() && trending.succeeded());
     }
 
     /**
-     * 计算用户相似度
-     * 使用余弦相似度算法
+     * 创建推荐请求上下文
      */
-    private double calculateSimilarity(UserProfile p1, UserProfile p2) {
-        double score1 = p1.getProfileScore() != null ? p1.getProfileScore() : 0;
-        double score2 = p2.getProfileScore() != null ? p2.getProfileScore() : 0;
-
-        // 简化的相似度计算：基于画像评分差异
-        double scoreDiff = Math.abs(score1 - score2);
-        double similarity = 1.0 - (scoreDiff / 100.0);
+    private RecommendationContext newContext(Long userId) {
+        return new RecommendationContext(userId,
+                () -> profileRepository.findRecommendationFieldsByUserId(userId),
+                () -> loadPurchasedItems(userId));
+    }
 
-        return Math.max(0, similarity);
+    /**
+     * 批量加载相似用户的购买记录，按用户分组
+     */
+    private Map<Long, List<UserEvent>> loadNeighborPurchases(List<SimilarUserIndex.Neighbor> neighbors) {
+        List<Long> neighborIds = neighbors.stream().map(SimilarUserIndex.Neighbor::userId).toList();
+        return eventRepository.findPurchasesByUserIds(neighborIds).stream()
+                .collect(Collectors.groupingBy(UserEvent::getUserId));
     }
 
     /**
-     * 检查用户是否已购买该商品
+     * 加载用户已购商品集合
+     * 每次推荐只查询一次，候选商品过滤均为内存查找
      */
-    private boolean hasUserPurchased(Long userId, String productId) {
-        List<UserEvent> purchases = eventRepository.findByUserIdAndEventType(userId, UserEvent.EventType.PAY);
-        return purchases.stream()
-                .anyMatch(e -> productId.equals(e.getEventData().get("productId")));
+    private PurchasedItems loadPurchasedItems(Long userId) {
+        return PurchasedItems.of(eventRepository.findPurchasedProductIds(userId));
     }
 
     /**
@@ -237,10 +263,4 @@ public class RecommendationEngine {
         long daysAgo = ChronoUnit.DAYS.between(eventTime, LocalDateTime.now());
         return Math.exp(-daysAgo / 30.0);  // 30天半衰期
     }
-
-    /**
-     * 相似用户内部类
-     */
-    private record SimilarUser(Long userId, double similarity) {
-    }
 }
@@ -0,0 +1,126 @@
+package com.userprofile.profile.recommendation;
+
+import com.userprofile.common.metrics.MetricsService;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * 推荐策略执行器
+ * 混合推荐的各子策略在独立的有界线程池中并发执行；单个策略超时、异常或被拒绝时返回空结果，
+ * 从混合结果中剔除而不拖慢整体响应。超时的策略会被中断并移出队列，不继续占用线程池。
+ * 各策略耗时记录为Micrometer Timer
+ */
+@Slf4j
+@Component
+public class RecommendationExecutor {
+
+    private final ThreadPoolExecutor executor;
+    private final long strategyTimeoutMs;
+    private final MetricsService metricsService;
+
+    public RecommendationExecutor(@Value("${profile.recommendation.executor.pool-size:16}") int poolSize,
+                                  @Value("${profile.recommendation.executor.queue-capacity:200}") int queueCapacity,
+                                  @Value("${profile.recommendation.strategy-timeout-ms:300}") long strategyTimeoutMs,
+                                  MetricsService metricsService) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                r -> {
+                    Thread thread = new Thread(r, "Recommendation-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                // 队列满时直接拒绝，该策略从混合结果中剔除，避免占用请求线程
+                new ThreadPoolExecutor.AbortPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
+        this.strategyTimeoutMs = strategyTimeoutMs;
+        this.metricsService = metricsService;
+    }
+
+    /**
+     * 异步执行推荐策略
+     *
+     * @param strategy 策略名称（用于日志和指标）
+     * @param task     策略实现
+     * @return 策略结果；超时、异常或被拒绝时为空列表并标记为未成功，不会异常完成
+     */
+    public <T> CompletableFuture<StrategyResult<T>> submit(String strategy, Supplier<List<T>> task) {
+        long startTime = System.currentTimeMillis();
+
+        CompletableFuture<List<T>> future = new CompletableFuture<>();
+        FutureTask<Void> running = new FutureTask<>(() -> {
+            try {
+                future.complete(task.get());
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        }, null);
+        try {
+            executor.execute(running);
+        } catch (RejectedExecutionException e) {
+            log.warn("推荐策略被拒绝执行（线程池已满）: strategy={}", strategy);
+            metricsService.recordRecommendationStrategy(strategy, "rejected", 0);
+            return CompletableFuture.completedFuture(StrategyResult.failed());
+        }
+
+        return future.orTimeout(strategyTimeoutMs, TimeUnit.MILLISECONDS)
+                .handle((results, error) -> {
+                    long duration = System.currentTimeMillis() - startTime;
+                    if (error == null) {
+                        metricsService.recordRecommendationStrategy(strategy, "success", duration);
+                        return new StrategyResult<>(results != null ? results : Collections.<T>emptyList(), true);
+                    }
+
+                    Throwable cause = error instanceof CompletionException && error.getCause() != null
+                            ? error.getCause() : error;
+                    if (cause instanceof TimeoutException) {
+                        // 中断执行中的策略，仍在排队的直接移出队列
+                        running.cancel(true);
+                        executor.remove(running);
+                        log.warn("推荐策略超时，已从结果中剔除: strategy={}, timeout={}ms", strategy, strategyTimeoutMs);
+                        metricsService.recordRecommendationStrategy(strategy, "timeout", duration);
+                    } else {
+                        log.error("推荐策略执行失败，已从结果中剔除: strategy={}", strategy, cause);
+                        metricsService.recordRecommendationStrategy(strategy, "error", duration);
+                    }
+                    return StrategyResult.<T>failed();
+                });
+    }
+
+    /**
+     * 供策略在耗时步骤之间调用：执行线程已被中断（策略超时）时立即结束
+     *
+     * @throws CancellationException 线程已被中断
+     */
+    public static void checkInterrupted() {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new CancellationException("推荐策略已超时");
+        }
+    }
+
+    /**
+     * 策略执行结果
+     *
+     * @param results   策略返回的结果，未成功时为空列表
+     * @param succeeded 策略是否正常完成；超时、异常或被拒绝时为false，调用方据此判断结果是否降级
+     */
+    public record StrategyResult<T>(List<T> results, boolean succeeded) {
+
+        static <T> StrategyResult<T> failed() {
+            return new StrategyResult<>(Collections.emptyList(), false);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
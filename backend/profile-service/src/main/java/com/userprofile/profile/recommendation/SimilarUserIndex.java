@@ -0,0 +1,465 @@
+package com.userprofile.profile.recommendation;
+
+import com.userprofile.profile.entity.UserProfile;
+import com.userprofile.profile.event.ProfileChangedEvent;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.stream.Stream;
+
+/**
+ * 相似用户近邻索引
+ * 基于MinHash + LSH分桶的内存索引：用户的品类、品牌、画像评分段、忠诚度段构成特征集合，
+ * 查询时只对同桶候选用户做精确相似度重排，避免全量扫描画像集合。
+ * <p>没有品类/品牌的用户特征只有评分段和忠诚度段，同一分段的用户全部落在相同的桶里，桶只能保留其中的样本；
+ * 这类用户另外按画像评分排序索引，查询时补充评分最接近的用户作为候选
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class SimilarUserIndex {
+
+    /**
+     * LSH分段数与每段行数，签名长度 = BANDS * ROWS
+     */
+    private static final int BANDS = 8;
+    private static final int ROWS = 2;
+    private static final int SIGNATURE_LENGTH = BANDS * ROWS;
+
+    /**
+     * 单个桶最多保留的用户数
+     * 超出后按(userId, 桶)的哈希值保留最小的若干个用户，相当于与写入顺序无关的均匀抽样；
+     * 各桶的哈希不同，同一批用户在不同分段的桶里抽到的样本也不同
+     */
+    static final int MAX_BUCKET_SIZE = 1024;
+
+    /**
+     * 没有品类/品牌的用户按评分补充的候选数
+     */
+    static final int SCORE_RANGE_CANDIDATES = 512;
+
+    /**
+     * 评分分段宽度（0-100分按10分一段）
+     */
+    private static final double SCORE_BUCKET_WIDTH = 10.0;
+
+    private static final long[] SEEDS = new long[SIGNATURE_LENGTH];
+
+    static {
+        long seed = 0x9E3779B97F4A7C15L;
+        for (int i = 0; i < SIGNATURE_LENGTH; i++) {
+            seed = mix(seed + i);
+            SEEDS[i] = seed;
+        }
+    }
+
+    private final MongoTemplate mongoTemplate;
+
+    private volatile Map<Long, Entry> entries = new ConcurrentHashMap<>();
+    private volatile Map<Long, long[]> buckets = new ConcurrentHashMap<>();
+    private volatile NavigableSet<ScoreKey> tokenPoorByScore = new ConcurrentSkipListSet<>();
+    private volatile LocalDateTime syncedUntil;
+    private volatile boolean ready;
+
+    /**
+     * 查找与目标用户最相似的用户
+     *
+     * @param target        目标用户画像
+     * @param limit         返回数量
+     * @param minSimilarity 相似度阈值
+     * @return 按相似度降序排列的相似用户
+     */
+    public List<Neighbor> findSimilar(UserProfile target, int limit, double minSimilarity) {
+        if (!ready) {
+            log.debug("相似用户索引尚未构建完成: userId={}", target.getUserId());
+            return Collections.emptyList();
+        }
+
+        Entry query = Entry.of(target);
+        Set<Long> candidates = new HashSet<>();
+        for (long bucketKey : bucketKeys(query.tokens)) {
+            long[] members = buckets.get(bucketKey);
+            if (members != null) {
+                for (long member : members) {
+                    candidates.add(member);
+                }
+            }
+        }
+        if (query.itemTokens.length == 0) {
+            addNearestByScore(candidates, query.profileScore);
+        }
+        candidates.remove(target.getUserId());
+
+        // 小顶堆保留TopN
+        PriorityQueue<Neighbor> topN = new PriorityQueue<>(Comparator.comparingDouble(Neighbor::similarity));
+        for (Long candidateId : candidates) {
+            Entry candidate = entries.get(candidateId);
+            if (candidate == null) {
+                continue;
+            }
+            double similarity = query.similarity(candidate);
+            if (similarity > minSimilarity) {
+                topN.offer(new Neighbor(candidateId, similarity));
+                if (topN.size() > limit) {
+                    topN.poll();
+                }
+            }
+        }
+
+        List<Neighbor> result = new ArrayList<>(topN);
+        result.sort(Comparator.comparingDouble(Neighbor::similarity).reversed());
+        return result;
+    }
+
+    /**
+     * 索引中的用户数
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * 应用启动后异步构建索引
+     */
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        rebuild();
+    }
+
+    /**
+     * 画像变更时增量更新索引
+     */
+    @EventListener
+    public void onProfileChanged(ProfileChangedEvent event) {
+        if (event.isDeleted() || event.getProfile() == null) {
+            remove(event.getUserId());
+        } else {
+            upsert(event.getProfile());
+        }
+    }
+
+    /**
+     * 全量重建索引
+     * 每天凌晨执行一次，清理已删除用户并补齐删除后低于上限的桶；每个实例各自维护一份索引，无需分布式锁
+     */
+    @Scheduled(cron = "0 30 3 * * ?")
+    public synchronized void rebuild() {
+        long startTime = System.currentTimeMillis();
+        LocalDateTime rebuildStart = LocalDateTime.now();
+
+        Map<Long, Entry> newEntries = new ConcurrentHashMap<>();
+        Map<Long, long[]> newBuckets = new ConcurrentHashMap<>();
+        NavigableSet<ScoreKey> newTokenPoor = new ConcurrentSkipListSet<>();
+        try (Stream<UserProfile> profiles = mongoTemplate.stream(projectedQuery(new Query()), UserProfile.class)) {
+            profiles.forEach(profile -> put(newEntries, newBuckets, newTokenPoor, profile));
+        }
+
+        entries = newEntries;
+        buckets = newBuckets;
+        tokenPoorByScore = newTokenPoor;
+        syncedUntil = rebuildStart;
+        ready = true;
+
+        // 追平重建期间发生的变更
+        syncChanges();
+
+        log.info("相似用户索引重建完成: users={}, buckets={}, 耗时={}ms",
+                newEntries.size(), newBuckets.size(), System.currentTimeMillis() - startTime);
+    }
+
+    /**
+     * 按更新时间增量同步
+     * 兜底其他实例写入的画像变更（本地事件只覆盖本实例的写入）
+     */
+    @Scheduled(fixedDelay = 60000, initialDelay = 60000)
+    public void syncChanges() {
+        LocalDateTime since = syncedUntil;
+        if (!ready || since == null) {
+            return;
+        }
+
+        LocalDateTime syncStart = LocalDateTime.now();
+        Query query = projectedQuery(new Query(Criteria.where("updateTime").gte(since)))
+                .with(Sort.by(Sort.Direction.ASC, "updateTime"));
+
+        int count = 0;
+        try (Stream<UserProfile> profiles = mongoTemplate.stream(query, UserProfile.class)) {
+            for (Iterator<UserProfile> it = profiles.iterator(); it.hasNext(); count++) {
+                upsert(it.next());
+            }
+        }
+        syncedUntil = syncStart;
+
+        if (count > 0) {
+            log.debug("相似用户索引增量同步: {}个用户", count);
+        }
+    }
+
+    /**
+     * 添加或更新单个用户
+     */
+    public void upsert(UserProfile profile) {
+        if (profile.getUserId() == null) {
+            return;
+        }
+        remove(profile.getUserId());
+        put(entries, buckets, tokenPoorByScore, profile);
+    }
+
+    /**
+     * 移除单个用户
+     */
+    public void remove(Long userId) {
+        Entry old = entries.remove(userId);
+        if (old == null) {
+            return;
+        }
+        for (long bucketKey : bucketKeys(old.tokens)) {
+            buckets.computeIfPresent(bucketKey, (k, members) -> without(members, userId));
+        }
+        if (old.itemTokens.length == 0) {
+            tokenPoorByScore.remove(new ScoreKey(old.profileScore, userId));
+        }
+    }
+
+    private static void put(Map<Long, Entry> entries, Map<Long, long[]> buckets,
+                            NavigableSet<ScoreKey> tokenPoorByScore, UserProfile profile) {
+        Long userId = profile.getUserId();
+        if (userId == null) {
+            return;
+        }
+        Entry entry = Entry.of(profile);
+        entries.put(userId, entry);
+        for (long bucketKey : bucketKeys(entry.tokens)) {
+            buckets.compute(bucketKey, (k, members) -> with(members, userId, k));
+        }
+        if (entry.itemTokens.length == 0) {
+            tokenPoorByScore.add(new ScoreKey(entry.profileScore, userId));
+        }
+    }
+
+    /**
+     * 从没有品类/品牌的用户中补充评分最接近的候选：从目标评分向两侧交替取更接近的一个
+     */
+    private void addNearestByScore(Set<Long> candidates, float profileScore) {
+        NavigableSet<ScoreKey> byScore = tokenPoorByScore;
+        ScoreKey pivot = new ScoreKey(profileScore, Long.MIN_VALUE);
+        Iterator<ScoreKey> higher = byScore.tailSet(pivot, true).iterator();
+        Iterator<ScoreKey> lower = byScore.headSet(pivot, false).descendingIterator();
+        ScoreKey up = higher.hasNext() ? higher.next() : null;
+        ScoreKey down = lower.hasNext() ? lower.next() : null;
+        for (int added = 0; added < SCORE_RANGE_CANDIDATES && (up != null || down != null); added++) {
+            if (down == null || (up != null && up.score() - profileScore <= profileScore - down.score())) {
+                candidates.add(up.userId());
+                up = higher.hasNext() ? higher.next() : null;
+            } else {
+                candidates.add(down.userId());
+                down = lower.hasNext() ? lower.next() : null;
+            }
+        }
+    }
+
+    /**
+     * 只读取建索引需要的字段
+     */
+    private static Query projectedQuery(Query query) {
+        query.fields()
+                .include("userId")
+                .include("profileScore")
+                .include("digitalBehavior.productCategories")
+                .include("digitalBehavior.brandPreferences")
+                .include("stickinessAndLoyalty.loyaltyScore");
+        query.cursorBatchSize(1000);
+        return query;
+    }
+
+    /**
+     * 计算特征集合对应的LSH桶
+     */
+    static long[] bucketKeys(int[] tokens) {
+        long[] signature = new long[SIGNATURE_LENGTH];
+        Arrays.fill(signature, Long.MAX_VALUE);
+        for (int token : tokens) {
+            for (int i = 0; i < SIGNATURE_LENGTH; i++) {
+                long hash = mix(token ^ SEEDS[i]);
+                if (hash < signature[i]) {
+                    signature[i] = hash;
+                }
+            }
+        }
+
+        long[] keys = new long[BANDS];
+        for (int band = 0; band < BANDS; band++) {
+            long key = band;
+            for (int row = 0; row < ROWS; row++) {
+                key = mix(key * 31 + signature[band * ROWS + row]);
+            }
+            keys[band] = key;
+        }
+        return keys;
+    }
+
+    /**
+     * 加入桶，桶内按抽样哈希升序排列；桶满时只保留哈希最小的MAX_BUCKET_SIZE个用户
+     */
+    static long[] with(long[] members, long userId, long bucketKey) {
+        if (members == null) {
+            return new long[]{userId};
+        }
+        long priority = samplePriority(userId, bucketKey);
+        int low = 0, high = members.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            long midPriority = samplePriority(members[mid], bucketKey);
+            if (midPriority == priority) {
+                return members;
+            }
+            if (midPriority < priority) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        if (members.length >= MAX_BUCKET_SIZE) {
+            if (low >= MAX_BUCKET_SIZE) {
+                return members;
+            }
+            long[] result = new long[MAX_BUCKET_SIZE];
+            System.arraycopy(members, 0, result, 0, low);
+            result[low] = userId;
+            System.arraycopy(members, low, result, low + 1, MAX_BUCKET_SIZE - low - 1);
+            return result;
+        }
+        long[] result = new long[members.length + 1];
+        System.arraycopy(members, 0, result, 0, low);
+        result[low] = userId;
+        System.arraycopy(members, low, result, low + 1, members.length - low);
+        return result;
+    }
+
+    /**
+     * 桶内抽样哈希，SplitMix64对不同userId不会冲突
+     */
+    private static long samplePriority(long userId, long bucketKey) {
+        return mix(userId ^ bucketKey);
+    }
+
+    private static long[] without(long[] members, long userId) {
+        long[] result = Arrays.stream(members).filter(m -> m != userId).toArray();
+        return result.length == 0 ? null : result;
+    }
+
+    /**
+     * SplitMix64 混淆函数
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * 相似用户
+     */
+    public record Neighbor(Long userId, double similarity) {
+    }
+
+    /**
+     * 评分索引的键：按评分、userId排序
+     */
+    private record ScoreKey(float score, long userId) implements Comparable<ScoreKey> {
+
+        @Override
+        public int compareTo(ScoreKey other) {
+            int byScore = Float.compare(score, other.score);
+            return byScore != 0 ? byScore : Long.compare(userId, other.userId);
+        }
+    }
+
+    /**
+     * 索引条目：排序去重的品类/品牌特征 + 评分
+     */
+    private record Entry(int[] tokens, int[] itemTokens, float profileScore, float loyaltyScore) {
+
+        static Entry of(UserProfile profile) {
+            TreeSet<Integer> items = new TreeSet<>();
+            UserProfile.DigitalBehavior behavior = profile.getDigitalBehavior();
+            if (behavior != null) {
+                addTokens(items, "c:", behavior.getProductCategories());
+                addTokens(items, "b:", behavior.getBrandPreferences());
+            }
+            float profileScore = profile.getProfileScore() != null ? profile.getProfileScore().floatValue() : 0f;
+            float loyaltyScore = profile.getStickinessAndLoyalty() != null
+                    && profile.getStickinessAndLoyalty().getLoyaltyScore() != null
+                    ? profile.getStickinessAndLoyalty().getLoyaltyScore().floatValue() : 0f;
+
+            TreeSet<Integer> all = new TreeSet<>(items);
+            all.add(("s:" + (int) (profileScore / SCORE_BUCKET_WIDTH)).hashCode());
+            all.add(("l:" + (int) (loyaltyScore / SCORE_BUCKET_WIDTH)).hashCode());
+
+            return new Entry(toArray(all), toArray(items), profileScore, loyaltyScore);
+        }
+
+        /**
+         * 精确相似度：品类/品牌Jaccard占40%，画像评分接近度占40%，忠诚度接近度占20%；
+         * 双方都没有品类/品牌时只按评分计算
+         */
+        double similarity(Entry other) {
+            double scoreSimilarity = Math.max(0, 1.0 - Math.abs(profileScore - other.profileScore) / 100.0);
+            double loyaltySimilarity = Math.max(0, 1.0 - Math.abs(loyaltyScore - other.loyaltyScore) / 100.0);
+            if (itemTokens.length == 0 && other.itemTokens.length == 0) {
+                return 0.7 * scoreSimilarity + 0.3 * loyaltySimilarity;
+            }
+            return 0.4 * jaccard(itemTokens, other.itemTokens) + 0.4 * scoreSimilarity + 0.2 * loyaltySimilarity;
+        }
+
+        private static double jaccard(int[] a, int[] b) {
+            int i = 0, j = 0, intersection = 0;
+            while (i < a.length && j < b.length) {
+                if (a[i] == b[j]) {
+                    intersection++;
+                    i++;
+                    j++;
+                } else if (a[i] < b[j]) {
+                    i++;
+                } else {
+                    j++;
+                }
+            }
+            int union = a.length + b.length - intersection;
+            return union == 0 ? 0 : (double) intersection / union;
+        }
+
+        private static void addTokens(Set<Integer> tokens, String prefix, List<String> values) {
+            if (values != null) {
+                for (String value : values) {
+                    if (value != null) {
+                        tokens.add((prefix + value).hashCode());
+                    }
+                }
+            }
+        }
+
+        private static int[] toArray(Set<Integer> values) {
+            return values.stream().mapToInt(Integer::intValue).toArray();
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package com.userprofile.profile.recommendation;
+
+import com.userprofile.profile.event.UserEvent;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneId;
+import java.util.*;
+
+/**
+ * 热门商品滑动窗口计数服务
+ * 支付事件写入时同步累加到各窗口（1h/24h/7d）的汇总ZSET和所在时间桶ZSET；
+ * 定时任务将滑出窗口的时间桶从汇总中扣减并删除，热门查询只读取汇总ZSET的TopN。
+ * <p>各窗口已扣减到的桶编号（水位）保存在Redis中，所有实例共用；累加在脚本中先检查水位，
+ * 已扣减的桶不再写入，避免时钟落后的实例或迟到事件重新创建已删除的桶，使计数永久留在汇总中
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class TrendingService {
+
+    private static final String KEY_PREFIX = "trending:";
+
+    /**
+     * 原子扣减并删除过期桶，并把水位推进到该桶：桶被删除后重复执行为空操作，多实例并发执行不会重复扣减
+     * KEYS[1]=窗口汇总ZSET，KEYS[2]=过期桶ZSET，KEYS[3]=水位；ARGV[1]=桶编号
+     */
+    private static final RedisScript<Long> EXPIRE_BUCKET_SCRIPT = new DefaultRedisScript<>(
+            "local members = redis.call('ZRANGE', KEYS[2], 0, -1, 'WITHSCORES') " +
+            "for i = 1, #members, 2 do " +
+            "  local score = redis.call('ZINCRBY', KEYS[1], -tonumber(members[i + 1]), members[i]) " +
+            "  if tonumber(score) <= 0 then redis.call('ZREM', KEYS[1], members[i]) end " +
+            "end " +
+            "redis.call('DEL', KEYS[2]) " +
+            "local watermark = tonumber(redis.call('GET', KEYS[3])) " +
+            "if not watermark or tonumber(ARGV[1]) > watermark then redis.call('SET', KEYS[3], ARGV[1]) end " +
+            "return #members / 2",
+            Long.class);
+
+    /**
+     * 桶编号高于水位时累加到桶和窗口汇总，否则丢弃
+     * KEYS[1]=窗口汇总ZSET，KEYS[2]=桶ZSET，KEYS[3]=水位；ARGV[1]=桶编号，ARGV[2]=商品ID，ARGV[3]=桶TTL（秒）
+     */
+    private static final byte[] INCREMENT_SCRIPT = bytes(
+            "local watermark = tonumber(redis.call('GET', KEYS[3])) " +
+            "if watermark and tonumber(ARGV[1]) <= watermark then return 0 end " +
+            "redis.call('ZINCRBY', KEYS[2], 1, ARGV[2]) " +
+            "redis.call('EXPIRE', KEYS[2], ARGV[3]) " +
+            "redis.call('ZINCRBY', KEYS[1], 1, ARGV[2]) " +
+            "return 1");
+
+    private final StringRedisTemplate redisTemplate;
+
+    /**
+     * 单次热门查询最多返回的商品数
+     */
+    @Value("${profile.recommendation.trending-max-limit:100}")
+    private int maxLimit;
+
+    /**
+     * 累加支付事件
+     * 计数失败只记录日志，不影响事件写入
+     */
+    public void recordPurchases(List<UserEvent> events) {
+        List<UserEvent> purchases = events.stream()
+                .filter(e -> e.getEventType() == UserEvent.EventType.PAY)
+                .filter(e -> e.getEventData() != null && e.getEventData().get("productId") instanceof String)
+                .toList();
+        if (purchases.isEmpty()) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        try {
+            redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (UserEvent purchase : purchases) {
+                    byte[] productId = bytes((String) purchase.getEventData().get("productId"));
+                    // 客户端上报的时间晚于当前时间时按当前时间计，否则桶的扣减时间会晚于桶的过期时间
+                    long eventMillis = purchase.getEventTime() != null
+                            ? Math.min(purchase.getEventTime().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli(),
+                                    now)
+                            : now;
+                    for (TrendingWindow window : TrendingWindow.values()) {
+                        increment(connection, window, window.bucketOf(eventMillis), productId, now);
+                    }
+                }
+                return null;
+            });
+        } catch (Exception e) {
+            log.warn("热门商品计数失败: {}个支付事件", purchases.size(), e);
+        }
+    }
+
+    /**
+     * 查询窗口内的热门商品
+     *
+     * @param limit 返回数量，不超过配置的上限；小于等于0时返回空
+     * @return 商品ID -> 支付次数，按次数降序
+     */
+    public LinkedHashMap<String, Double> top(TrendingWindow window, int limit) {
+        LinkedHashMap<String, Double> result = new LinkedHashMap<>();
+        if (limit <= 0) {
+            return result;
+        }
+        Set<ZSetOperations.TypedTuple<String>> tuples = redisTemplate.opsForZSet()
+                .reverseRangeWithScores(windowKey(window), 0, Math.min(limit, maxLimit) - 1);
+
+        if (tuples != null) {
+            for (ZSetOperations.TypedTuple<String> tuple : tuples) {
+                if (tuple.getValue() != null && tuple.getScore() != null) {
+                    result.put(tuple.getValue(), tuple.getScore());
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 扣减滑出窗口的时间桶
+     * 每分钟执行，各实例都可执行（脚本保证幂等）
+     */
+    @Scheduled(fixedDelay = 60000)
+    public void expireBuckets() {
+        expireBuckets(System.currentTimeMillis());
+    }
+
+    void expireBuckets(long nowMillis) {
+        for (TrendingWindow window : TrendingWindow.values()) {
+            long lastExpired = window.lastExpiredBucket(nowMillis);
+            String watermark = redisTemplate.opsForValue().get(watermarkKey(window));
+            // 没有水位时回看一个窗口长度；水位过旧时只回看到桶保留时长覆盖的范围，更早的桶已经过期
+            long from = watermark != null
+                    ? Math.max(Long.parseLong(watermark), lastExpired - 2L * window.getBucketCount()) + 1
+                    : lastExpired - window.getBucketCount() + 1;
+
+            long expiredMembers = 0;
+            for (long bucket = from; bucket <= lastExpired; bucket++) {
+                Long count = redisTemplate.execute(EXPIRE_BUCKET_SCRIPT,
+                        List.of(windowKey(window), bucketKey(window, bucket), watermarkKey(window)),
+                        String.valueOf(bucket));
+                expiredMembers += count != null ? count : 0;
+            }
+
+            if (expiredMembers > 0) {
+                log.debug("热门商品窗口滑动: window={}, 扣减{}个商品计数", window.getCode(), expiredMembers);
+            }
+        }
+    }
+
+    private void increment(RedisConnection connection, TrendingWindow window, long bucket, byte[] productId, long now) {
+        // 已滑出窗口的迟到事件不再计入
+        if (bucket <= window.lastExpiredBucket(now)) {
+            return;
+        }
+        connection.scriptingCommands().eval(INCREMENT_SCRIPT, ReturnType.INTEGER, 3,
+                bytes(windowKey(window)), bytes(bucketKey(window, bucket)), bytes(watermarkKey(window)),
+                bytes(String.valueOf(bucket)), productId, bytes(String.valueOf(window.bucketTtlSeconds())));
+    }
+
+    static String windowKey(TrendingWindow window) {
+        return KEY_PREFIX + window.getCode();
+    }
+
+    static String bucketKey(TrendingWindow window, long bucket) {
+        return KEY_PREFIX + window.getCode() + ":" + bucket;
+    }
+
+    static String watermarkKey(TrendingWindow window) {
+        return KEY_PREFIX + window.getCode() + ":expired";
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
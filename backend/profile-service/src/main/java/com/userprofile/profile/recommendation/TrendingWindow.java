@@ -0,0 +1,68 @@
+package com.userprofile.profile.recommendation;
+
+import com.userprofile.common.exception.BusinessException;
+
+import java.time.Duration;
+import java.util.Arrays;
+
+/**
+ * 热门商品统计时间窗口
+ * 每个窗口由若干等长时间桶组成，窗口滑动时整桶过期
+ */
+public enum TrendingWindow {
+
+    HOUR_1("1h", Duration.ofMinutes(1), 60),
+    DAY_1("24h", Duration.ofHours(1), 24),
+    DAY_7("7d", Duration.ofHours(1), 168);
+
+    private final String code;
+    private final long bucketMillis;
+    private final int bucketCount;
+
+    TrendingWindow(String code, Duration bucketSize, int bucketCount) {
+        this.code = code;
+        this.bucketMillis = bucketSize.toMillis();
+        this.bucketCount = bucketCount;
+    }
+
+    public String getCode() {
+        return code;
+    }
+
+    public int getBucketCount() {
+        return bucketCount;
+    }
+
+    /**
+     * 时间戳所在的桶编号
+     */
+    public long bucketOf(long epochMillis) {
+        return Math.floorDiv(epochMillis, bucketMillis);
+    }
+
+    /**
+     * 当前时刻已滑出窗口的最新桶编号
+     */
+    public long lastExpiredBucket(long nowMillis) {
+        return bucketOf(nowMillis) - bucketCount;
+    }
+
+    /**
+     * 桶数据的保留时长（两个窗口长度外加两个桶的余量）
+     * 桶滑出窗口后要保留到扣减为止；扣减任务重启后回看一个窗口长度，
+     * 保留两个窗口长度才能保证回看范围内的桶还在，否则桶过期后其计数会永久留在汇总ZSET中
+     */
+    public long bucketTtlSeconds() {
+        return (2L * bucketCount + 2) * bucketMillis / 1000;
+    }
+
+    /**
+     * 根据编码查找窗口
+     */
+    public static TrendingWindow fromCode(String code) {
+        return Arrays.stream(values())
+                .filter(w -> w.code.equalsIgnoreCase(code))
+                .findFirst()
+                .orElseThrow(() -> new BusinessException("不支持的时间窗口: " + code + "，可选值为1h、24h、7d"));
+    }
+}
@@ -0,0 +1,20 @@
+package com.userprofile.profile.repository;
+
+/**
+ * 用户画像评分只读视图
+ *
+ * <p>批量任务大多只需要userId和画像评分，通过投影只读取这两个字段，
+ * 避免加载完整画像及其嵌套的行为、需求、价值评估等子文档
+ *
+ * @param userId       用户ID
+ * @param profileScore 画像评分，可能为空
+ */
+public record ProfileScoreView(Long userId, Double profileScore) {
+
+    /**
+     * 评分为空时按0处理
+     */
+    public double scoreOrZero() {
+        return profileScore != null ? profileScore : 0.0;
+    }
+}
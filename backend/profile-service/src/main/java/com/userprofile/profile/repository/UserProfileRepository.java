@@ -1,9 +1,13 @@
 package com.userprofile.profile.repository;
 
 import com.userprofile.profile.entity.UserProfile;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.data.mongodb.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 /**
@@ -17,6 +21,40 @@ public interface UserProfileRepository extends MongoRepository<UserProfile, Stri
      */
     Optional<UserProfile> findByUserId(Long userId);
 
+    /**
+     * 根据用户ID批量查找画像（单次$in查询）
+     */
+    List<UserProfile> findByUserIdIn(Collection<Long> userIds);
+
+    /**
+     * 按userId键集分页读取评分视图：返回userId大于给定值的下一页，按userId升序
+     * 走idx_userId索引，翻页代价与页码无关
+     */
+    List<ProfileScoreView> findByUserIdGreaterThanOrderByUserIdAsc(Long userId, Pageable pageable);
+
+    /**
+     * 按userId键集分页读取一个区间内的评分视图：返回userId大于from且不大于to的下一页，按userId升序
+     * 走idx_userId索引的范围扫描，只读取区间内的文档；profileScore不在索引中，命中的文档需要回表读取
+     */
+    @Query(value = "{'userId': {'$gt': ?0, '$lte': ?1}}", sort = "{'userId': 1}",
+            fields = "{'_id': 0, 'userId': 1, 'profileScore': 1}")
+    List<ProfileScoreView> findScoreViewPageInRange(Long fromExclusive, Long toInclusive, Pageable pageable);
+
+    /**
+     * 读取userId大于给定值的userId，按userId升序
+     * 投影只含userId，由idx_userId索引覆盖，分页偏移只跳过索引键，不回表
+     */
+    @Query(value = "{'userId': {'$gt': ?0}}", sort = "{'userId': 1}", fields = "{'_id': 0, 'userId': 1}")
+    List<ProfileScoreView> findUserIdPageAfter(Long userId, Pageable pageable);
+
+    /**
+     * 只读取推荐计算需要的字段：评分、偏好品类/品牌、忠诚度
+     */
+    @Query(value = "{'userId': ?0}", fields = "{'userId': 1, 'profileScore': 1, "
+            + "'digitalBehavior.productCategories': 1, 'digitalBehavior.brandPreferences': 1, "
+            + "'stickinessAndLoyalty.loyaltyScore': 1}")
+    Optional<UserProfile> findRecommendationFieldsByUserId(Long userId);
+
     /**
      * 根据用户名查找画像
      */
@@ -0,0 +1,231 @@
+package com.userprofile.profile.scheduler;
+
+import com.userprofile.profile.repository.ProfileScoreView;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RBucket;
+import org.redisson.api.RLock;
+import org.redisson.api.RSet;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.ToIntFunction;
+
+/**
+ * 多实例分区遍历
+ *
+ * <p>把全量画像按userId切成固定数量、用户数大致相等的连续区间作为分区，所有实例同时执行任务，
+ * 各自通过Redisson锁认领分区。每个分区只按索引范围扫描自己的区间，不会重复扫描其他分区的索引键。
+ * <p>分区边界在一轮开始时计算并保存在Redis中，一轮内的所有实例以及跨天续跑的断点都使用同一组边界；
+ * 全部分区完成后删除，下一轮按最新的画像分布重新计算。
+ * 分区锁不设租期，由Redisson看门狗在持有期间自动续约；实例宕机后看门狗停止续约，锁在
+ * lockWatchdogTimeout（默认30秒）后过期，其他实例重新认领并从该分区的断点继续。
+ * <p>已完成的分区记录在按日期区分的Redis集合中，当天不会被重复处理。
+ * 没有可认领的分区但仍有分区未完成时定期轮询，以便接管宕机实例的分区
+ */
+@Slf4j
+@Component
+public class PartitionedSweep {
+
+    /**
+     * 已完成分区集合的保留时长，覆盖跨零点执行的任务
+     */
+    private static final Duration DONE_SET_TTL = Duration.ofDays(2);
+
+    /**
+     * 分区边界的保留时长，覆盖跨多天才完成的一轮；过期后未完成分区的断点会按新边界截断到所在区间
+     */
+    private static final Duration BOUNDS_TTL = Duration.ofDays(7);
+
+    private final RedissonClient redissonClient;
+    private final ProfileSweeper profileSweeper;
+    private final int partitionCount;
+    private final long pollIntervalMs;
+
+    public PartitionedSweep(RedissonClient redissonClient,
+                            ProfileSweeper profileSweeper,
+                            @Value("${profile.sweep.partitions:16}") int partitionCount,
+                            @Value("${profile.sweep.partition-poll-ms:5000}") long pollIntervalMs) {
+        this.redissonClient = redissonClient;
+        this.profileSweeper = profileSweeper;
+        this.partitionCount = partitionCount;
+        this.pollIntervalMs = pollIntervalMs;
+    }
+
+    /**
+     * 参与执行一轮分区遍历，直到全部分区完成或超出时间预算
+     *
+     * @param jobId      任务标识，分区锁、断点和完成集合都以此为前缀
+     * @param timeBudget 本实例的时间预算
+     * @param action     对单个用户的处理逻辑，会被多个线程并发调用，需自行保证线程安全
+     * @return 本实例处理的用户数
+     */
+    public long run(String jobId, Duration timeBudget, Consumer<ProfileScoreView> action) {
+        return run(jobId, timeBudget, (partition, range, budget) -> profileSweeper.sweepPartition(
+                jobId + ":p" + partition, range, budget, action));
+    }
+
+    /**
+     * 参与执行一轮分区遍历，每个分区按页批量处理
+     *
+     * @param pageAction 对一页用户的处理逻辑，返回其中处理失败的用户数
+     * @return 本实例处理的用户数
+     * @see ProfileSweeper#sweepPartitionInPages
+     */
+    public long runInPages(String jobId, Duration timeBudget, ToIntFunction<List<ProfileScoreView>> pageAction) {
+        return run(jobId, timeBudget, (partition, range, budget) -> profileSweeper.sweepPartitionInPages(
+                jobId + ":p" + partition, range, budget, pageAction));
+    }
+
+    private long run(String jobId, Duration timeBudget, PartitionWork work) {
+        long deadline = System.currentTimeMillis() + timeBudget.toMillis();
+        RSet<String> done = redissonClient.getSet(jobId + ":done:" + LocalDate.now(), StringCodec.INSTANCE);
+        Set<Integer> failedLocally = new HashSet<>();
+        List<ProfileSweeper.UserIdRange> ranges = null;
+        long processed = 0;
+        int claimed = 0;
+
+        while (System.currentTimeMillis() < deadline) {
+            List<Integer> pending = pendingPartitions(done.readAll(), failedLocally);
+            if (pending.isEmpty()) {
+                break;
+            }
+
+            boolean claimedAny = false;
+            for (int partition : pending) {
+                if (System.currentTimeMillis() >= deadline) {
+                    break;
+                }
+
+                RLock lock = redissonClient.getLock(jobId + ":partition:" + partition);
+                if (!lock.tryLock()) {
+                    continue;
+                }
+                claimedAny = true;
+                try {
+                    // 拿到锁之前分区可能刚被其他实例完成
+                    if (done.contains(String.valueOf(partition))) {
+                        continue;
+                    }
+
+                    if (ranges == null) {
+                        ranges = partitionRanges(jobId);
+                    }
+                    ProfileSweeper.SweepResult result = work.sweep(partition, ranges.get(partition),
+                            Duration.ofMillis(deadline - System.currentTimeMillis()));
+                    processed += result.processed();
+                    claimed++;
+
+                    if (result.completed()) {
+                        done.add(String.valueOf(partition));
+                        done.expire(DONE_SET_TTL);
+                        log.info("{} 分区{}/{}完成: 处理{}个用户，失败{}个，耗时{}ms", jobId, partition,
+                                partitionCount, result.processed(), result.failed(), result.elapsedMs());
+                    }
+                } catch (Exception e) {
+                    // 断点保留，交给其他实例或下次执行重试
+                    failedLocally.add(partition);
+                    log.error("{} 分区{}执行失败", jobId, partition, e);
+                } finally {
+                    if (lock.isHeldByCurrentThread()) {
+                        lock.unlock();
+                    }
+                }
+            }
+
+            if (!claimedAny && !sleep()) {
+                break;
+            }
+        }
+
+        boolean allDone = done.size() >= partitionCount;
+        if (allDone) {
+            redissonClient.getBucket(boundsKey(jobId), StringCodec.INSTANCE).delete();
+        }
+        log.info("{} 本实例结束: 认领{}个分区，处理{}个用户，全部分区完成={}", jobId, claimed, processed, allDone);
+        return processed;
+    }
+
+    /**
+     * 读取本轮的分区区间；本轮还没有边界时由第一个实例计算并保存，其他实例使用已保存的边界
+     */
+    private List<ProfileSweeper.UserIdRange> partitionRanges(String jobId) {
+        RBucket<String> bucket = redissonClient.getBucket(boundsKey(jobId), StringCodec.INSTANCE);
+        String saved = bucket.get();
+        if (saved == null) {
+            String computed = encodeBounds(profileSweeper.partitionRanges(partitionCount));
+            saved = bucket.setIfAbsent(computed, BOUNDS_TTL) ? computed : bucket.get();
+            log.info("{} 分区边界: {}", jobId, saved);
+        }
+
+        List<ProfileSweeper.UserIdRange> ranges = decodeBounds(saved);
+        if (ranges.size() != partitionCount) {
+            // 分区数配置变更后旧边界不再适用，按新的分区数重新计算
+            String computed = encodeBounds(profileSweeper.partitionRanges(partitionCount));
+            bucket.set(computed, BOUNDS_TTL);
+            ranges = decodeBounds(computed);
+        }
+        return ranges;
+    }
+
+    private static String boundsKey(String jobId) {
+        return jobId + ":bounds";
+    }
+
+    /**
+     * 区间首尾相接，只保存各区间的上界
+     */
+    static String encodeBounds(List<ProfileSweeper.UserIdRange> ranges) {
+        StringJoiner joiner = new StringJoiner(",");
+        ranges.forEach(range -> joiner.add(String.valueOf(range.toInclusive())));
+        return joiner.toString();
+    }
+
+    static List<ProfileSweeper.UserIdRange> decodeBounds(String bounds) {
+        List<ProfileSweeper.UserIdRange> ranges = new ArrayList<>();
+        long lower = Long.MIN_VALUE;
+        for (String bound : bounds.split(",")) {
+            long upper = Long.parseLong(bound);
+            ranges.add(new ProfileSweeper.UserIdRange(lower, upper));
+            lower = upper;
+        }
+        return ranges;
+    }
+
+    /**
+     * 未完成的分区，打乱顺序以减少多个实例争抢同一分区
+     */
+    private List<Integer> pendingPartitions(Set<String> done, Set<Integer> failedLocally) {
+        List<Integer> pending = new ArrayList<>();
+        for (int partition = 0; partition < partitionCount; partition++) {
+            if (!done.contains(String.valueOf(partition)) && !failedLocally.contains(partition)) {
+                pending.add(partition);
+            }
+        }
+        Collections.shuffle(pending);
+        return pending;
+    }
+
+    /**
+     * 遍历单个分区
+     */
+    @FunctionalInterface
+    private interface PartitionWork {
+        ProfileSweeper.SweepResult sweep(int partition, ProfileSweeper.UserIdRange range, Duration timeBudget);
+    }
+
+    private boolean sleep() {
+        try {
+            Thread.sleep(pollIntervalMs);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
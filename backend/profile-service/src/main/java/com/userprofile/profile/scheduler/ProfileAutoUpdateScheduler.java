@@ -1,23 +1,32 @@
 package com.userprofile.profile.scheduler;
 
 import com.userprofile.common.lock.DistributedLock;
+import com.userprofile.profile.analytics.BehaviorInsights;
+import com.userprofile.profile.analytics.UserBehaviorAggregateService;
 import com.userprofile.profile.analytics.UserBehaviorAnalytics;
 import com.userprofile.profile.entity.UserProfile;
 import com.userprofile.profile.event.UserEvent;
 import com.userprofile.profile.event.UserEventRepository;
+import com.userprofile.profile.repository.ProfileScoreView;
 import com.userprofile.profile.repository.UserProfileRepository;
+import com.userprofile.profile.segmentation.UserSegmentationService;
 import com.userprofile.profile.service.UserProfileService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
 
 /**
  * 画像自动更新调度器
@@ -33,60 +42,177 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class ProfileAutoUpdateScheduler {
 
+    /**
+     * 事件更新任务的锁key，同时作为断点ID
+     */
+    private static final String EVENT_UPDATE_JOB = "profile:update-from-events";
+
+    /**
+     * 每处理多少个用户写一次断点
+     */
+    private static final int CHECKPOINT_INTERVAL = 100;
+
+    /**
+     * 全量重算评分任务标识（分区锁、断点的前缀）及单实例时间预算（秒）
+     */
+    private static final String RECALCULATE_ALL_JOB = "profile:recalculate-all";
+    private static final long RECALCULATE_ALL_BUDGET_SECONDS = 7200;
+
+    /**
+     * 流失风险识别任务的锁key及租期（秒），同时作为断点ID
+     */
+    private static final String CHURN_RISK_JOB = "profile:identify-churn-risk";
+    private static final long CHURN_RISK_LEASE_SECONDS = 3600;
+
     private final UserEventRepository eventRepository;
     private final UserProfileRepository profileRepository;
     private final UserProfileService profileService;
     private final UserBehaviorAnalytics behaviorAnalytics;
+    private final UserBehaviorAggregateService aggregateService;
+    private final SchedulerCheckpointRepository checkpointRepository;
+    private final ProfileSweeper profileSweeper;
+    private final PartitionedSweep partitionedSweep;
+    private final UserSegmentationService segmentationService;
+
+    /**
+     * 单个用户一次在内存中保留的最大事件数
+     */
+    @Value("${profile.scheduler.event-batch-size:1000}")
+    private int eventBatchSize;
+
+    /**
+     * 跨用户累积多少个事件ID后批量标记为已处理
+     */
+    @Value("${profile.scheduler.event-ack-batch-size:5000}")
+    private int eventAckBatchSize;
 
     /**
      * 每小时执行一次：处理未处理的事件并更新画像
+     *
+     * <p>以游标按userId顺序流式读取事件，每次只在内存中保留一个用户的一批事件；
+     * 定期写入断点，任务中断后下次执行从断点之后的用户继续
      */
     @Scheduled(cron = "0 0 * * * ?")  // 每小时整点执行
-    @DistributedLock(key = "profile:update-from-events", leaseTime = 3600)
+    @DistributedLock(key = EVENT_UPDATE_JOB, leaseTime = 3600)
     @Async
     public void updateProfilesFromEvents() {
         log.info("开始自动更新用户画像...");
 
         try {
-            // 获取未处理的事件
-            List<UserEvent> unprocessedEvents = eventRepository.findUnprocessedEvents();
-
-            if (unprocessedEvents.isEmpty()) {
-                log.info("没有待处理的事件");
-                return;
+            SchedulerCheckpoint checkpoint = checkpointRepository.findById(EVENT_UPDATE_JOB)
+                    .orElseGet(() -> new SchedulerCheckpoint(EVENT_UPDATE_JOB, null, 0L, LocalDateTime.now(), null));
+            if (checkpoint.getLastUserId() != null) {
+                log.info("从断点继续处理: lastUserId={}, 已处理{}个用户",
+                        checkpoint.getLastUserId(), checkpoint.getProcessedCount());
             }
 
-            // 按用户ID分组
-            Map<Long, List<UserEvent>> eventsByUser = unprocessedEvents.stream()
-                    .collect(Collectors.groupingBy(UserEvent::getUserId));
-
             int updatedCount = 0;
-            for (Map.Entry<Long, List<UserEvent>> entry : eventsByUser.entrySet()) {
-                Long userId = entry.getKey();
-                List<UserEvent> userEvents = entry.getValue();
-
-                try {
-                    updateProfileFromEvents(userId, userEvents);
-                    updatedCount++;
+            int userCount = 0;
+            List<String> pendingAcks = new ArrayList<>();
+            try (Stream<UserEvent> events = eventRepository.streamUnprocessedEvents(checkpoint.getLastUserId())) {
+                UserEventBatch batch = null;
+                Iterator<UserEvent> iterator = events.iterator();
+
+                while (iterator.hasNext()) {
+                    UserEvent event = iterator.next();
+
+                    if (batch == null || !batch.userId.equals(event.getUserId())) {
+                        if (batch != null && completeBatch(batch, pendingAcks)) {
+                            updatedCount++;
+                        }
+                        if (batch != null && ++userCount % CHECKPOINT_INTERVAL == 0) {
+                            acknowledge(pendingAcks);
+                            saveCheckpoint(checkpoint, batch.userId, CHECKPOINT_INTERVAL);
+                        }
+                        batch = new UserEventBatch(event.getUserId());
+                    }
 
-                    // 标记事件为已处理
-                    userEvents.forEach(event -> {
-                        event.setProcessed(true);
-                        eventRepository.save(event);
-                    });
+                    if (batch.failed) {
+                        continue;
+                    }
+                    batch.events.add(event);
+                    if (batch.events.size() >= eventBatchSize) {
+                        flushBatch(batch, pendingAcks);
+                    }
+                }
 
-                } catch (Exception e) {
-                    log.error("更新用户{}的画像失败: {}", userId, e.getMessage());
+                if (batch != null && completeBatch(batch, pendingAcks)) {
+                    updatedCount++;
                 }
+                acknowledge(pendingAcks);
             }
 
-            log.info("画像自动更新完成，共更新{}个用户", updatedCount);
+            // 完整跑完一轮，清除断点，下次从头开始
+            checkpointRepository.deleteById(EVENT_UPDATE_JOB);
+            log.info("画像自动更新完成，共扫描{}个用户，更新{}个用户", userCount, updatedCount);
 
         } catch (Exception e) {
             log.error("画像自动更新任务失败", e);
         }
     }
 
+    /**
+     * 处理当前用户批次中剩余的事件
+     *
+     * @return 该用户画像是否更新成功
+     */
+    private boolean completeBatch(UserEventBatch batch, List<String> pendingAcks) {
+        flushBatch(batch, pendingAcks);
+        return !batch.failed;
+    }
+
+    /**
+     * 处理一批同一用户的事件
+     * 首批事件触发画像更新（画像分析会读取用户全部事件），后续批次只需标记为已处理；
+     * 画像更新失败时该用户的事件保持未处理状态，等待下次重试
+     */
+    private void flushBatch(UserEventBatch batch, List<String> pendingAcks) {
+        if (batch.failed || batch.events.isEmpty()) {
+            return;
+        }
+
+        if (!batch.profileUpdated) {
+            try {
+                updateProfileFromEvents(batch.userId, batch.events);
+                batch.profileUpdated = true;
+            } catch (Exception e) {
+                log.error("更新用户{}的画像失败: {}", batch.userId, e.getMessage());
+                batch.failed = true;
+                batch.events.clear();
+                return;
+            }
+        }
+
+        // 累积待确认的事件ID，达到阈值后一次性标记为已处理
+        batch.events.forEach(event -> pendingAcks.add(event.getId()));
+        batch.events.clear();
+        if (pendingAcks.size() >= eventAckBatchSize) {
+            acknowledge(pendingAcks);
+        }
+    }
+
+    /**
+     * 批量标记事件为已处理
+     */
+    private void acknowledge(List<String> pendingAcks) {
+        if (pendingAcks.isEmpty()) {
+            return;
+        }
+        long modified = eventRepository.markProcessed(pendingAcks);
+        log.debug("批量标记{}个事件为已处理", modified);
+        pendingAcks.clear();
+    }
+
+    /**
+     * 记录处理进度
+     */
+    private void saveCheckpoint(SchedulerCheckpoint checkpoint, Long lastUserId, int processed) {
+        checkpoint.setLastUserId(lastUserId);
+        checkpoint.setProcessedCount(checkpoint.getProcessedCount() + processed);
+        checkpoint.setUpdateTime(LocalDateTime.now());
+        checkpointRepository.save(checkpoint);
+    }
+
     /**
      * 根据用户事件更新画像
      */
@@ -107,9 +233,11 @@ public class ProfileAutoUpdateScheduler {
             profile.setDigitalBehavior(behavior);
         }
 
+        // 一次读取得到兴趣偏好和RFM
+        BehaviorInsights insights = behaviorAnalytics.analyzeInsights(userId);
+
         // 分析兴趣偏好
-        Map<String, Double> interests = behaviorAnalytics.analyzeInterests(userId);
-        if (!interests.isEmpty()) {
+        if (!insights.getInterests().isEmpty()) {
             needUpdate = true;
             // 这里可以更新品牌偏好等
         }
@@ -121,13 +249,10 @@ public class ProfileAutoUpdateScheduler {
             profile.setStickinessAndLoyalty(stickiness);
         }
 
-        // 计算RFM并更新忠诚度
-        Map<String, Object> rfm = behaviorAnalytics.calculateRFM(userId);
-        if (rfm.containsKey("score")) {
-            int rfmScore = (Integer) rfm.get("score");
-            stickiness.setLoyaltyScore((double) (rfmScore * 100 / 15));  // 归一化到100分
-            needUpdate = true;
-        }
+        // 根据RFM更新忠诚度
+        int rfmScore = insights.getRfm().getScore();
+        stickiness.setLoyaltyScore((double) (rfmScore * 100 / 15));  // 归一化到100分
+        needUpdate = true;
 
         if (needUpdate) {
             // 重新计算画像评分
@@ -138,27 +263,43 @@ public class ProfileAutoUpdateScheduler {
 
     /**
      * 每天凌晨2点：重新计算所有用户的画像评分
+     *
+     * <p>不使用全局锁：所有实例同时执行，按userId分区认领，耗时随实例数线性下降
      */
     @Scheduled(cron = "0 0 2 * * ?")  // 每天凌晨2点执行
-    @DistributedLock(key = "profile:recalculate-all", leaseTime = 7200)
     @Async
     public void recalculateAllProfiles() {
         log.info("开始重新计算所有用户画像评分...");
 
         try {
-            List<UserProfile> allProfiles = profileRepository.findAll();
-            int count = 0;
-
-            for (UserProfile profile : allProfiles) {
-                try {
-                    profileService.recalculateScore(profile.getUserId());
-                    count++;
-                } catch (Exception e) {
-                    log.error("重新计算用户{}的画像失败: {}", profile.getUserId(), e.getMessage());
-                }
-            }
+            // 每页一次批量读写；评分输入未变化的画像跳过写入
+            // 一页写入失败时整页计为失败并继续下一页，不让单页错误卡住整个分区，失败的用户由下次全量重算补上
+            LongAdder updated = new LongAdder();
+            LongAdder skipped = new LongAdder();
+            LongAdder conflicts = new LongAdder();
+            LongAdder failed = new LongAdder();
+            long processed = partitionedSweep.runInPages(RECALCULATE_ALL_JOB,
+                    leaseBudget(RECALCULATE_ALL_BUDGET_SECONDS),
+                    page -> {
+                        try {
+                            UserProfileService.BatchRecalculationResult result = profileService.recalculateScores(
+                                    page.stream().map(ProfileScoreView::userId).toList());
+                            updated.add(result.updated());
+                            skipped.add(result.skipped());
+                            conflicts.add(result.conflicts());
+                            return 0;
+                        } catch (Exception e) {
+                            failed.add(page.size());
+                            log.error("画像评分批量重算失败: userId {}~{}，共{}个用户", page.get(0).userId(),
+                                    page.get(page.size() - 1).userId(), page.size(), e);
+                            return page.size();
+                        }
+                    });
 
-            log.info("画像评分重新计算完成，共处理{}个用户", count);
+            // 与并发更新冲突的画像已由并发的更新写入最新评分，不计为失败
+            log.info("画像评分重新计算结束，本实例处理{}个用户，其中{}个输入未变化跳过，{}个重新写入，"
+                            + "{}个被并发更新未覆盖，{}个失败",
+                    processed, skipped.sum(), updated.sum(), conflicts.sum(), failed.sum());
 
         } catch (Exception e) {
             log.error("画像评分重新计算任务失败", e);
@@ -169,32 +310,28 @@ public class ProfileAutoUpdateScheduler {
      * 每天早上8点：识别高流失风险用户
      */
     @Scheduled(cron = "0 0 8 * * ?")  // 每天早上8点执行
-    @DistributedLock(key = "profile:identify-churn-risk", leaseTime = 3600)
+    @DistributedLock(key = CHURN_RISK_JOB, leaseTime = CHURN_RISK_LEASE_SECONDS)
     @Async
     public void identifyChurnRiskUsers() {
         log.info("开始识别流失风险用户...");
 
         try {
-            List<UserProfile> allProfiles = profileRepository.findAll();
-            int highRiskCount = 0;
-
-            for (UserProfile profile : allProfiles) {
-                try {
-                    Map<String, Object> risk = behaviorAnalytics.predictChurnRisk(profile.getUserId());
-                    String riskLevel = (String) risk.get("risk");
-
-                    if ("高".equals(riskLevel)) {
-                        highRiskCount++;
-                        log.warn("用户{}存在高流失风险: {}", profile.getUserId(), risk.get("reasons"));
-                        // 这里可以触发预警通知或自动营销活动
-                    }
-
-                } catch (Exception e) {
-                    log.error("分析用户{}的流失风险失败: {}", profile.getUserId(), e.getMessage());
-                }
-            }
+            LongAdder highRiskCount = new LongAdder();
+
+            ProfileSweeper.SweepResult result = profileSweeper.sweepResumable(CHURN_RISK_JOB,
+                    leaseBudget(CHURN_RISK_LEASE_SECONDS),
+                    view -> {
+                        BehaviorInsights.ChurnRisk risk = behaviorAnalytics.analyzeInsights(view.userId()).getChurnRisk();
+
+                        if ("高".equals(risk.getRisk())) {
+                            highRiskCount.increment();
+                            log.warn("用户{}存在高流失风险: {}", view.userId(), risk.getReasons());
+                            // 这里可以触发预警通知或自动营销活动
+                        }
+                    });
 
-            log.info("流失风险识别完成，发现{}个高风险用户", highRiskCount);
+            log.info("流失风险识别{}，本次扫描{}个用户，发现{}个高风险用户",
+                    result.completed() ? "完成" : "暂停", result.processed(), highRiskCount.sum());
 
         } catch (Exception e) {
             log.error("流失风险识别任务失败", e);
@@ -211,31 +348,54 @@ public class ProfileAutoUpdateScheduler {
         log.info("开始生成用户画像周报...");
 
         try {
-            List<UserProfile> allProfiles = profileRepository.findAll();
-
-            // 统计数据
-            long totalUsers = allProfiles.size();
-            double avgScore = allProfiles.stream()
-                    .filter(p -> p.getProfileScore() != null)
-                    .mapToDouble(UserProfile::getProfileScore)
-                    .average()
-                    .orElse(0.0);
+            // 单次遍历评分视图完成全部统计；周报需要完整结果，不做断点续跑
+            LongAdder scoredUsers = new LongAdder();
+            DoubleAdder scoreSum = new DoubleAdder();
+            LongAdder highValueUsers = new LongAdder();
+
+            ProfileSweeper.SweepResult result = profileSweeper.sweep("profile:generate-weekly-report", view -> {
+                Double score = view.profileScore();
+                if (score != null) {
+                    scoredUsers.increment();
+                    scoreSum.add(score);
+                    if (score >= 80) {
+                        highValueUsers.increment();
+                    }
+                }
+            });
 
-            long highValueUsers = allProfiles.stream()
-                    .filter(p -> p.getProfileScore() != null && p.getProfileScore() >= 80)
-                    .count();
+            long totalUsers = result.processed();
+            double avgScore = scoredUsers.sum() > 0 ? scoreSum.sum() / scoredUsers.sum() : 0.0;
 
             log.info("===== 用户画像周报 =====");
             log.info("总用户数: {}", totalUsers);
             log.info("平均画像评分: {}", String.format("%.2f", avgScore));
-            log.info("高价值用户数: {} ({}%)", highValueUsers,
-                    String.format("%.2f", highValueUsers * 100.0 / totalUsers));
+            log.info("高价值用户数: {} ({}%)", highValueUsers.sum(),
+                    String.format("%.2f", totalUsers > 0 ? highValueUsers.sum() * 100.0 / totalUsers : 0.0));
 
         } catch (Exception e) {
             log.error("生成周报失败", e);
         }
     }
 
+    /**
+     * 每天凌晨4点：全量对账动态分群
+     *
+     * <p>动态分群成员平时随画像变更增量维护，这里按条件全量重算一次，修正跨实例乱序、停机丢失增量等造成的偏差
+     */
+    @Scheduled(cron = "0 0 4 * * ?")  // 每天凌晨4点执行
+    @DistributedLock(key = "profile:reconcile-dynamic-segments", leaseTime = 3600)
+    @Async
+    public void reconcileDynamicSegments() {
+        log.info("开始全量对账动态分群...");
+
+        try {
+            segmentationService.refreshDynamicSegments();
+        } catch (Exception e) {
+            log.error("动态分群对账失败", e);
+        }
+    }
+
     /**
      * 每月1号：清理过期事件数据
      */
@@ -249,10 +409,34 @@ public class ProfileAutoUpdateScheduler {
             // 删除180天前的已处理事件
             LocalDateTime sixMonthsAgo = LocalDateTime.now().minus(180, ChronoUnit.DAYS);
             // 这里需要添加批量删除方法
+
+            // 行为聚合只保留分析窗口内的按天分桶，回溯两个月覆盖每月一次的执行间隔
+            aggregateService.pruneExpiredBuckets(62);
             log.info("过期事件数据清理完成");
 
         } catch (Exception e) {
             log.error("清理过期数据失败", e);
         }
     }
+
+    /**
+     * 遍历任务的时间预算：留出10%的余量，保证在分布式锁过期（或下一轮开始）前结束
+     */
+    private static Duration leaseBudget(long leaseSeconds) {
+        return Duration.ofSeconds(leaseSeconds * 9 / 10);
+    }
+
+    /**
+     * 单个用户的待处理事件批次
+     */
+    private static class UserEventBatch {
+        private final Long userId;
+        private final List<UserEvent> events = new ArrayList<>();
+        private boolean profileUpdated;
+        private boolean failed;
+
+        private UserEventBatch(Long userId) {
+            this.userId = userId;
+        }
+    }
 }
@@ -0,0 +1,297 @@
+package com.userprofile.profile.scheduler;
+
+import com.userprofile.profile.repository.ProfileScoreView;
+import com.userprofile.profile.repository.UserProfileRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
+
+/**
+ * 全量画像遍历器
+ *
+ * <p>按userId键集分页读取画像评分视图（userId &gt; 上一页最后一个userId），每页分发到有界线程池并行处理，
+ * 整页完成后才推进断点，因此中断后从断点续跑不会漏处理用户。
+ * <p>可恢复的遍历带有时间预算，超出预算后在页边界停止并保留断点，保证任务在分布式锁租期内结束，
+ * 剩余用户由下一次执行接着处理
+ */
+@Slf4j
+@Component
+public class ProfileSweeper {
+
+    /**
+     * 每处理多少页输出一次进度日志
+     */
+    private static final int PROGRESS_LOG_INTERVAL = 10;
+
+    private final UserProfileRepository profileRepository;
+    private final SchedulerCheckpointRepository checkpointRepository;
+    private final ThreadPoolExecutor executor;
+    private final int pageSize;
+
+    public ProfileSweeper(UserProfileRepository profileRepository,
+                          SchedulerCheckpointRepository checkpointRepository,
+                          @Value("${profile.sweep.page-size:1000}") int pageSize,
+                          @Value("${profile.sweep.worker-threads:8}") int workerThreads) {
+        this.profileRepository = profileRepository;
+        this.checkpointRepository = checkpointRepository;
+        this.pageSize = pageSize;
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(workerThreads, workerThreads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(pageSize),
+                r -> {
+                    Thread thread = new Thread(r, "ProfileSweep-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                // 多个遍历同时进行导致队列满时由提交线程自己处理，天然形成背压
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * 遍历全部画像，不记录断点
+     * 适用于需要一次完整统计结果的场景（如分群、周报）
+     *
+     * @param jobName 任务名称（用于日志）
+     * @param action  对单个用户的处理逻辑，会被多个线程并发调用，需自行保证线程安全
+     */
+    public SweepResult sweep(String jobName, Consumer<ProfileScoreView> action) {
+        return run(jobName, null, null, allUsers(), ProfileScoreView::userId, perUser(jobName, action));
+    }
+
+    /**
+     * 按调用方给定的分页读取方式遍历全部画像，不记录断点
+     * 适用于需要读取评分视图以外字段的遍历（如一次遍历同时评估多个分群）
+     *
+     * @param loader   读取userId大于给定值的下一页，需按userId升序、每页不超过{@link #getPageSize()}条
+     * @param userIdOf 取文档的userId，用于推进分页
+     * @param action   对单个文档的处理逻辑，会被多个线程并发调用，需自行保证线程安全
+     */
+    public <T> SweepResult sweep(String jobName, PageLoader<T> loader, ToLongFunction<T> userIdOf,
+                                 Consumer<T> action) {
+        return run(jobName, null, null, loader, userIdOf,
+                page -> processPage(jobName, page, userIdOf, action));
+    }
+
+    /**
+     * 每页读取的用户数
+     */
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    /**
+     * 可恢复地遍历全部画像
+     * 从上次的断点继续，每页完成后写断点；完整跑完后清除断点，超出时间预算时保留断点等待下次继续
+     *
+     * @param jobId      任务标识，同时作为断点ID（与分布式锁key一致）
+     * @param timeBudget 本次执行的时间预算，应小于分布式锁的租期
+     * @param action     对单个用户的处理逻辑，会被多个线程并发调用，需自行保证线程安全
+     */
+    public SweepResult sweepResumable(String jobId, Duration timeBudget, Consumer<ProfileScoreView> action) {
+        return sweepResumable(jobId, timeBudget, allUsers(), perUser(jobId, action));
+    }
+
+    /**
+     * 可恢复地遍历一个userId区间
+     * 断点按区间记录，区间被其他实例接管时从该区间的断点继续
+     *
+     * @param checkpointId 区间的断点ID
+     * @param range        userId区间，见{@link #partitionRanges}
+     * @param timeBudget   本次执行的时间预算
+     * @param action       对单个用户的处理逻辑，会被多个线程并发调用，需自行保证线程安全
+     */
+    public SweepResult sweepPartition(String checkpointId, UserIdRange range, Duration timeBudget,
+                                      Consumer<ProfileScoreView> action) {
+        return sweepResumable(checkpointId, timeBudget, rangeUsers(range), perUser(checkpointId, action));
+    }
+
+    /**
+     * 可恢复地按页遍历一个userId区间
+     * 整页交给调用方在当前线程一次处理，适合批量读写（如一页一次bulkWrite）；
+     * 处理抛出异常时遍历中止并保留断点
+     *
+     * @param pageAction 对一页用户的处理逻辑，返回其中处理失败的用户数
+     */
+    public SweepResult sweepPartitionInPages(String checkpointId, UserIdRange range, Duration timeBudget,
+                                             ToIntFunction<List<ProfileScoreView>> pageAction) {
+        return sweepResumable(checkpointId, timeBudget, rangeUsers(range), pageAction);
+    }
+
+    /**
+     * 按当前画像数量把userId切成用户数大致相等的连续区间
+     * 从上一个分割点开始只扫描idx_userId索引键（投影只含userId，不回表）跳到下一个分割点，
+     * 整体只顺序扫描一遍索引；用户数少于分区数时多出的区间为空
+     *
+     * @param partitionCount 区间数
+     * @return 首尾相接、覆盖全部userId的区间，按userId升序
+     */
+    public List<UserIdRange> partitionRanges(int partitionCount) {
+        long total = profileRepository.count();
+        List<UserIdRange> ranges = new ArrayList<>(partitionCount);
+        long lower = Long.MIN_VALUE;
+        long lowerRank = -1;
+        for (int i = 1; i < partitionCount; i++) {
+            long rank = total * i / partitionCount;
+            long upper = lower;
+            if (rank > lowerRank && lower != Long.MAX_VALUE) {
+                // 从上一个分割点之后跳过(rank - lowerRank - 1)个userId，取到排名为rank的userId
+                List<ProfileScoreView> split = profileRepository.findUserIdPageAfter(lower,
+                        PageRequest.of(Math.toIntExact(rank - lowerRank - 1), 1));
+                upper = split.isEmpty() ? Long.MAX_VALUE : split.get(0).userId();
+                lowerRank = rank;
+            }
+            ranges.add(new UserIdRange(lower, upper));
+            lower = upper;
+        }
+        ranges.add(new UserIdRange(lower, Long.MAX_VALUE));
+        return ranges;
+    }
+
+    private SweepResult sweepResumable(String jobId, Duration timeBudget, PageLoader<ProfileScoreView> loader,
+                                       ToIntFunction<List<ProfileScoreView>> pageHandler) {
+        SchedulerCheckpoint checkpoint = checkpointRepository.findById(jobId)
+                .orElseGet(() -> new SchedulerCheckpoint(jobId, null, 0L, LocalDateTime.now(), null));
+        if (checkpoint.getLastUserId() != null) {
+            log.info("{} 从断点继续: lastUserId={}, 已处理{}个用户",
+                    jobId, checkpoint.getLastUserId(), checkpoint.getProcessedCount());
+        }
+
+        SweepResult result = run(jobId, checkpoint, timeBudget, loader, ProfileScoreView::userId, pageHandler);
+        if (result.completed()) {
+            checkpointRepository.deleteById(jobId);
+        }
+        return result;
+    }
+
+    private PageLoader<ProfileScoreView> allUsers() {
+        return after -> profileRepository.findByUserIdGreaterThanOrderByUserIdAsc(after, PageRequest.ofSize(pageSize));
+    }
+
+    private PageLoader<ProfileScoreView> rangeUsers(UserIdRange range) {
+        return after -> after >= range.toInclusive() ? List.of()
+                : profileRepository.findScoreViewPageInRange(Math.max(after, range.fromExclusive()),
+                        range.toInclusive(), PageRequest.ofSize(pageSize));
+    }
+
+    /**
+     * 逐用户处理：整页分发到线程池并行执行
+     */
+    private ToIntFunction<List<ProfileScoreView>> perUser(String jobName, Consumer<ProfileScoreView> action) {
+        return page -> processPage(jobName, page, ProfileScoreView::userId, action);
+    }
+
+    private <T> SweepResult run(String jobName, SchedulerCheckpoint checkpoint, Duration timeBudget,
+                                PageLoader<T> loader, ToLongFunction<T> userIdOf,
+                                ToIntFunction<List<T>> pageHandler) {
+        long startTime = System.currentTimeMillis();
+        long deadline = timeBudget != null ? startTime + timeBudget.toMillis() : Long.MAX_VALUE;
+        Long lastUserId = checkpoint != null ? checkpoint.getLastUserId() : null;
+
+        long failed = 0;
+        long processed = 0;
+        int pages = 0;
+
+        while (true) {
+            if (System.currentTimeMillis() >= deadline) {
+                log.warn("{} 超出时间预算{}，在userId={}处暂停，剩余用户下次继续",
+                        jobName, timeBudget, lastUserId);
+                return new SweepResult(processed, failed, false, System.currentTimeMillis() - startTime);
+            }
+
+            List<T> page = loader.load(lastUserId != null ? lastUserId : Long.MIN_VALUE);
+            if (page.isEmpty()) {
+                break;
+            }
+
+            failed += pageHandler.applyAsInt(page);
+            processed += page.size();
+            lastUserId = userIdOf.applyAsLong(page.get(page.size() - 1));
+
+            if (checkpoint != null) {
+                checkpoint.setLastUserId(lastUserId);
+                checkpoint.setProcessedCount(checkpoint.getProcessedCount() + page.size());
+                checkpoint.setUpdateTime(LocalDateTime.now());
+                checkpointRepository.save(checkpoint);
+            }
+
+            if (++pages % PROGRESS_LOG_INTERVAL == 0) {
+                long elapsed = System.currentTimeMillis() - startTime;
+                log.info("{} 进度: 已处理{}个用户，失败{}个，lastUserId={}, 速率{}/s",
+                        jobName, processed, failed, lastUserId, processed * 1000 / Math.max(elapsed, 1));
+            }
+
+            if (page.size() < pageSize) {
+                break;
+            }
+        }
+
+        return new SweepResult(processed, failed, true, System.currentTimeMillis() - startTime);
+    }
+
+    /**
+     * 并行处理一页用户，等待整页完成
+     * 单个用户失败只计数，不影响同页其他用户和断点推进
+     *
+     * @return 处理失败的用户数
+     */
+    private <T> int processPage(String jobName, List<T> page, ToLongFunction<T> userIdOf, Consumer<T> action) {
+        AtomicInteger failed = new AtomicInteger();
+        List<CompletableFuture<Void>> futures = new ArrayList<>(page.size());
+        for (T item : page) {
+            futures.add(CompletableFuture.runAsync(() -> {
+                try {
+                    action.accept(item);
+                } catch (Exception e) {
+                    failed.incrementAndGet();
+                    log.error("{} 处理用户{}失败: {}", jobName, userIdOf.applyAsLong(item), e.getMessage());
+                }
+            }, executor));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        return failed.get();
+    }
+
+    /**
+     * 读取userId大于给定值的下一页
+     */
+    @FunctionalInterface
+    public interface PageLoader<T> {
+        List<T> load(long afterUserId);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * userId区间 (fromExclusive, toInclusive]
+     */
+    public record UserIdRange(long fromExclusive, long toInclusive) {
+    }
+
+    /**
+     * 遍历结果
+     *
+     * @param processed 本次处理的用户数
+     * @param failed    其中处理失败的用户数
+     * @param completed 是否已遍历到末尾（false表示因时间预算暂停）
+     * @param elapsedMs 本次耗时
+     */
+    public record SweepResult(long processed, long failed, boolean completed, long elapsedMs) {
+    }
+}
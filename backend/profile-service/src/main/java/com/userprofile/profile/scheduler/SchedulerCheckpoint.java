@@ -0,0 +1,46 @@
+package com.userprofile.profile.scheduler;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+/**
+ * 定时任务断点
+ * 记录批处理任务的执行进度，实例崩溃或锁过期后可从断点继续
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "scheduler_checkpoints")
+public class SchedulerCheckpoint {
+
+    /**
+     * 任务标识（与分布式锁key一致）
+     */
+    @Id
+    private String id;
+
+    /**
+     * 最后一个已完成处理的用户ID
+     */
+    private Long lastUserId;
+
+    /**
+     * 本轮已处理数量
+     */
+    private Long processedCount;
+
+    /**
+     * 本轮开始时间
+     */
+    private LocalDateTime startTime;
+
+    /**
+     * 断点更新时间
+     */
+    private LocalDateTime updateTime;
+}
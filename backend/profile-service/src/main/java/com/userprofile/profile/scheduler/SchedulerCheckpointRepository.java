@@ -0,0 +1,11 @@
+package com.userprofile.profile.scheduler;
+
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+/**
+ * 定时任务断点数据访问接口
+ */
+@Repository
+public interface SchedulerCheckpointRepository extends MongoRepository<SchedulerCheckpoint, String> {
+}
@@ -0,0 +1,82 @@
+package com.userprofile.profile.segmentation;
+
+import java.util.List;
+
+/**
+ * 自动分群规则
+ * 每条规则把用户划入固定的若干组之一，每组保存为一个分群
+ */
+public enum AutoSegmentation {
+
+    RFM("RFM-", "基于RFM模型自动分群: ", UserSegment.SegmentType.RFM, true,
+            List.of("重要价值客户", "重要发展客户", "重要保持客户", "一般客户", "低价值客户")) {
+        @Override
+        String group(ProfileEvaluation evaluation) {
+            return evaluation.insights().getRfm().getLevel();
+        }
+    },
+
+    PROFILE_SCORE("评分-", "基于画像评分自动分群: ", UserSegment.SegmentType.DYNAMIC, false,
+            List.of("高价值用户(80+)", "活跃用户(60-79)", "潜力用户(40-59)", "普通用户(20-39)", "低活跃用户(<20)")) {
+        @Override
+        String group(ProfileEvaluation evaluation) {
+            Double profileScore = evaluation.profile().getProfileScore();
+            double score = profileScore != null ? profileScore : 0.0;
+            return score >= 80 ? "高价值用户(80+)" :
+                   score >= 60 ? "活跃用户(60-79)" :
+                   score >= 40 ? "潜力用户(40-59)" :
+                   score >= 20 ? "普通用户(20-39)" : "低活跃用户(<20)";
+        }
+    },
+
+    CHURN_RISK("流失风险-", "基于流失风险预测自动分群: ", UserSegment.SegmentType.BEHAVIOR, true,
+            List.of("高流失风险", "中流失风险", "低流失风险")) {
+        @Override
+        String group(ProfileEvaluation evaluation) {
+            return evaluation.insights().getChurnRisk().getRisk() + "流失风险";
+        }
+    };
+
+    private final String namePrefix;
+    private final String descriptionPrefix;
+    private final UserSegment.SegmentType segmentType;
+    private final boolean needsInsights;
+    private final List<String> groups;
+
+    AutoSegmentation(String namePrefix, String descriptionPrefix, UserSegment.SegmentType segmentType,
+                     boolean needsInsights, List<String> groups) {
+        this.namePrefix = namePrefix;
+        this.descriptionPrefix = descriptionPrefix;
+        this.segmentType = segmentType;
+        this.needsInsights = needsInsights;
+        this.groups = groups;
+    }
+
+    /**
+     * 用户所属的组
+     */
+    abstract String group(ProfileEvaluation evaluation);
+
+    public String getNamePrefix() {
+        return namePrefix;
+    }
+
+    public String getDescriptionPrefix() {
+        return descriptionPrefix;
+    }
+
+    public UserSegment.SegmentType getSegmentType() {
+        return segmentType;
+    }
+
+    /**
+     * 是否需要读取用户行为聚合
+     */
+    public boolean needsInsights() {
+        return needsInsights;
+    }
+
+    public List<String> getGroups() {
+        return groups;
+    }
+}
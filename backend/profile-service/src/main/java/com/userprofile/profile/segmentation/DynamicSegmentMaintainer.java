@@ -0,0 +1,171 @@
+package com.userprofile.profile.segmentation;
+
+import com.userprofile.common.exception.BusinessException;
+import com.userprofile.profile.entity.UserProfile;
+import com.userprofile.profile.event.ProfileChangedEvent;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.roaringbitmap.longlong.Roaring64NavigableMap;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Predicate;
+
+/**
+ * 动态分群增量维护
+ *
+ * <p>画像变更时只把该用户对各启用的动态分群重新评估一次（条件预先编译），成员变化记为增量；
+ * 增量在内存中按分群合并，定期在分群锁内一次性应用到成员位图，没有实际变化的分群不写入。
+ * <p>每个实例只处理本实例发布的画像变更事件。跨实例的乱序、停机时未写出的增量等偏差
+ * 由每天一次的全量对账（{@link UserSegmentationService#refreshDynamicSegments}）修正
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class DynamicSegmentMaintainer {
+
+    private final UserSegmentRepository segmentRepository;
+    private final SegmentMembershipStore membershipStore;
+    private final MongoTemplate mongoTemplate;
+
+    /**
+     * 待写出的成员增量，key为分群ID
+     */
+    private final ConcurrentMap<String, MembershipDelta> pending = new ConcurrentHashMap<>();
+
+    private volatile List<CompiledSegment> segments = List.of();
+
+    /**
+     * 重新加载启用的动态分群并编译条件
+     * 定期执行以感知其他实例创建或修改的分群，本实例创建分群后也会立即调用
+     */
+    @Scheduled(fixedDelayString = "${profile.segment.definition-reload-ms:60000}")
+    public void reloadDefinitions() {
+        List<CompiledSegment> compiled = new ArrayList<>();
+        for (UserSegment segment : segmentRepository.findByTypeAndActive(UserSegment.SegmentType.DYNAMIC, true)) {
+            try {
+                compiled.add(new CompiledSegment(segment.getId(),
+                        SegmentConditionCompiler.compile(segment.getConditions())));
+            } catch (BusinessException e) {
+                log.warn("分群{}条件无效，不做增量维护: {}", segment.getName(), e.getMessage());
+            }
+        }
+        segments = compiled;
+    }
+
+    /**
+     * 画像变更时重新评估该用户，记录成员增量
+     */
+    @EventListener
+    public void onProfileChanged(ProfileChangedEvent event) {
+        Long userId = event.getUserId();
+        if (userId == null) {
+            return;
+        }
+
+        UserProfile profile = event.isDeleted() ? null : event.getProfile();
+        for (CompiledSegment segment : segments) {
+            boolean member = profile != null && segment.predicate().test(profile);
+            pending.compute(segment.id(), (id, delta) ->
+                    (delta != null ? delta : new MembershipDelta()).record(userId, member));
+        }
+    }
+
+    /**
+     * 把累积的增量写入成员存储，并更新分群文档中的用户数
+     * 写入失败的增量放回队列，与期间产生的新增量合并后下次重试
+     */
+    @Scheduled(fixedDelayString = "${profile.segment.delta-flush-ms:5000}")
+    public void flush() {
+        Set<String> activeIds = new HashSet<>();
+        segments.forEach(segment -> activeIds.add(segment.id()));
+
+        for (String segmentId : new ArrayList<>(pending.keySet())) {
+            MembershipDelta delta = pending.remove(segmentId);
+            // 分群已停用或删除时丢弃增量
+            if (delta == null || !activeIds.contains(segmentId)) {
+                continue;
+            }
+
+            try {
+                OptionalLong userCount = membershipStore.update(segmentId, delta::applyTo);
+                if (userCount.isPresent()) {
+                    mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(segmentId)),
+                            new Update().set("userCount", (int) userCount.getAsLong())
+                                    .set("updateTime", LocalDateTime.now()),
+                            UserSegment.class);
+                    log.debug("分群{}增量更新: +{} -{}, 当前用户数{}", segmentId,
+                            delta.added.getLongCardinality(), delta.removed.getLongCardinality(),
+                            userCount.getAsLong());
+                }
+            } catch (Exception e) {
+                pending.merge(segmentId, delta, (newer, failed) -> failed.then(newer));
+                log.error("分群{}增量写入失败，稍后重试", segmentId, e);
+            }
+        }
+    }
+
+    /**
+     * 编译后的动态分群
+     */
+    private record CompiledSegment(String id, Predicate<UserProfile> predicate) {
+    }
+
+    /**
+     * 单个分群的成员增量，同一用户以最后一次评估结果为准
+     * 只在ConcurrentHashMap的compute/merge中修改，取出后归写出线程独占
+     */
+    static final class MembershipDelta {
+        private final Roaring64NavigableMap added = new Roaring64NavigableMap();
+        private final Roaring64NavigableMap removed = new Roaring64NavigableMap();
+
+        MembershipDelta record(long userId, boolean member) {
+            if (member) {
+                added.addLong(userId);
+                removed.removeLong(userId);
+            } else {
+                removed.addLong(userId);
+                added.removeLong(userId);
+            }
+            return this;
+        }
+
+        /**
+         * 在本增量之后叠加更新的增量
+         */
+        MembershipDelta then(MembershipDelta newer) {
+            added.andNot(newer.removed);
+            added.or(newer.added);
+            removed.andNot(newer.added);
+            removed.or(newer.removed);
+            return this;
+        }
+
+        /**
+         * 应用到成员位图
+         *
+         * @return 成员是否有变化
+         */
+        boolean applyTo(Roaring64NavigableMap members) {
+            Roaring64NavigableMap toAdd = SegmentMembershipStore.copy(added);
+            toAdd.andNot(members);
+            Roaring64NavigableMap toRemove = SegmentMembershipStore.copy(removed);
+            toRemove.and(members);
+            if (toAdd.isEmpty() && toRemove.isEmpty()) {
+                return false;
+            }
+            members.or(toAdd);
+            members.andNot(toRemove);
+            return true;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.userprofile.profile.segmentation;
+
+import com.userprofile.profile.analytics.BehaviorInsights;
+import com.userprofile.profile.entity.UserProfile;
+
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * 单个画像在一次多分群评估中的上下文
+ * 共享条件的结果和行为洞察按需计算并缓存，同一画像内只计算一次；只在单个线程内使用
+ */
+final class ProfileEvaluation {
+
+    private static final byte UNKNOWN = 0;
+    private static final byte MATCHED = 1;
+    private static final byte UNMATCHED = 2;
+
+    private final UserProfile profile;
+    private final List<Predicate<UserProfile>> conditions;
+    private final byte[] results;
+    private final Function<Long, BehaviorInsights> insightsLoader;
+    private BehaviorInsights insights;
+
+    ProfileEvaluation(UserProfile profile, List<Predicate<UserProfile>> conditions,
+                      Function<Long, BehaviorInsights> insightsLoader) {
+        this.profile = profile;
+        this.conditions = conditions;
+        this.results = new byte[conditions.size()];
+        this.insightsLoader = insightsLoader;
+    }
+
+    UserProfile profile() {
+        return profile;
+    }
+
+    /**
+     * 共享条件是否匹配
+     *
+     * @param slot 条件在{@link SegmentationEngine}共享条件表中的位置
+     */
+    boolean condition(int slot) {
+        byte result = results[slot];
+        if (result == UNKNOWN) {
+            result = conditions.get(slot).test(profile) ? MATCHED : UNMATCHED;
+            results[slot] = result;
+        }
+        return result == MATCHED;
+    }
+
+    /**
+     * 用户行为洞察，首次访问时读取
+     */
+    BehaviorInsights insights() {
+        if (insights == null) {
+            insights = insightsLoader.apply(profile.getUserId());
+        }
+        return insights;
+    }
+}
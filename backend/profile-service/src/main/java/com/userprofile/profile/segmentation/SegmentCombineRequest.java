@@ -0,0 +1,49 @@
+package com.userprofile.profile.segmentation;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * 分群集合运算请求
+ * 按顺序对分群成员做运算：第一个分群与其后每个分群依次求并集/交集/差集
+ */
+@Data
+public class SegmentCombineRequest {
+
+    /**
+     * 集合运算
+     */
+    private SetOperation operation;
+
+    /**
+     * 参与运算的分群ID，至少两个
+     */
+    private List<String> segmentIds;
+
+    /**
+     * 保存为新分群时的名称
+     */
+    private String name;
+
+    /**
+     * 保存为新分群时的描述
+     */
+    private String description;
+
+    public enum SetOperation {
+        UNION("并集"),
+        INTERSECTION("交集"),
+        DIFFERENCE("差集");
+
+        private final String description;
+
+        SetOperation(String description) {
+            this.description = description;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package com.userprofile.profile.segmentation;
+
+import com.userprofile.common.exception.BusinessException;
+import com.userprofile.profile.entity.UserProfile;
+import com.userprofile.profile.segmentation.UserSegment.SegmentCondition;
+import com.userprofile.profile.segmentation.UserSegment.SegmentCondition.Operator;
+
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * 分群条件编译器
+ *
+ * <p>把条件列表一次性编译为谓词树：字段名解析为{@link SegmentField}，常量预先解析为double、
+ * 有序数组或集合，评估时只做原始类型比较，不再按字段名匹配、装箱或toString，不产生临时对象。
+ * <p>条件组合语义与原解释执行一致：按顺序左结合，每个条件的logic决定它与下一个条件的关系（默认AND），
+ * AND与OR之间没有优先级。字段值为空时除IS_NULL外的操作符均不匹配
+ */
+public final class SegmentConditionCompiler {
+
+    private SegmentConditionCompiler() {
+    }
+
+    /**
+     * 编译条件列表
+     *
+     * @throws BusinessException 字段不支持、操作符与字段类型不匹配或常量无法解析时
+     */
+    public static Predicate<UserProfile> compile(List<SegmentCondition> conditions) {
+        return combine(conditions, SegmentConditionCompiler::compile);
+    }
+
+    /**
+     * 按条件组合语义把单个条件的谓词组合起来
+     *
+     * @param leaf 编译单个条件，可对相同条件返回共享的谓词
+     */
+    static <T> Predicate<T> combine(List<SegmentCondition> conditions, Function<SegmentCondition, Predicate<T>> leaf) {
+        if (conditions == null || conditions.isEmpty()) {
+            return target -> true;
+        }
+
+        Predicate<T> result = leaf.apply(conditions.get(0));
+        for (int i = 1; i < conditions.size(); i++) {
+            Predicate<T> left = result;
+            Predicate<T> right = leaf.apply(conditions.get(i));
+            result = isOr(conditions.get(i - 1))
+                    ? target -> left.test(target) || right.test(target)
+                    : target -> left.test(target) && right.test(target);
+        }
+        return result;
+    }
+
+    /**
+     * 条件与下一个条件之间是否为OR
+     */
+    static boolean isOr(SegmentCondition condition) {
+        return "OR".equalsIgnoreCase(condition.getLogic());
+    }
+
+    /**
+     * 编译单个条件
+     */
+    static Predicate<UserProfile> compile(SegmentCondition condition) {
+        SegmentField field = SegmentField.of(condition.getField());
+        Operator operator = condition.getOperator();
+        if (operator == null) {
+            throw new BusinessException("分群条件缺少操作符: " + condition.getField());
+        }
+
+        switch (operator) {
+            case IS_NULL:
+                return field::isNull;
+            case IS_NOT_NULL:
+                return profile -> !field.isNull(profile);
+            default:
+                break;
+        }
+
+        return switch (field.getType()) {
+            case NUMBER -> compileNumber(field, operator, condition.getValue());
+            case STRING -> compileString(field, operator, condition.getValue());
+            case STRING_LIST -> compileStringList(field, operator, condition.getValue());
+        };
+    }
+
+    private static Predicate<UserProfile> compileNumber(SegmentField field, Operator operator, Object value) {
+        switch (operator) {
+            case IN, NOT_IN -> {
+                double[] sorted = parseNumbers(field, value).stream().mapToDouble(Double::doubleValue).sorted().toArray();
+                boolean negate = operator == Operator.NOT_IN;
+                return profile -> {
+                    double v = field.number(profile);
+                    return !Double.isNaN(v) && (Arrays.binarySearch(sorted, v) >= 0) != negate;
+                };
+            }
+            case BETWEEN -> {
+                List<Double> bounds = parseNumbers(field, value);
+                if (bounds.size() != 2 || bounds.get(0) > bounds.get(1)) {
+                    throw new BusinessException("BETWEEN需要[下限, 上限]两个值: " + field.getName());
+                }
+                double low = bounds.get(0);
+                double high = bounds.get(1);
+                return profile -> {
+                    double v = field.number(profile);
+                    return v >= low && v <= high;
+                };
+            }
+            default -> {
+                double c = parseNumber(field, value);
+                return switch (operator) {
+                    case EQUALS -> profile -> field.number(profile) == c;
+                    case NOT_EQUALS -> profile -> {
+                        double v = field.number(profile);
+                        return !Double.isNaN(v) && v != c;
+                    };
+                    case GREATER_THAN -> profile -> field.number(profile) > c;
+                    case LESS_THAN -> profile -> field.number(profile) < c;
+                    case GREATER_OR_EQUAL -> profile -> field.number(profile) >= c;
+                    case LESS_OR_EQUAL -> profile -> field.number(profile) <= c;
+                    default -> throw unsupported(field, operator);
+                };
+            }
+        }
+    }
+
+    private static Predicate<UserProfile> compileString(SegmentField field, Operator operator, Object value) {
+        switch (operator) {
+            case IN, NOT_IN -> {
+                Set<String> set = new HashSet<>(parseStrings(field, value));
+                boolean negate = operator == Operator.NOT_IN;
+                return profile -> {
+                    String v = field.string(profile);
+                    return v != null && set.contains(v) != negate;
+                };
+            }
+            default -> {
+                String c = parseString(field, value);
+                return switch (operator) {
+                    case EQUALS -> profile -> c.equals(field.string(profile));
+                    case NOT_EQUALS -> profile -> {
+                        String v = field.string(profile);
+                        return v != null && !c.equals(v);
+                    };
+                    case CONTAINS -> profile -> {
+                        String v = field.string(profile);
+                        return v != null && v.contains(c);
+                    };
+                    case NOT_CONTAINS -> profile -> {
+                        String v = field.string(profile);
+                        return v != null && !v.contains(c);
+                    };
+                    default -> throw unsupported(field, operator);
+                };
+            }
+        }
+    }
+
+    private static Predicate<UserProfile> compileStringList(SegmentField field, Operator operator, Object value) {
+        switch (operator) {
+            case IN, NOT_IN -> {
+                Set<String> set = new HashSet<>(parseStrings(field, value));
+                boolean negate = operator == Operator.NOT_IN;
+                return profile -> !field.isNull(profile) && anyIn(field.strings(profile), set) != negate;
+            }
+            default -> {
+                String c = parseString(field, value);
+                return switch (operator) {
+                    case EQUALS, CONTAINS -> profile -> field.strings(profile).contains(c);
+                    case NOT_EQUALS, NOT_CONTAINS -> profile ->
+                            !field.isNull(profile) && !field.strings(profile).contains(c);
+                    default -> throw unsupported(field, operator);
+                };
+            }
+        }
+    }
+
+    /**
+     * 列表中是否有任一元素在集合中（按下标遍历，不创建迭代器）
+     */
+    private static boolean anyIn(List<String> values, Set<String> set) {
+        for (int i = 0; i < values.size(); i++) {
+            if (set.contains(values.get(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static double parseNumber(SegmentField field, Object value) {
+        if (value instanceof Number number) {
+            return number.doubleValue();
+        }
+        if (value instanceof String text) {
+            try {
+                return Double.parseDouble(text.trim());
+            } catch (NumberFormatException e) {
+                // 落到下方统一抛出
+            }
+        }
+        throw new BusinessException("分群条件值不是数值: " + field.getName() + "=" + value);
+    }
+
+    static List<Double> parseNumbers(SegmentField field, Object value) {
+        List<Double> numbers = new ArrayList<>();
+        for (Object element : elements(field, value)) {
+            numbers.add(parseNumber(field, element));
+        }
+        return numbers;
+    }
+
+    static String parseString(SegmentField field, Object value) {
+        if (value == null || value instanceof Collection<?>) {
+            throw new BusinessException("分群条件值不是单个值: " + field.getName() + "=" + value);
+        }
+        return value.toString();
+    }
+
+    static List<String> parseStrings(SegmentField field, Object value) {
+        List<String> strings = new ArrayList<>();
+        for (Object element : elements(field, value)) {
+            strings.add(parseString(field, element));
+        }
+        return strings;
+    }
+
+    /**
+     * 列表常量：接受JSON数组或逗号分隔的字符串
+     */
+    private static List<?> elements(SegmentField field, Object value) {
+        if (value instanceof Collection<?> collection && !collection.isEmpty()) {
+            return new ArrayList<>(collection);
+        }
+        if (value instanceof String text && !text.isBlank()) {
+            return Arrays.stream(text.split(",")).map(String::trim).toList();
+        }
+        throw new BusinessException("分群条件需要列表值: " + field.getName() + "=" + value);
+    }
+
+    private static BusinessException unsupported(SegmentField field, Operator operator) {
+        return new BusinessException("字段" + field.getName() + "不支持操作符" + operator.name());
+    }
+}
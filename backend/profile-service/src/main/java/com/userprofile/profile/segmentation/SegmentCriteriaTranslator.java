@@ -0,0 +1,144 @@
+package com.userprofile.profile.segmentation;
+
+import com.userprofile.profile.segmentation.UserSegment.SegmentCondition;
+import com.userprofile.profile.segmentation.UserSegment.SegmentCondition.Operator;
+import org.springframework.data.mongodb.core.query.Criteria;
+
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * 分群条件到MongoDB查询条件的转换器
+ *
+ * <p>按与{@link SegmentConditionCompiler}相同的左结合语义构造Criteria，空值语义也保持一致
+ * （字段为空时除IS_NULL外均不匹配，列表字段空列表视为空）。
+ * <p>没有存储路径的字段（派生字段）无法下推：AND中直接省略该条件，OR中整个分支无法下推。
+ * 此时得到的Criteria是结果的超集，{@link Translation#exact()}为false，调用方需要在JVM中用编译后的谓词再过滤一次
+ */
+public final class SegmentCriteriaTranslator {
+
+    private SegmentCriteriaTranslator() {
+    }
+
+    /**
+     * 转换结果
+     *
+     * @param criteria 下推到MongoDB的条件，为null表示不做过滤
+     * @param exact    条件是否与原条件完全等价；为false时查询结果需在JVM中再过滤
+     */
+    public record Translation(Criteria criteria, boolean exact) {
+    }
+
+    /**
+     * 转换条件列表
+     * 条件需先通过{@link SegmentConditionCompiler#compile}校验
+     */
+    public static Translation translate(List<SegmentCondition> conditions) {
+        if (conditions == null || conditions.isEmpty()) {
+            return new Translation(null, true);
+        }
+
+        Translation result = translate(conditions.get(0));
+        for (int i = 1; i < conditions.size(); i++) {
+            Translation right = translate(conditions.get(i));
+            result = SegmentConditionCompiler.isOr(conditions.get(i - 1)) ? or(result, right) : and(result, right);
+        }
+        return result;
+    }
+
+    private static Translation and(Translation left, Translation right) {
+        boolean exact = left.exact() && right.exact();
+        if (left.criteria() == null) {
+            return new Translation(right.criteria(), exact);
+        }
+        if (right.criteria() == null) {
+            return new Translation(left.criteria(), exact);
+        }
+        return new Translation(new Criteria().andOperator(left.criteria(), right.criteria()), exact);
+    }
+
+    private static Translation or(Translation left, Translation right) {
+        // 任一分支无法下推时整个OR无法下推
+        if (left.criteria() == null || right.criteria() == null) {
+            return new Translation(null, false);
+        }
+        return new Translation(new Criteria().orOperator(left.criteria(), right.criteria()),
+                left.exact() && right.exact());
+    }
+
+    /**
+     * 转换单个条件，派生字段返回不过滤的非精确结果
+     */
+    static Translation translate(SegmentCondition condition) {
+        SegmentField field = SegmentField.of(condition.getField());
+        if (field.getPath() == null) {
+            return new Translation(null, false);
+        }
+        return new Translation(criteria(field, condition.getOperator(), condition.getValue()), true);
+    }
+
+    private static Criteria criteria(SegmentField field, Operator operator, Object value) {
+        String path = field.getPath();
+        boolean list = field.getType() == SegmentField.Type.STRING_LIST;
+
+        switch (operator) {
+            case IS_NULL:
+                return list
+                        ? new Criteria().orOperator(Criteria.where(path).is(null), Criteria.where(path).size(0))
+                        : Criteria.where(path).is(null);
+            case IS_NOT_NULL:
+                return present(field);
+            default:
+                break;
+        }
+
+        if (field.getType() == SegmentField.Type.NUMBER) {
+            return switch (operator) {
+                case IN -> Criteria.where(path).in(SegmentConditionCompiler.parseNumbers(field, value));
+                case NOT_IN -> new Criteria().andOperator(
+                        Criteria.where(path).nin(SegmentConditionCompiler.parseNumbers(field, value)), present(field));
+                case BETWEEN -> {
+                    List<Double> bounds = SegmentConditionCompiler.parseNumbers(field, value);
+                    yield Criteria.where(path).gte(bounds.get(0)).lte(bounds.get(1));
+                }
+                case EQUALS -> Criteria.where(path).is(SegmentConditionCompiler.parseNumber(field, value));
+                case NOT_EQUALS -> new Criteria().andOperator(
+                        Criteria.where(path).ne(SegmentConditionCompiler.parseNumber(field, value)), present(field));
+                case GREATER_THAN -> Criteria.where(path).gt(SegmentConditionCompiler.parseNumber(field, value));
+                case LESS_THAN -> Criteria.where(path).lt(SegmentConditionCompiler.parseNumber(field, value));
+                case GREATER_OR_EQUAL -> Criteria.where(path).gte(SegmentConditionCompiler.parseNumber(field, value));
+                case LESS_OR_EQUAL -> Criteria.where(path).lte(SegmentConditionCompiler.parseNumber(field, value));
+                default -> throw new IllegalArgumentException(operator.name());
+            };
+        }
+
+        // 字符串与字符串列表：MongoDB对数组字段的等值/$in/$ne/$nin按元素匹配
+        return switch (operator) {
+            case IN -> Criteria.where(path).in(SegmentConditionCompiler.parseStrings(field, value));
+            case NOT_IN -> new Criteria().andOperator(
+                    Criteria.where(path).nin(SegmentConditionCompiler.parseStrings(field, value)), present(field));
+            case EQUALS -> Criteria.where(path).is(SegmentConditionCompiler.parseString(field, value));
+            case NOT_EQUALS -> new Criteria().andOperator(
+                    Criteria.where(path).ne(SegmentConditionCompiler.parseString(field, value)), present(field));
+            case CONTAINS -> list
+                    ? Criteria.where(path).is(SegmentConditionCompiler.parseString(field, value))
+                    : Criteria.where(path).regex(Pattern.quote(SegmentConditionCompiler.parseString(field, value)));
+            case NOT_CONTAINS -> list
+                    ? new Criteria().andOperator(
+                            Criteria.where(path).ne(SegmentConditionCompiler.parseString(field, value)), present(field))
+                    : new Criteria().andOperator(
+                            Criteria.where(path).not().regex(Pattern.quote(SegmentConditionCompiler.parseString(field, value))),
+                            present(field));
+            default -> throw new IllegalArgumentException(operator.name());
+        };
+    }
+
+    /**
+     * 字段非空：标量字段存在且不为null，列表字段至少有一个元素
+     */
+    private static Criteria present(SegmentField field) {
+        return field.getType() == SegmentField.Type.STRING_LIST
+                ? Criteria.where(field.getPath() + ".0").exists(true)
+                : Criteria.where(field.getPath()).ne(null);
+    }
+}
@@ -0,0 +1,143 @@
+package com.userprofile.profile.segmentation;
+
+import com.userprofile.common.exception.BusinessException;
+import com.userprofile.profile.entity.UserProfile;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * 分群条件可用字段注册表
+ *
+ * <p>每个字段声明取值类型、MongoDB字段路径和预先解析好的取值函数，编译条件时一次性解析，
+ * 评估时不再按字段名做字符串匹配。
+ * 有存储路径的字段可下推为MongoDB查询条件，派生字段路径为null，只能读取后在JVM中评估
+ */
+public enum SegmentField {
+
+    USER_ID("userId", Type.NUMBER, "userId", UserProfile::getUserId),
+    USERNAME("username", Type.STRING, "username", UserProfile::getUsername),
+    PROFILE_SCORE("profileScore", Type.NUMBER, "profileScore", UserProfile::getProfileScore),
+    LOYALTY_SCORE("loyaltyScore", Type.NUMBER, "stickinessAndLoyalty.loyaltyScore",
+            p -> p.getStickinessAndLoyalty() != null ? p.getStickinessAndLoyalty().getLoyaltyScore() : null),
+    AVG_ORDER_VALUE("avgOrderValue", Type.NUMBER, "valueAssessment.avgOrderValue",
+            p -> p.getValueAssessment() != null ? p.getValueAssessment().getAvgOrderValue() : null),
+    CONSUMPTION_LEVEL("consumptionLevel", Type.STRING, "valueAssessment.consumptionLevel",
+            p -> p.getValueAssessment() != null ? p.getValueAssessment().getConsumptionLevel() : null),
+    PROFILE_QUALITY("profileQuality", Type.STRING, "valueAssessment.profileQuality",
+            p -> p.getValueAssessment() != null ? p.getValueAssessment().getProfileQuality() : null),
+    PRODUCT_CATEGORIES("productCategories", Type.STRING_LIST, "digitalBehavior.productCategories",
+            p -> p.getDigitalBehavior() != null ? p.getDigitalBehavior().getProductCategories() : null),
+    BRAND_PREFERENCES("brandPreferences", Type.STRING_LIST, "digitalBehavior.brandPreferences",
+            p -> p.getDigitalBehavior() != null ? p.getDigitalBehavior().getBrandPreferences() : null),
+    /**
+     * 评分等级，由profileScore派生，不在库中存储，只能在JVM中评估
+     */
+    SCORE_LEVEL("scoreLevel", Type.STRING, null, UserProfile::getScoreLevel);
+
+    /**
+     * 字段取值类型
+     */
+    public enum Type {
+        /**
+         * 数值，按double比较
+         */
+        NUMBER,
+        /**
+         * 字符串
+         */
+        STRING,
+        /**
+         * 字符串列表，EQUALS/CONTAINS匹配任一元素，IN匹配任一元素在列表中
+         */
+        STRING_LIST
+    }
+
+    private final String name;
+    private final Type type;
+    private final String path;
+    private final Function<UserProfile, ?> accessor;
+
+    SegmentField(String name, Type type, String path, Function<UserProfile, ?> accessor) {
+        this.name = name;
+        this.type = type;
+        this.path = path;
+        this.accessor = accessor;
+    }
+
+    /**
+     * JVM中评估派生字段时需要读取的存储字段
+     */
+    public static List<String> storedPaths() {
+        List<String> paths = new ArrayList<>();
+        for (SegmentField field : values()) {
+            if (field.path != null) {
+                paths.add(field.path);
+            }
+        }
+        return paths;
+    }
+
+    /**
+     * 按条件中的字段名查找
+     *
+     * @throws BusinessException 字段不支持时
+     */
+    public static SegmentField of(String name) {
+        for (SegmentField field : values()) {
+            if (field.name.equals(name)) {
+                return field;
+            }
+        }
+        throw new BusinessException("不支持的分群字段: " + name);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * MongoDB中的字段路径，派生字段为null
+     */
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * 读取数值字段，字段为空时返回NaN
+     */
+    double number(UserProfile profile) {
+        Object value = accessor.apply(profile);
+        return value != null ? ((Number) value).doubleValue() : Double.NaN;
+    }
+
+    /**
+     * 读取字符串字段
+     */
+    String string(UserProfile profile) {
+        return (String) accessor.apply(profile);
+    }
+
+    /**
+     * 读取字符串列表字段，字段为空时返回空列表
+     */
+    @SuppressWarnings("unchecked")
+    List<String> strings(UserProfile profile) {
+        List<String> value = (List<String>) accessor.apply(profile);
+        return value != null ? value : Collections.emptyList();
+    }
+
+    /**
+     * 字段是否为空（列表字段为空列表也视为空）
+     */
+    boolean isNull(UserProfile profile) {
+        Object value = accessor.apply(profile);
+        return value == null || (type == Type.STRING_LIST && ((List<?>) value).isEmpty());
+    }
+}
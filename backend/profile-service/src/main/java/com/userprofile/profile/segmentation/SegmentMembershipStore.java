@@ -0,0 +1,229 @@
+package com.userprofile.profile.segmentation;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.mongodb.client.gridfs.model.GridFSFile;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.roaringbitmap.longlong.Roaring64NavigableMap;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.gridfs.GridFsTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.function.Predicate;
+
+/**
+ * 分群成员存储
+ *
+ * <p>成员以Roaring64位图序列化后存入GridFS（文件名segment:{分群ID}），不再受单个文档16MB的限制。
+ * 写入时先存新文件再删除旧文件，读取时取最新上传的文件，替换过程中读到的总是完整的位图。
+ * <p>读取过的位图保留在本地缓存中，保存时通过pub/sub通知各实例清除；
+ * 缓存中的位图被多个线程共享，调用方只能读取，需要修改时先{@link #copy}。
+ * <p>覆盖保存、增量修改和全量对账都持有分群级的Redisson锁，多个实例并发修改同一分群时不会互相覆盖
+ */
+@Slf4j
+@Component
+public class SegmentMembershipStore {
+
+    private static final String FILE_PREFIX = "segment:";
+    private static final String INVALIDATION_CHANNEL = "segments:invalidate";
+    private static final String LOCK_PREFIX = "segment:members:";
+
+    private final GridFsTemplate gridFsTemplate;
+    private final RedissonClient redissonClient;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final RedisMessageListenerContainer listenerContainer;
+    private final Cache<String, Roaring64NavigableMap> localCache;
+
+    public SegmentMembershipStore(GridFsTemplate gridFsTemplate,
+                                  RedissonClient redissonClient,
+                                  StringRedisTemplate stringRedisTemplate,
+                                  RedisMessageListenerContainer listenerContainer,
+                                  @Value("${profile.segment.local-max-segments:64}") long localMaxSegments,
+                                  @Value("${profile.segment.local-ttl-seconds:300}") long localTtlSeconds) {
+        this.gridFsTemplate = gridFsTemplate;
+        this.redissonClient = redissonClient;
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.listenerContainer = listenerContainer;
+        this.localCache = Caffeine.newBuilder()
+                .maximumSize(localMaxSegments)
+                .expireAfterWrite(Duration.ofSeconds(localTtlSeconds))
+                .build();
+    }
+
+    @PostConstruct
+    public void subscribe() {
+        listenerContainer.addMessageListener((message, pattern) ->
+                        localCache.invalidate(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(INVALIDATION_CHANNEL));
+    }
+
+    /**
+     * 保存分群成员，覆盖原有成员
+     */
+    public void save(String segmentId, Roaring64NavigableMap members) {
+        RLock lock = redissonClient.getLock(LOCK_PREFIX + segmentId);
+        lock.lock();
+        try {
+            write(segmentId, members);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 在最新的成员上做增量修改并保存
+     * 持锁期间直接从GridFS读取，不使用可能过期的本地缓存
+     *
+     * @param mutation 对成员位图的修改（位图归调用方独占），返回是否有变化，没有变化时不写入
+     * @return 修改后的成员数，没有变化时为empty
+     */
+    public OptionalLong update(String segmentId, Predicate<Roaring64NavigableMap> mutation) {
+        RLock lock = redissonClient.getLock(LOCK_PREFIX + segmentId);
+        lock.lock();
+        try {
+            Roaring64NavigableMap members = read(segmentId).orElseGet(Roaring64NavigableMap::new);
+            if (!mutation.test(members)) {
+                return OptionalLong.empty();
+            }
+            write(segmentId, members);
+            return OptionalLong.of(members.getLongCardinality());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 用全量计算结果对账
+     * 计算开始时读取的成员与当前成员不同的用户，说明计算期间已被增量维护修改过，以当前值为准；
+     * 其余用户以全量计算结果为准。持锁期间直接从GridFS读取当前成员
+     *
+     * @param baseline 全量计算开始前读取的成员
+     * @param computed 全量计算结果
+     */
+    public Reconciliation reconcile(String segmentId, Roaring64NavigableMap baseline, Roaring64NavigableMap computed) {
+        RLock lock = redissonClient.getLock(LOCK_PREFIX + segmentId);
+        lock.lock();
+        try {
+            Roaring64NavigableMap members = read(segmentId).orElseGet(Roaring64NavigableMap::new);
+            Reconciliation reconciliation = applyReconciliation(members, baseline, computed);
+            if (reconciliation.corrected() > 0) {
+                write(segmentId, members);
+            }
+            return reconciliation;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 在当前成员上应用对账结果
+     */
+    static Reconciliation applyReconciliation(Roaring64NavigableMap members, Roaring64NavigableMap baseline,
+                                               Roaring64NavigableMap computed) {
+        Roaring64NavigableMap changed = copy(members);
+        changed.xor(baseline);
+
+        Roaring64NavigableMap toAdd = copy(computed);
+        toAdd.andNot(members);
+        toAdd.andNot(changed);
+        Roaring64NavigableMap toRemove = copy(members);
+        toRemove.andNot(computed);
+        toRemove.andNot(changed);
+
+        members.or(toAdd);
+        members.andNot(toRemove);
+        return new Reconciliation(members.getLongCardinality(),
+                toAdd.getLongCardinality() + toRemove.getLongCardinality(), changed.getLongCardinality());
+    }
+
+    /**
+     * 对账结果
+     *
+     * @param cardinality 对账后的成员数
+     * @param corrected   按全量结果修正的人数（增量维护的偏差）
+     * @param retained    计算期间被增量修改、保留当前值的人数
+     */
+    public record Reconciliation(long cardinality, long corrected, long retained) {
+    }
+
+    private void write(String segmentId, Roaring64NavigableMap members) {
+        members.runOptimize();
+        String filename = FILE_PREFIX + segmentId;
+        Document metadata = new Document("segmentId", segmentId)
+                .append("cardinality", members.getLongCardinality());
+
+        ObjectId fileId = gridFsTemplate.store(new ByteArrayInputStream(serialize(members)), filename, metadata);
+        gridFsTemplate.delete(new Query(Criteria.where("filename").is(filename).and("_id").ne(fileId)));
+
+        localCache.invalidate(segmentId);
+        stringRedisTemplate.convertAndSend(INVALIDATION_CHANNEL, segmentId);
+        log.debug("分群{}成员已保存: {}个用户，{}字节", segmentId, members.getLongCardinality(),
+                members.serializedSizeInBytes());
+    }
+
+    /**
+     * 读取分群成员（只读），分群没有成员文件时返回empty
+     */
+    public Optional<Roaring64NavigableMap> load(String segmentId) {
+        Roaring64NavigableMap cached = localCache.getIfPresent(segmentId);
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+
+        Optional<Roaring64NavigableMap> members = read(segmentId);
+        members.ifPresent(loaded -> localCache.put(segmentId, loaded));
+        return members;
+    }
+
+    private Optional<Roaring64NavigableMap> read(String segmentId) {
+        GridFSFile file = gridFsTemplate.find(new Query(Criteria.where("filename").is(FILE_PREFIX + segmentId))
+                .with(Sort.by(Sort.Direction.DESC, "uploadDate"))).first();
+        if (file == null) {
+            return Optional.empty();
+        }
+
+        Roaring64NavigableMap members = new Roaring64NavigableMap();
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(gridFsTemplate.getResource(file).getInputStream()))) {
+            members.deserializePortable(in);
+        } catch (IOException e) {
+            throw new UncheckedIOException("读取分群成员失败: " + segmentId, e);
+        }
+        return Optional.of(members);
+    }
+
+    /**
+     * 复制位图，用于在读取到的共享位图基础上做集合运算
+     */
+    public static Roaring64NavigableMap copy(Roaring64NavigableMap members) {
+        Roaring64NavigableMap copy = new Roaring64NavigableMap();
+        copy.or(members);
+        return copy;
+    }
+
+    static byte[] serialize(Roaring64NavigableMap members) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream((int) members.serializedSizeInBytes());
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            members.serializePortable(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,160 @@
+package com.userprofile.profile.segmentation;
+
+import com.userprofile.common.exception.BusinessException;
+import com.userprofile.profile.analytics.UserBehaviorAnalytics;
+import com.userprofile.profile.entity.UserProfile;
+import com.userprofile.profile.scheduler.ProfileSweeper;
+import com.userprofile.profile.segmentation.UserSegment.SegmentCondition;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.roaringbitmap.longlong.Roaring64NavigableMap;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * 多分群单次遍历引擎
+ *
+ * <p>一次遍历全部画像，同时评估多个动态分群和自动分群，总开销为一次遍历，与分群数量无关：
+ * <ul>
+ *     <li>每页只读取一次画像，投影为各分群需要字段的并集</li>
+ *     <li>有自动分群需要行为数据时，每个用户只读取一次行为聚合，RFM和流失风险共用</li>
+ *     <li>各动态分群中相同的条件合并为一个共享条件，每个画像只评估一次</li>
+ * </ul>
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class SegmentationEngine {
+
+    private final ProfileSweeper profileSweeper;
+    private final MongoTemplate mongoTemplate;
+    private final UserBehaviorAnalytics behaviorAnalytics;
+
+    /**
+     * 一次遍历评估全部给定分群
+     *
+     * @param dynamicSegments   动态分群，条件无效的分群记录日志后跳过，不出现在结果中
+     * @param autoSegmentations 自动分群规则
+     */
+    public PassResult evaluate(List<UserSegment> dynamicSegments, Set<AutoSegmentation> autoSegmentations) {
+        SharedConditions shared = new SharedConditions();
+        Map<String, Predicate<ProfileEvaluation>> predicates = new LinkedHashMap<>();
+        for (UserSegment segment : dynamicSegments) {
+            try {
+                predicates.put(segment.getId(), shared.compile(segment.getConditions()));
+            } catch (BusinessException e) {
+                log.warn("分群{}条件无效，跳过: {}", segment.getName(), e.getMessage());
+            }
+        }
+
+        Map<String, Roaring64NavigableMap> dynamicMembers = new LinkedHashMap<>();
+        predicates.keySet().forEach(id -> dynamicMembers.put(id, new Roaring64NavigableMap()));
+        Map<AutoSegmentation, Map<String, Roaring64NavigableMap>> autoMembers = new EnumMap<>(AutoSegmentation.class);
+        for (AutoSegmentation auto : autoSegmentations) {
+            Map<String, Roaring64NavigableMap> groups = new LinkedHashMap<>();
+            auto.getGroups().forEach(group -> groups.put(group, new Roaring64NavigableMap()));
+            autoMembers.put(auto, groups);
+        }
+
+        List<Predicate<UserProfile>> conditions = shared.conditions();
+        ProfileSweeper.SweepResult sweep = profileSweeper.sweep("segment:evaluate",
+                profilePages(projection(!predicates.isEmpty(), autoSegmentations)),
+                UserProfile::getUserId,
+                profile -> {
+                    ProfileEvaluation evaluation = new ProfileEvaluation(profile, conditions,
+                            behaviorAnalytics::analyzeSegmentationInsights);
+                    long userId = profile.getUserId();
+                    predicates.forEach((id, predicate) -> {
+                        if (predicate.test(evaluation)) {
+                            addConcurrently(dynamicMembers.get(id), userId);
+                        }
+                    });
+                    autoMembers.forEach((auto, groups) ->
+                            addConcurrently(groups.get(auto.group(evaluation)), userId));
+                });
+
+        log.info("多分群单次遍历完成: 动态分群{}个（共享条件{}个），自动分群规则{}个，遍历{}个用户，失败{}个，耗时{}ms",
+                predicates.size(), conditions.size(), autoMembers.size(),
+                sweep.processed(), sweep.failed(), sweep.elapsedMs());
+        return new PassResult(dynamicMembers, autoMembers, sweep);
+    }
+
+    /**
+     * 本次遍历需要读取的画像字段
+     */
+    static Set<String> projection(boolean hasDynamicSegments, Set<AutoSegmentation> autoSegmentations) {
+        Set<String> fields = new LinkedHashSet<>();
+        fields.add("userId");
+        if (hasDynamicSegments) {
+            fields.addAll(SegmentField.storedPaths());
+        }
+        if (autoSegmentations.contains(AutoSegmentation.PROFILE_SCORE)) {
+            fields.add("profileScore");
+        }
+        return fields;
+    }
+
+    private ProfileSweeper.PageLoader<UserProfile> profilePages(Set<String> fields) {
+        return afterUserId -> {
+            Query query = new Query(Criteria.where("userId").gt(afterUserId))
+                    .with(Sort.by(Sort.Direction.ASC, "userId"))
+                    .limit(profileSweeper.getPageSize());
+            fields.forEach(query.fields()::include);
+            return mongoTemplate.find(query, UserProfile.class);
+        };
+    }
+
+    /**
+     * 遍历器并行处理各用户，位图本身不是线程安全的
+     */
+    private static void addConcurrently(Roaring64NavigableMap members, long userId) {
+        synchronized (members) {
+            members.addLong(userId);
+        }
+    }
+
+    /**
+     * 共享条件表
+     * 字段、操作符和值都相同的条件只编译一次，在每个画像的评估上下文中只计算一次
+     */
+    static final class SharedConditions {
+        private final List<Predicate<UserProfile>> conditions = new ArrayList<>();
+        private final Map<String, Integer> slots = new HashMap<>();
+
+        Predicate<ProfileEvaluation> compile(List<SegmentCondition> segmentConditions) {
+            return SegmentConditionCompiler.combine(segmentConditions, condition -> {
+                int slot = slots.computeIfAbsent(key(condition), key -> {
+                    conditions.add(SegmentConditionCompiler.compile(condition));
+                    return conditions.size() - 1;
+                });
+                return evaluation -> evaluation.condition(slot);
+            });
+        }
+
+        List<Predicate<UserProfile>> conditions() {
+            return conditions;
+        }
+
+        private static String key(SegmentCondition condition) {
+            return condition.getField() + '\u0000' + condition.getOperator() + '\u0000' + condition.getValue();
+        }
+    }
+
+    /**
+     * 单次遍历的结果
+     *
+     * @param dynamicMembers 动态分群ID到成员
+     * @param autoMembers    自动分群规则到各组成员
+     * @param sweep          遍历统计
+     */
+    public record PassResult(Map<String, Roaring64NavigableMap> dynamicMembers,
+                             Map<AutoSegmentation, Map<String, Roaring64NavigableMap>> autoMembers,
+                             ProfileSweeper.SweepResult sweep) {
+    }
+}
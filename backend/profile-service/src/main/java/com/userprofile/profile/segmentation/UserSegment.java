@@ -45,6 +45,8 @@ public class UserSegment {
 
     /**
      * 用户ID列表
+     * 仅用于创建静态分群时传入成员和兼容旧数据；成员保存在{@link SegmentMembershipStore}中，
+     * 保存分群时该字段会被清空，按需通过成员接口查询
      */
     private List<Long> userIds;
 
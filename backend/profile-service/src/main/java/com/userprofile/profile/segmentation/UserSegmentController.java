@@ -41,6 +41,34 @@ public class UserSegmentController {
         return Result.success(segment);
     }
 
+    @Operation(summary = "判断用户是否属于分群")
+    @GetMapping("/{id}/members/{userId}")
+    public Result<Boolean> isMember(@PathVariable String id, @PathVariable Long userId) {
+        return Result.success(segmentationService.isMember(id, userId));
+    }
+
+    @Operation(summary = "分页获取分群成员", description = "按userId升序，传入上一页最后一个userId获取下一页")
+    @GetMapping("/{id}/members")
+    public Result<List<Long>> getMembers(@PathVariable String id,
+                                         @RequestParam(required = false) Long afterUserId,
+                                         @RequestParam(defaultValue = "1000") int limit) {
+        List<Long> userIds = segmentationService.getMemberPage(id, afterUserId, limit);
+        return Result.success(userIds);
+    }
+
+    @Operation(summary = "统计分群集合运算结果人数")
+    @PostMapping("/combine/count")
+    public Result<Long> countCombination(@RequestBody SegmentCombineRequest request) {
+        return Result.success(segmentationService.countCombination(request));
+    }
+
+    @Operation(summary = "分群集合运算并保存为新分群", description = "并集/交集/差集，如高价值RFM且高流失风险")
+    @PostMapping("/combine")
+    public Result<UserSegment> combineSegments(@RequestBody SegmentCombineRequest request) {
+        UserSegment created = segmentationService.createCombinedSegment(request);
+        return Result.success("组合分群创建成功", created);
+    }
+
     @Operation(summary = "执行自定义筛选")
     @PostMapping("/filter")
     public Result<List<Long>> filterUsers(@RequestBody List<UserSegment.SegmentCondition> conditions) {
@@ -69,6 +97,13 @@ public class UserSegmentController {
         return Result.success("流失风险分群完成", segments);
     }
 
+    @Operation(summary = "一次遍历执行全部分群", description = "RFM、评分、流失风险自动分群与全部动态分群在同一次遍历中计算")
+    @PostMapping("/auto/all")
+    public Result<Map<String, UserSegment>> autoSegmentAll() {
+        Map<String, UserSegment> segments = segmentationService.segmentAll();
+        return Result.success("全部分群完成", segments);
+    }
+
     @Operation(summary = "刷新动态分群")
     @PutMapping("/refresh")
     public Result<Void> refreshSegments() {
@@ -1,15 +1,22 @@
 package com.userprofile.profile.segmentation;
 
-import com.userprofile.profile.analytics.UserBehaviorAnalytics;
+import com.userprofile.common.exception.BusinessException;
 import com.userprofile.profile.entity.UserProfile;
-import com.userprofile.profile.repository.UserProfileRepository;
+import com.userprofile.profile.scheduler.ProfileSweeper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.roaringbitmap.longlong.Roaring64NavigableMap;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
 
 /**
  * 用户分群服务
@@ -20,9 +27,14 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class UserSegmentationService {
 
-    private final UserProfileRepository profileRepository;
-    private final UserBehaviorAnalytics behaviorAnalytics;
     private final UserSegmentRepository segmentRepository;
+    private final SegmentationEngine segmentationEngine;
+    private final MongoTemplate mongoTemplate;
+    private final SegmentMembershipStore membershipStore;
+    private final DynamicSegmentMaintainer segmentMaintainer;
+
+    @Value("${profile.segment.member-page-max-size:10000}")
+    private int memberPageMaxSize = 10000;
 
     /**
      * 创建用户分群
@@ -32,259 +44,211 @@ public class UserSegmentationService {
         segment.setUpdateTime(LocalDateTime.now());
         segment.setActive(true);
 
-        // 如果是动态分群，立即执行筛选
-        if (segment.getType() == UserSegment.SegmentType.DYNAMIC) {
-            List<Long> userIds = executeSegmentation(segment.getConditions());
-            segment.setUserIds(userIds);
-            segment.setUserCount(userIds.size());
-        }
+        // 如果是动态分群，立即执行筛选；其他分群使用请求中给定的用户
+        Roaring64NavigableMap members = segment.getType() == UserSegment.SegmentType.DYNAMIC
+                ? matchSegmentation(segment.getConditions())
+                : toBitmap(segment.getUserIds());
 
-        log.info("创建用户分群: {}, 用户数: {}", segment.getName(), segment.getUserCount());
-        return segmentRepository.save(segment);
+        UserSegment saved = saveWithMembers(segment, members);
+        if (saved.getType() == UserSegment.SegmentType.DYNAMIC) {
+            // 之后的画像变更立即开始增量维护
+            segmentMaintainer.reloadDefinitions();
+        }
+        log.info("创建用户分群: {}, 用户数: {}", saved.getName(), saved.getUserCount());
+        return saved;
     }
 
     /**
      * 执行分群筛选
-     * 根据条件筛选符合的用户
+     * 条件下推为MongoDB查询，只读取匹配的文档；条件包含派生字段无法完全下推时，
+     * 查询得到的超集再用编译后的谓词在JVM中过滤
      */
     public List<Long> executeSegmentation(List<UserSegment.SegmentCondition> conditions) {
-        List<UserProfile> allProfiles = profileRepository.findAll();
-
-        return allProfiles.stream()
-                .filter(profile -> matchesConditions(profile, conditions))
-                .map(UserProfile::getUserId)
-                .collect(Collectors.toList());
+        return toList(matchSegmentation(conditions));
     }
 
     /**
-     * 判断用户画像是否匹配条件
+     * 执行分群筛选，结果为成员位图
      */
-    private boolean matchesConditions(UserProfile profile, List<UserSegment.SegmentCondition> conditions) {
-        if (conditions == null || conditions.isEmpty()) {
-            return true;
+    Roaring64NavigableMap matchSegmentation(List<UserSegment.SegmentCondition> conditions) {
+        // 先编译，字段和常量不合法时在查询前失败
+        Predicate<UserProfile> predicate = SegmentConditionCompiler.compile(conditions);
+        SegmentCriteriaTranslator.Translation translation = SegmentCriteriaTranslator.translate(conditions);
+
+        Query query = translation.criteria() != null ? new Query(translation.criteria()) : new Query();
+        if (translation.exact()) {
+            query.fields().include("userId");
+        } else {
+            SegmentField.storedPaths().forEach(query.fields()::include);
         }
 
-        boolean result = true;
-        String currentLogic = "AND";
-
-        for (UserSegment.SegmentCondition condition : conditions) {
-            boolean conditionMet = evaluateCondition(profile, condition);
-
-            if ("OR".equals(currentLogic)) {
-                result = result || conditionMet;
-            } else {  // AND
-                result = result && conditionMet;
-            }
-
-            currentLogic = condition.getLogic() != null ? condition.getLogic() : "AND";
+        Roaring64NavigableMap members = new Roaring64NavigableMap();
+        try (Stream<UserProfile> profiles = mongoTemplate.stream(query, UserProfile.class)) {
+            profiles.filter(translation.exact() ? profile -> true : predicate)
+                    .forEach(profile -> members.addLong(profile.getUserId()));
         }
-
-        return result;
+        return members;
     }
 
     /**
-     * 评估单个条件
+     * 基于RFM模型自动分群
      */
-    private boolean evaluateCondition(UserProfile profile, UserSegment.SegmentCondition condition) {
-        Object fieldValue = getFieldValue(profile, condition.getField());
-
-        if (fieldValue == null) {
-            return condition.getOperator() == UserSegment.SegmentCondition.Operator.IS_NULL;
-        }
-
-        return switch (condition.getOperator()) {
-            case EQUALS -> fieldValue.equals(condition.getValue());
-            case NOT_EQUALS -> !fieldValue.equals(condition.getValue());
-            case GREATER_THAN -> compareNumeric(fieldValue, condition.getValue()) > 0;
-            case LESS_THAN -> compareNumeric(fieldValue, condition.getValue()) < 0;
-            case GREATER_OR_EQUAL -> compareNumeric(fieldValue, condition.getValue()) >= 0;
-            case LESS_OR_EQUAL -> compareNumeric(fieldValue, condition.getValue()) <= 0;
-            case CONTAINS -> fieldValue.toString().contains(condition.getValue().toString());
-            case NOT_CONTAINS -> !fieldValue.toString().contains(condition.getValue().toString());
-            case IS_NOT_NULL -> true;
-            default -> false;
-        };
+    public Map<String, UserSegment> segmentByRFM() {
+        log.info("开始执行RFM自动分群...");
+        Map<String, UserSegment> segments = createAutoSegments(EnumSet.of(AutoSegmentation.RFM))
+                .get(AutoSegmentation.RFM);
+        log.info("RFM分群完成，共创建{}个分群", segments.size());
+        return segments;
     }
 
     /**
-     * 获取字段值
+     * 基于画像评分自动分群
      */
-    private Object getFieldValue(UserProfile profile, String field) {
-        return switch (field) {
-            case "profileScore" -> profile.getProfileScore();
-            case "userId" -> profile.getUserId();
-            case "username" -> profile.getUsername();
-            // 可以根据需要添加更多字段
-            default -> null;
-        };
+    public Map<String, UserSegment> segmentByProfileScore() {
+        log.info("开始执行画像评分自动分群...");
+        Map<String, UserSegment> segments = createAutoSegments(EnumSet.of(AutoSegmentation.PROFILE_SCORE))
+                .get(AutoSegmentation.PROFILE_SCORE);
+        log.info("评分分群完成，共创建{}个分群", segments.size());
+        return segments;
     }
 
     /**
-     * 数值比较
+     * 基于流失风险自动分群
      */
-    private int compareNumeric(Object value1, Object value2) {
-        double d1 = ((Number) value1).doubleValue();
-        double d2 = ((Number) value2).doubleValue();
-        return Double.compare(d1, d2);
+    public Map<String, UserSegment> segmentByChurnRisk() {
+        log.info("开始执行流失风险自动分群...");
+        Map<String, UserSegment> segments = createAutoSegments(EnumSet.of(AutoSegmentation.CHURN_RISK))
+                .get(AutoSegmentation.CHURN_RISK);
+        log.info("流失风险分群完成，共创建{}个分群", segments.size());
+        return segments;
     }
 
     /**
-     * 基于RFM模型自动分群
+     * 一次遍历执行全部自动分群并刷新全部动态分群
+     *
+     * @return 新建的自动分群，key为分群名称
      */
-    public Map<String, UserSegment> segmentByRFM() {
-        log.info("开始执行RFM自动分群...");
+    public Map<String, UserSegment> segmentAll() {
+        log.info("开始一次遍历执行全部分群...");
 
-        Map<String, List<Long>> rfmGroups = new HashMap<>();
-        rfmGroups.put("重要价值客户", new ArrayList<>());
-        rfmGroups.put("重要发展客户", new ArrayList<>());
-        rfmGroups.put("重要保持客户", new ArrayList<>());
-        rfmGroups.put("一般客户", new ArrayList<>());
-        rfmGroups.put("低价值客户", new ArrayList<>());
+        List<UserSegment> dynamicSegments = activeDynamicSegments();
+        Map<String, Roaring64NavigableMap> baselines = loadBaselines(dynamicSegments);
+        SegmentationEngine.PassResult result = segmentationEngine.evaluate(
+                dynamicSegments, EnumSet.allOf(AutoSegmentation.class));
+        reconcileDynamicSegments(dynamicSegments, baselines, result);
 
-        List<UserProfile> allProfiles = profileRepository.findAll();
+        Map<String, UserSegment> created = new LinkedHashMap<>();
+        saveAutoSegments(result).values().forEach(groups ->
+                groups.values().forEach(segment -> created.put(segment.getName(), segment)));
 
-        for (UserProfile profile : allProfiles) {
-            try {
-                Map<String, Object> rfm = behaviorAnalytics.calculateRFM(profile.getUserId());
-                String level = (String) rfm.get("level");
-                rfmGroups.get(level).add(profile.getUserId());
-            } catch (Exception e) {
-                log.error("计算用户{}的RFM失败", profile.getUserId(), e);
-            }
-        }
-
-        // 创建分群
-        Map<String, UserSegment> segments = new HashMap<>();
-        for (Map.Entry<String, List<Long>> entry : rfmGroups.entrySet()) {
-            UserSegment segment = new UserSegment();
-            segment.setName("RFM-" + entry.getKey());
-            segment.setDescription("基于RFM模型自动分群: " + entry.getKey());
-            segment.setType(UserSegment.SegmentType.RFM);
-            segment.setUserIds(entry.getValue());
-            segment.setUserCount(entry.getValue().size());
-            segment.setCreateTime(LocalDateTime.now());
-            segment.setUpdateTime(LocalDateTime.now());
-            segment.setActive(true);
-
-            segments.put(entry.getKey(), segmentRepository.save(segment));
-        }
-
-        log.info("RFM分群完成，共创建{}个分群", segments.size());
-        return segments;
+        log.info("全部分群完成: 刷新动态分群{}个，新建自动分群{}个", dynamicSegments.size(), created.size());
+        return created;
     }
 
     /**
-     * 基于画像评分自动分群
+     * 全量重算动态分群
+     * 全部动态分群在一次遍历中评估；成员平时由{@link DynamicSegmentMaintainer}随画像变更增量维护，
+     * 这里作为对账，记录增量维护与全量结果的差异人数
      */
-    public Map<String, UserSegment> segmentByProfileScore() {
-        log.info("开始执行画像评分自动分群...");
+    public void refreshDynamicSegments() {
+        log.info("开始刷新动态分群...");
 
-        Map<String, List<Long>> scoreGroups = new HashMap<>();
-        scoreGroups.put("高价值用户(80+)", new ArrayList<>());
-        scoreGroups.put("活跃用户(60-79)", new ArrayList<>());
-        scoreGroups.put("潜力用户(40-59)", new ArrayList<>());
-        scoreGroups.put("普通用户(20-39)", new ArrayList<>());
-        scoreGroups.put("低活跃用户(<20)", new ArrayList<>());
-
-        List<UserProfile> allProfiles = profileRepository.findAll();
-
-        for (UserProfile profile : allProfiles) {
-            double score = profile.getProfileScore() != null ? profile.getProfileScore() : 0;
-            String group = score >= 80 ? "高价值用户(80+)" :
-                          score >= 60 ? "活跃用户(60-79)" :
-                          score >= 40 ? "潜力用户(40-59)" :
-                          score >= 20 ? "普通用户(20-39)" : "低活跃用户(<20)";
-            scoreGroups.get(group).add(profile.getUserId());
+        List<UserSegment> dynamicSegments = activeDynamicSegments();
+        if (!dynamicSegments.isEmpty()) {
+            Map<String, Roaring64NavigableMap> baselines = loadBaselines(dynamicSegments);
+            SegmentationEngine.PassResult result = segmentationEngine.evaluate(dynamicSegments, Set.of());
+            reconcileDynamicSegments(dynamicSegments, baselines, result);
         }
 
-        // 创��分群
-        Map<String, UserSegment> segments = new HashMap<>();
-        for (Map.Entry<String, List<Long>> entry : scoreGroups.entrySet()) {
-            UserSegment segment = new UserSegment();
-            segment.setName("评分-" + entry.getKey());
-            segment.setDescription("基于画像评分自动分群: " + entry.getKey());
-            segment.setType(UserSegment.SegmentType.DYNAMIC);
-            segment.setUserIds(entry.getValue());
-            segment.setUserCount(entry.getValue().size());
-            segment.setCreateTime(LocalDateTime.now());
-            segment.setUpdateTime(LocalDateTime.now());
-            segment.setActive(true);
-
-            segments.put(entry.getKey(), segmentRepository.save(segment));
-        }
+        log.info("动态分群刷新完成");
+    }
 
-        log.info("评分分群完成，共创建{}个分群", segments.size());
-        return segments;
+    private List<UserSegment> activeDynamicSegments() {
+        return segmentRepository.findByTypeAndActive(UserSegment.SegmentType.DYNAMIC, true);
     }
 
     /**
-     * 基于流失风险自动分群
+     * 遍历开始前的成员，对账时用于识别遍历期间被增量维护修改过的用户
      */
-    public Map<String, UserSegment> segmentByChurnRisk() {
-        log.info("开始执行流失风险自动分群...");
+    private Map<String, Roaring64NavigableMap> loadBaselines(List<UserSegment> dynamicSegments) {
+        Map<String, Roaring64NavigableMap> baselines = new HashMap<>();
+        for (UserSegment segment : dynamicSegments) {
+            baselines.put(segment.getId(),
+                    membershipStore.load(segment.getId()).orElseGet(Roaring64NavigableMap::new));
+        }
+        return baselines;
+    }
 
-        Map<String, List<Long>> riskGroups = new HashMap<>();
-        riskGroups.put("高流失风险", new ArrayList<>());
-        riskGroups.put("中流失风险", new ArrayList<>());
-        riskGroups.put("低流失风险", new ArrayList<>());
+    /**
+     * 用一次遍历得到的动态分群成员对账
+     * 遍历期间被增量维护修改过的用户保留当前值，不被遍历开始时读到的旧画像回退；
+     * 遍历未完成或有用户评估失败时不更新，条件无效而未评估的分群保持不变
+     */
+    private void reconcileDynamicSegments(List<UserSegment> dynamicSegments,
+                                          Map<String, Roaring64NavigableMap> baselines,
+                                          SegmentationEngine.PassResult result) {
+        ProfileSweeper.SweepResult sweep = result.sweep();
+        if (!sweep.completed() || sweep.failed() > 0) {
+            log.error("动态分群遍历未完成或有用户评估失败，本次不更新: processed={}, failed={}, completed={}",
+                    sweep.processed(), sweep.failed(), sweep.completed());
+            return;
+        }
 
-        List<UserProfile> allProfiles = profileRepository.findAll();
+        for (UserSegment segment : dynamicSegments) {
+            Roaring64NavigableMap members = result.dynamicMembers().get(segment.getId());
+            if (members == null) {
+                log.error("分群{}条件无效，未更新", segment.getName());
+                continue;
+            }
 
-        for (UserProfile profile : allProfiles) {
             try {
-                Map<String, Object> risk = behaviorAnalytics.predictChurnRisk(profile.getUserId());
-                String riskLevel = (String) risk.get("risk");
-                riskGroups.get(riskLevel + "流失风险").add(profile.getUserId());
+                SegmentMembershipStore.Reconciliation reconciliation =
+                        membershipStore.reconcile(segment.getId(), baselines.get(segment.getId()), members);
+                mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(segment.getId())),
+                        new Update().set("userCount", (int) reconciliation.cardinality())
+                                .set("updateTime", LocalDateTime.now())
+                                .unset("userIds"),
+                        UserSegment.class);
+
+                log.info("分群{}已对账，当前用户数: {}，修正增量维护偏差{}人，遍历期间变更保留{}人",
+                        segment.getName(), reconciliation.cardinality(), reconciliation.corrected(),
+                        reconciliation.retained());
             } catch (Exception e) {
-                log.error("分析用户{}的流失风险失败", profile.getUserId(), e);
+                log.error("更新分群{}失败", segment.getName(), e);
             }
         }
-
-        // 创建分群
-        Map<String, UserSegment> segments = new HashMap<>();
-        for (Map.Entry<String, List<Long>> entry : riskGroups.entrySet()) {
-            UserSegment segment = new UserSegment();
-            segment.setName("流失风险-" + entry.getKey());
-            segment.setDescription("基于流失风险预测自动分群: " + entry.getKey());
-            segment.setType(UserSegment.SegmentType.BEHAVIOR);
-            segment.setUserIds(entry.getValue());
-            segment.setUserCount(entry.getValue().size());
-            segment.setCreateTime(LocalDateTime.now());
-            segment.setUpdateTime(LocalDateTime.now());
-            segment.setActive(true);
-
-            segments.put(entry.getKey(), segmentRepository.save(segment));
-        }
-
-        log.info("流失风险分群完成，共创建{}个分群", segments.size());
-        return segments;
     }
 
     /**
-     * 更新动态分群
+     * 一次遍历执行给定的自动分群规则并保存
      */
-    public void refreshDynamicSegments() {
-        log.info("开始刷新动态分群...");
-
-        List<UserSegment> dynamicSegments = segmentRepository.findByTypeAndActive(
-                UserSegment.SegmentType.DYNAMIC, true
-        );
+    private Map<AutoSegmentation, Map<String, UserSegment>> createAutoSegments(Set<AutoSegmentation> autoSegmentations) {
+        return saveAutoSegments(segmentationEngine.evaluate(List.of(), autoSegmentations));
+    }
 
-        for (UserSegment segment : dynamicSegments) {
-            try {
-                List<Long> newUserIds = executeSegmentation(segment.getConditions());
-                segment.setUserIds(newUserIds);
-                segment.setUserCount(newUserIds.size());
+    /**
+     * 每条自动分群规则的每个组保存为一个新分群
+     *
+     * @return 规则到（组名到分群）
+     */
+    private Map<AutoSegmentation, Map<String, UserSegment>> saveAutoSegments(SegmentationEngine.PassResult result) {
+        Map<AutoSegmentation, Map<String, UserSegment>> saved = new EnumMap<>(AutoSegmentation.class);
+        result.autoMembers().forEach((auto, groups) -> {
+            Map<String, UserSegment> segments = new HashMap<>();
+            for (Map.Entry<String, Roaring64NavigableMap> entry : groups.entrySet()) {
+                UserSegment segment = new UserSegment();
+                segment.setName(auto.getNamePrefix() + entry.getKey());
+                segment.setDescription(auto.getDescriptionPrefix() + entry.getKey());
+                segment.setType(auto.getSegmentType());
+                segment.setCreateTime(LocalDateTime.now());
                 segment.setUpdateTime(LocalDateTime.now());
-                segmentRepository.save(segment);
+                segment.setActive(true);
 
-                log.info("分群{}已更新，当前用户数: {}", segment.getName(), newUserIds.size());
-            } catch (Exception e) {
-                log.error("更新分群{}失败", segment.getName(), e);
+                segments.put(entry.getKey(), saveWithMembers(segment, entry.getValue()));
             }
-        }
-
-        log.info("动态分群刷新完成");
+            saved.put(auto, segments);
+        });
+        return saved;
     }
 
     /**
@@ -301,4 +265,130 @@ public class UserSegmentationService {
         return segmentRepository.findById(id)
                 .orElseThrow(() -> new RuntimeException("分群不存在"));
     }
+
+    /**
+     * 判断用户是否属于分群
+     */
+    public boolean isMember(String segmentId, Long userId) {
+        return getMembers(segmentId).contains(userId);
+    }
+
+    /**
+     * 按userId升序分页读取分群成员
+     *
+     * @param afterUserId 上一页最后一个userId，为null时从头读取
+     * @param limit       每页数量
+     */
+    public List<Long> getMemberPage(String segmentId, Long afterUserId, int limit) {
+        if (limit <= 0 || limit > memberPageMaxSize) {
+            throw new BusinessException("每页数量需在1到" + memberPageMaxSize + "之间");
+        }
+
+        Roaring64NavigableMap members = getMembers(segmentId);
+        long start = afterUserId != null ? members.rankLong(afterUserId) : 0;
+        long end = Math.min(start + limit, members.getLongCardinality());
+        List<Long> page = new ArrayList<>((int) Math.max(end - start, 0));
+        for (long rank = start; rank < end; rank++) {
+            page.add(members.select(rank));
+        }
+        return page;
+    }
+
+    /**
+     * 对多个分群的成员做集合运算，只在位图上计算，不展开为用户列表
+     */
+    public long countCombination(SegmentCombineRequest request) {
+        return combine(request).getLongCardinality();
+    }
+
+    /**
+     * 对多个分群的成员做集合运算并保存为新的自定义分群
+     */
+    public UserSegment createCombinedSegment(SegmentCombineRequest request) {
+        Roaring64NavigableMap members = combine(request);
+
+        UserSegment segment = new UserSegment();
+        segment.setName(request.getName() != null ? request.getName()
+                : request.getOperation().getDescription() + "-" + String.join(",", request.getSegmentIds()));
+        segment.setDescription(request.getDescription());
+        segment.setType(UserSegment.SegmentType.CUSTOM);
+        segment.setCreateTime(LocalDateTime.now());
+        segment.setUpdateTime(LocalDateTime.now());
+        segment.setActive(true);
+
+        UserSegment saved = saveWithMembers(segment, members);
+        log.info("创建组合分群: {}, 用户数: {}", saved.getName(), saved.getUserCount());
+        return saved;
+    }
+
+    private Roaring64NavigableMap combine(SegmentCombineRequest request) {
+        List<String> segmentIds = request.getSegmentIds();
+        if (request.getOperation() == null || segmentIds == null || segmentIds.size() < 2) {
+            throw new BusinessException("集合运算需要指定运算类型和至少两个分群");
+        }
+
+        Roaring64NavigableMap result = SegmentMembershipStore.copy(getMembers(segmentIds.get(0)));
+        for (int i = 1; i < segmentIds.size(); i++) {
+            Roaring64NavigableMap other = getMembers(segmentIds.get(i));
+            switch (request.getOperation()) {
+                case UNION -> result.or(other);
+                case INTERSECTION -> result.and(other);
+                case DIFFERENCE -> result.andNot(other);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 读取分群成员（只读）
+     * 旧数据的成员内联在分群文档中，首次读取时迁移到成员存储
+     */
+    Roaring64NavigableMap getMembers(String segmentId) {
+        Optional<Roaring64NavigableMap> stored = membershipStore.load(segmentId);
+        if (stored.isPresent()) {
+            return stored.get();
+        }
+
+        UserSegment segment = getSegmentById(segmentId);
+        Roaring64NavigableMap members = toBitmap(segment.getUserIds());
+        if (segment.getUserIds() != null) {
+            saveWithMembers(segment, members);
+            log.info("分群{}成员已迁移到位图存储: {}个用户", segment.getName(), segment.getUserCount());
+        }
+        return members;
+    }
+
+    /**
+     * 保存分群文档和成员，文档中只保留用户数
+     * 新分群先保存文档以获得ID；已有分群先写成员，成功后再清除文档中的内联成员，
+     * 成员写入失败时旧数据仍保留在文档中
+     */
+    private UserSegment saveWithMembers(UserSegment segment, Roaring64NavigableMap members) {
+        if (segment.getId() == null) {
+            segment.setUserIds(null);
+            segment.setUserCount((int) members.getLongCardinality());
+            UserSegment saved = segmentRepository.save(segment);
+            membershipStore.save(saved.getId(), members);
+            return saved;
+        }
+
+        membershipStore.save(segment.getId(), members);
+        segment.setUserIds(null);
+        segment.setUserCount((int) members.getLongCardinality());
+        return segmentRepository.save(segment);
+    }
+
+    private static Roaring64NavigableMap toBitmap(Collection<Long> userIds) {
+        Roaring64NavigableMap members = new Roaring64NavigableMap();
+        if (userIds != null) {
+            userIds.forEach(members::addLong);
+        }
+        return members;
+    }
+
+    private static List<Long> toList(Roaring64NavigableMap members) {
+        List<Long> userIds = new ArrayList<>((int) members.getLongCardinality());
+        members.forEach(userIds::add);
+        return userIds;
+    }
 }
@@ -1,25 +1,39 @@
 package com.userprofile.profile.service;
 
+import com.userprofile.common.exception.BusinessException;
+import com.userprofile.profile.config.TwoLevelCache;
 import com.userprofile.profile.dto.InitialProfileRequest;
 import com.userprofile.profile.dto.UserProfileDTO;
 import com.userprofile.profile.engine.ProfileCalculationEngine;
 import com.userprofile.profile.entity.UserProfile;
+import com.userprofile.profile.event.ProfileChangedEvent;
 import com.userprofile.profile.repository.UserProfileRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.CachePut;
 import org.springframework.cache.annotation.Cacheable;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
-import java.util.List;
-import java.util.Map;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 /**
  * 用户画像服务
@@ -31,6 +45,22 @@ public class UserProfileService {
 
     private final UserProfileRepository profileRepository;
     private final ProfileCalculationEngine calculationEngine;
+    private final ApplicationEventPublisher eventPublisher;
+    private final CacheManager cacheManager;
+    private final MongoTemplate mongoTemplate;
+
+    /**
+     * 批量查询画像可返回的字段
+     */
+    private static final Set<String> PROJECTABLE_FIELDS = Set.of(
+            "digitalBehavior", "coreNeeds", "valueAssessment", "stickinessAndLoyalty",
+            "profileScore", "createTime", "updateTime");
+
+    /**
+     * 单次批量查询的最大用户数
+     */
+    @Value("${profile.batch.max-size:500}")
+    private int batchMaxSize;
 
     /**
      * 创建或更新用户画像
@@ -98,6 +128,7 @@ public class UserProfileService {
         // 计算画像评分
         double score = calculationEngine.calculateProfileScore(profile);
         profile.setProfileScore(score);
+        profile.setScoreFingerprint(calculationEngine.scoreFingerprint(profile));
 
         // 时间戳
         if (profile.getCreateTime() == null) {
@@ -106,7 +137,7 @@ public class UserProfileService {
         profile.setUpdateTime(LocalDateTime.now());
 
         log.info("保存用户画像: userId={}, score={}", dto.getUserId(), score);
-        return profileRepository.save(profile);
+        return publishChanged(profileRepository.save(profile));
     }
 
     /**
@@ -156,7 +187,7 @@ public class UserProfileService {
         stickiness.setLoyaltyScore(0.0);
         profile.setStickinessAndLoyalty(stickiness);
 
-        UserProfile saved = profileRepository.save(profile);
+        UserProfile saved = publishChanged(profileRepository.save(profile));
         log.info("用户画像初始化成功: userId={}", request.getUserId());
         return saved;
     }
@@ -180,6 +211,62 @@ public class UserProfileService {
         return profileRepository.findByUserId(userId).orElse(null);
     }
 
+    /**
+     * 批量获取用户画像
+     * 缓存命中部分一次MGET读取，未命中部分一次$in查询并通过pipeline回填缓存
+     *
+     * @param userIds 用户ID列表
+     * @param fields  需要返回的字段，为空时返回完整画像
+     * @return 存在的画像，按请求顺序排列
+     */
+    public List<UserProfile> getProfiles(Collection<Long> userIds, Collection<String> fields) {
+        List<Long> ids = distinctBatch(userIds);
+        Set<String> projection = fields != null ? new HashSet<>(fields) : Collections.emptySet();
+        if (!PROJECTABLE_FIELDS.containsAll(projection)) {
+            projection.removeAll(PROJECTABLE_FIELDS);
+            throw new BusinessException("不支持的画像字段: " + projection);
+        }
+        if (ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        // 1. 缓存批量读取
+        Cache cache = cacheManager.getCache("userProfiles");
+        Map<Long, UserProfile> profiles = new HashMap<>();
+        if (cache instanceof TwoLevelCache twoLevelCache) {
+            twoLevelCache.getAll(ids).forEach((key, value) -> profiles.put((Long) key, (UserProfile) value));
+        } else if (cache != null) {
+            for (Long id : ids) {
+                UserProfile cached = cache.get(id, UserProfile.class);
+                if (cached != null) {
+                    profiles.put(id, cached);
+                }
+            }
+        }
+
+        // 2. 未命中部分一次$in查询并回填缓存
+        List<Long> misses = ids.stream().filter(id -> !profiles.containsKey(id)).toList();
+        if (!misses.isEmpty()) {
+            Map<Long, UserProfile> loaded = profileRepository.findByUserIdIn(misses).stream()
+                    .collect(Collectors.toMap(UserProfile::getUserId, Function.identity(), (a, b) -> a));
+            profiles.putAll(loaded);
+            if (cache instanceof TwoLevelCache twoLevelCache) {
+                // 未命中的key可能是其他实例L1中仍持有的过期条目，回填时广播失效
+                twoLevelCache.putAll(loaded, true);
+            } else if (cache != null) {
+                loaded.forEach(cache::put);
+            }
+        }
+
+        log.debug("批量查询用户画像: 请求={}, 缓存命中={}, 回源={}", ids.size(), ids.size() - misses.size(), misses.size());
+
+        return ids.stream()
+                .map(profiles::get)
+                .filter(Objects::nonNull)
+                .map(profile -> projection.isEmpty() ? profile : project(profile, projection))
+                .toList();
+    }
+
     /**
      * 获取所有画像 (已废弃,请使用分页查询)
      * @deprecated 为避免数据量过大,请添加分页查询方法
@@ -211,6 +298,7 @@ public class UserProfileService {
     @CacheEvict(value = "userProfiles", key = "#userId")
     public void deleteProfile(Long userId) {
         profileRepository.deleteByUserId(userId);
+        eventPublisher.publishEvent(ProfileChangedEvent.deleted(userId));
         log.info("删除用户画像: userId={}", userId);
     }
 
@@ -247,7 +335,145 @@ public class UserProfileService {
         UserProfile profile = getProfileByUserId(userId);
         double score = calculationEngine.calculateProfileScore(profile);
         profile.setProfileScore(score);
+        profile.setScoreFingerprint(calculationEngine.scoreFingerprint(profile));
         profile.setUpdateTime(LocalDateTime.now());
-        return profileRepository.save(profile);
+        return publishChanged(profileRepository.save(profile));
+    }
+
+    /**
+     * 批量重新计算画像评分（接口调用，受单次批量上限约束）
+     */
+    public BatchRecalculationResult recalculateScoresBatch(Collection<Long> userIds) {
+        return recalculateScores(distinctBatch(userIds));
+    }
+
+    /**
+     * 批量重新计算画像评分
+     * 一次$in读取，只对评分输入或评分版本变化的画像计算；变化部分通过一次无序bulkWrite只$set评分相关字段，
+     * 再通过一次Redis pipeline失效缓存并广播L1失效。
+     * <p>写入以读取时的updateTime为条件：读取之后画像被并发更新时条件不匹配，不用旧输入算出的评分覆盖新画像，
+     * 这些画像计为冲突，由并发的更新自己负责缓存和变更事件。写入后重新读取，只有确实由本批写入的画像才失效缓存、发布变更
+     *
+     * @param userIds 用户ID，不存在的用户忽略
+     * @return 本批统计
+     */
+    public BatchRecalculationResult recalculateScores(Collection<Long> userIds) {
+        if (userIds.isEmpty()) {
+            return new BatchRecalculationResult(0, 0, 0, 0);
+        }
+
+        List<UserProfile> profiles = profileRepository.findByUserIdIn(userIds);
+        // Mongo只保存到毫秒，截断后才能与写入后重新读取的值比较
+        LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS);
+        BulkOperations bulkOps = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, UserProfile.class);
+        Map<Long, String> written = new LinkedHashMap<>();
+
+        for (UserProfile profile : profiles) {
+            String fingerprint = calculationEngine.scoreFingerprint(profile);
+            if (fingerprint.equals(profile.getScoreFingerprint()) && profile.getProfileScore() != null) {
+                continue;
+            }
+
+            bulkOps.updateOne(Query.query(Criteria.where("userId").is(profile.getUserId())
+                            .and("updateTime").is(profile.getUpdateTime())),
+                    new Update()
+                            .set("profileScore", calculationEngine.calculateProfileScore(profile))
+                            .set("scoreFingerprint", fingerprint)
+                            .set("updateTime", now));
+            written.put(profile.getUserId(), fingerprint);
+        }
+
+        List<UserProfile> updated = List.of();
+        if (!written.isEmpty()) {
+            bulkOps.execute();
+
+            updated = profileRepository.findByUserIdIn(written.keySet()).stream()
+                    .filter(profile -> now.equals(profile.getUpdateTime())
+                            && written.get(profile.getUserId()).equals(profile.getScoreFingerprint()))
+                    .toList();
+            List<Long> updatedIds = updated.stream().map(UserProfile::getUserId).toList();
+            Cache cache = cacheManager.getCache("userProfiles");
+            if (cache instanceof TwoLevelCache twoLevelCache) {
+                twoLevelCache.evictAll(updatedIds);
+            } else if (cache != null) {
+                updatedIds.forEach(cache::evict);
+            }
+            updated.forEach(this::publishChanged);
+        }
+
+        int conflicts = written.size() - updated.size();
+        if (conflicts > 0) {
+            log.info("批量重算画像评分: {}个画像在读取后被并发更新，未覆盖", conflicts);
+        }
+        log.debug("批量重算画像评分: 请求={}, 存在={}, 写入={}", userIds.size(), profiles.size(), updated.size());
+        return new BatchRecalculationResult(profiles.size(), updated.size(), profiles.size() - written.size(),
+                conflicts);
+    }
+
+    /**
+     * 批量重算评分的结果
+     *
+     * @param found     存在画像的用户数
+     * @param updated   评分输入变化、已写回的用户数
+     * @param skipped   评分输入未变化、跳过写入的用户数
+     * @param conflicts 读取后被并发更新、未写回的用户数
+     */
+    public record BatchRecalculationResult(int found, int updated, int skipped, int conflicts) {
+    }
+
+    /**
+     * 去重并校验批量接口的用户数上限
+     */
+    private List<Long> distinctBatch(Collection<Long> userIds) {
+        if (userIds == null) {
+            throw new BusinessException("用户ID列表不能为空");
+        }
+        List<Long> ids = userIds.stream().filter(Objects::nonNull).distinct().toList();
+        if (ids.size() > batchMaxSize) {
+            throw new BusinessException("单次最多处理" + batchMaxSize + "个用户画像");
+        }
+        return ids;
+    }
+
+    /**
+     * 按字段裁剪画像，返回新对象，不修改缓存中的实例
+     */
+    private static UserProfile project(UserProfile profile, Set<String> fields) {
+        UserProfile projected = new UserProfile();
+        projected.setId(profile.getId());
+        projected.setUserId(profile.getUserId());
+        projected.setUsername(profile.getUsername());
+        if (fields.contains("digitalBehavior")) {
+            projected.setDigitalBehavior(profile.getDigitalBehavior());
+        }
+        if (fields.contains("coreNeeds")) {
+            projected.setCoreNeeds(profile.getCoreNeeds());
+        }
+        if (fields.contains("valueAssessment")) {
+            projected.setValueAssessment(profile.getValueAssessment());
+        }
+        if (fields.contains("stickinessAndLoyalty")) {
+            projected.setStickinessAndLoyalty(profile.getStickinessAndLoyalty());
+        }
+        if (fields.contains("profileScore")) {
+            projected.setProfileScore(profile.getProfileScore());
+        }
+        if (fields.contains("createTime")) {
+            projected.setCreateTime(profile.getCreateTime());
+        }
+        if (fields.contains("updateTime")) {
+            projected.setUpdateTime(profile.getUpdateTime());
+        }
+        return projected;
+    }
+
+    /**
+     * 发布画像变更事件
+     */
+    private UserProfile publishChanged(UserProfile saved) {
+        if (saved != null) {
+            eventPublisher.publishEvent(ProfileChangedEvent.updated(saved));
+        }
+        return saved;
     }
 }
@@ -0,0 +1,199 @@
+package com.userprofile.profile.analytics;
+
+import com.userprofile.common.metrics.MetricsService;
+import com.userprofile.profile.event.UserEvent;
+import org.bson.Document;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.FindAndReplaceOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationResults;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.*;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * UserBehaviorAggregateService单元测试
+ */
+@ExtendWith(MockitoExtension.class)
+@DisplayName("UserBehaviorAggregateService测试")
+class UserBehaviorAggregateServiceTest {
+
+    @Mock
+    private UserBehaviorAggregateRepository aggregateRepository;
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @Mock
+    private MetricsService metricsService;
+
+    @InjectMocks
+    private UserBehaviorAggregateService aggregateService;
+
+    @Test
+    @DisplayName("回填 - 读取事件期间有增量更新时按新修订号重新回填")
+    void rebuild_RetriesOnConcurrentIncrement() {
+        when(mongoTemplate.findOne(any(Query.class), eq(UserBehaviorAggregate.class)))
+                .thenReturn(revision(3L), revision(4L));
+        when(mongoTemplate.stream(any(Query.class), eq(UserEvent.class)))
+                .thenAnswer(inv -> Stream.empty());
+        when(mongoTemplate.findAndReplace(any(Query.class), any(UserBehaviorAggregate.class),
+                any(FindAndReplaceOptions.class)))
+                .thenThrow(new DuplicateKeyException("revision changed"))
+                .thenReturn(null);
+
+        UserBehaviorAggregate rebuilt = aggregateService.rebuild(1L);
+
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate, times(2)).findAndReplace(query.capture(), any(UserBehaviorAggregate.class),
+                any(FindAndReplaceOptions.class));
+        assertThat(query.getAllValues().get(1).getQueryObject().get("revision")).isEqualTo(4L);
+        assertThat(rebuilt.getRevision()).isEqualTo(4L);
+        assertThat(rebuilt.getBackfilled()).isTrue();
+        verify(aggregateRepository, never()).save(any());
+    }
+
+    @Test
+    @DisplayName("回填 - 持续冲突时不保存，聚合保持待回填状态")
+    void rebuild_GivesUpAfterRepeatedConflicts() {
+        when(mongoTemplate.findOne(any(Query.class), eq(UserBehaviorAggregate.class))).thenReturn(null);
+        when(mongoTemplate.stream(any(Query.class), eq(UserEvent.class)))
+                .thenAnswer(inv -> Stream.empty());
+        when(mongoTemplate.findAndReplace(any(Query.class), any(UserBehaviorAggregate.class),
+                any(FindAndReplaceOptions.class)))
+                .thenThrow(new DuplicateKeyException("revision changed"));
+
+        UserBehaviorAggregate rebuilt = aggregateService.rebuild(1L);
+
+        assertThat(rebuilt.getBackfilled()).isFalse();
+        verify(mongoTemplate, times(3)).findAndReplace(any(Query.class), any(UserBehaviorAggregate.class),
+                any(FindAndReplaceOptions.class));
+    }
+
+    @Test
+    @DisplayName("回填 - 聚合管道与JVM逐条汇总得到相同的按天/类型/品类分桶，包括时区日界和非数值金额")
+    void rebuild_PipelineMatchesJvm() {
+        TimeZone original = TimeZone.getDefault();
+        // 与UTC不同的时区，日界附近的事件在两种时区下属于不同的日期
+        TimeZone.setDefault(TimeZone.getTimeZone("Asia/Shanghai"));
+        try {
+            List<UserEvent> events = fixtureEvents();
+            when(mongoTemplate.findOne(any(Query.class), eq(UserBehaviorAggregate.class))).thenReturn(null);
+            when(mongoTemplate.stream(any(Query.class), eq(UserEvent.class))).thenAnswer(inv -> events.stream());
+            when(mongoTemplate.aggregate(any(Aggregation.class), eq(UserEvent.class), eq(Document.class)))
+                    .thenAnswer(inv -> new AggregationResults<>(runPipeline(inv.getArgument(0), events), new Document()));
+
+            ReflectionTestUtils.setField(aggregateService, "pushdownEnabled", false);
+            UserBehaviorAggregate jvm = aggregateService.rebuild(1L);
+            ReflectionTestUtils.setField(aggregateService, "pushdownEnabled", true);
+            UserBehaviorAggregate pipeline = aggregateService.rebuild(1L);
+
+            String beforeMidnight = LocalDate.now().minusDays(3).format(UserBehaviorAggregate.DAY_FORMAT);
+            String afterMidnight = LocalDate.now().minusDays(2).format(UserBehaviorAggregate.DAY_FORMAT);
+            assertThat(jvm.getDays()).containsOnlyKeys(beforeMidnight, afterMidnight);
+            assertThat(jvm.getDays().get(beforeMidnight).getTypes()).containsEntry("PAY", 2L);
+            assertThat(jvm.getDays().get(afterMidnight).getInterests())
+                    .containsEntry(UserBehaviorAggregateService.encodeKey("母婴.奶粉"), 2L);
+            assertThat(jvm.getPurchaseAmount()).isEqualTo(130.5);
+
+            assertThat(pipeline.getDays()).isEqualTo(jvm.getDays());
+            assertThat(pipeline.getTotalEvents()).isEqualTo(jvm.getTotalEvents());
+            assertThat(pipeline.getPurchaseCount()).isEqualTo(jvm.getPurchaseCount());
+            assertThat(pipeline.getPurchaseAmount()).isEqualTo(jvm.getPurchaseAmount());
+            assertThat(pipeline.getFirstPurchaseTime()).isEqualTo(jvm.getFirstPurchaseTime());
+            assertThat(pipeline.getLastPurchaseTime()).isEqualTo(jvm.getLastPurchaseTime());
+            assertThat(pipeline.getLastActiveTime()).isEqualTo(jvm.getLastActiveTime());
+        } finally {
+            TimeZone.setDefault(original);
+        }
+    }
+
+    /**
+     * 日界两侧的支付、浏览事件，金额包含整数、小数、字符串和缺失
+     */
+    private static List<UserEvent> fixtureEvents() {
+        LocalDateTime midnight = LocalDate.now().minusDays(2).atStartOfDay();
+        return List.of(
+                event(UserEvent.EventType.PAY, midnight.minusSeconds(30), Map.of("amount", 100, "category", "母婴")),
+                event(UserEvent.EventType.PAY, midnight.minusSeconds(10), Map.of("amount", "12.5")),
+                event(UserEvent.EventType.PAY, midnight.plusSeconds(5), Map.of("amount", 30.5)),
+                event(UserEvent.EventType.PAY, midnight.plusSeconds(20), Map.of()),
+                event(UserEvent.EventType.PRODUCT_VIEW, midnight.minusSeconds(1), Map.of("category", "母婴.奶粉")),
+                event(UserEvent.EventType.PRODUCT_VIEW, midnight.plusSeconds(1), Map.of("category", "母婴.奶粉")),
+                event(UserEvent.EventType.SEARCH, midnight.plusSeconds(2), Map.of("category", "母婴.奶粉")),
+                event(UserEvent.EventType.SEARCH, midnight.plusSeconds(3), Map.of("category", 42)),
+                event(null, midnight.plusSeconds(4), null));
+    }
+
+    private static UserEvent event(UserEvent.EventType type, LocalDateTime time, Map<String, Object> data) {
+        UserEvent event = new UserEvent();
+        event.setUserId(1L);
+        event.setEventType(type);
+        event.setEventTime(time);
+        event.setEventData(data);
+        return event;
+    }
+
+    /**
+     * 按MongoDB的语义在内存中执行回填管道：日期按管道中$dateToString指定的时区和格式分组，
+     * $sum忽略非数值，$min/$max取事件时间
+     */
+    private static List<Document> runPipeline(Aggregation aggregation, List<UserEvent> events) {
+        List<Document> stages = aggregation.toPipeline(Aggregation.DEFAULT_CONTEXT);
+        Document dateToString = stages.get(1).get("$project", Document.class)
+                .get("day", Document.class).get("$dateToString", Document.class);
+        assertThat(dateToString.getString("format")).isEqualTo("%Y%m%d");
+        ZoneId timezone = ZoneId.of(dateToString.getString("timezone"));
+
+        Map<List<Object>, Document> groups = new LinkedHashMap<>();
+        for (UserEvent event : events) {
+            if (event.getEventTime() == null) {
+                continue;
+            }
+            Instant instant = event.getEventTime().atZone(ZoneId.systemDefault()).toInstant();
+            String day = instant.atZone(timezone).toLocalDate().format(DateTimeFormatter.BASIC_ISO_DATE);
+            String type = event.getEventType() != null ? event.getEventType().name() : null;
+            Object category = event.getEventData() != null ? event.getEventData().get("category") : null;
+            Object amount = event.getEventData() != null ? event.getEventData().get("amount") : null;
+
+            Document row = groups.computeIfAbsent(Arrays.asList(day, type, category), key -> new Document("_id",
+                    new Document("day", day).append("eventType", type).append("category", category))
+                    .append("count", 0).append("amount", 0)
+                    .append("firstTime", Date.from(instant)).append("lastTime", Date.from(instant)));
+            row.put("count", row.getInteger("count") + 1);
+            if (amount instanceof Number number) {
+                row.put("amount", ((Number) row.get("amount")).doubleValue() + number.doubleValue());
+            }
+            if (instant.isBefore(row.getDate("firstTime").toInstant())) {
+                row.put("firstTime", Date.from(instant));
+            }
+            if (instant.isAfter(row.getDate("lastTime").toInstant())) {
+                row.put("lastTime", Date.from(instant));
+            }
+        }
+        return new ArrayList<>(groups.values());
+    }
+
+    private static UserBehaviorAggregate revision(long revision) {
+        UserBehaviorAggregate aggregate = new UserBehaviorAggregate();
+        aggregate.setRevision(revision);
+        return aggregate;
+    }
+}
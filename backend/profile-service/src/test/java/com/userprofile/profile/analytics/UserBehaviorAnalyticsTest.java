@@ -0,0 +1,119 @@
+package com.userprofile.profile.analytics;
+
+import com.userprofile.profile.event.UserEventRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+/**
+ * UserBehaviorAnalytics单元测试
+ */
+@ExtendWith(MockitoExtension.class)
+@DisplayName("UserBehaviorAnalytics测试")
+class UserBehaviorAnalyticsTest {
+
+    @Mock
+    private UserEventRepository eventRepository;
+
+    @Mock
+    private UserBehaviorAggregateService aggregateService;
+
+    @InjectMocks
+    private UserBehaviorAnalytics behaviorAnalytics;
+
+    private UserBehaviorAggregate aggregate;
+
+    @BeforeEach
+    void setUp() {
+        Map<String, UserBehaviorAggregate.DailyBucket> days = new HashMap<>();
+        days.put(dayKey(1), new UserBehaviorAggregate.DailyBucket(18L,
+                Map.of("PRODUCT_VIEW", 10L, "ADD_TO_CART", 5L, "PLACE_ORDER", 2L, "PAY", 1L),
+                Map.of("水果", 6L, "粮油．米面", 3L)));
+        days.put(dayKey(2), new UserBehaviorAggregate.DailyBucket(2L, Map.of("PAGE_VIEW", 2L), Map.of()));
+        // 超出30天窗口的分桶不参与统计
+        days.put(dayKey(45), new UserBehaviorAggregate.DailyBucket(50L, Map.of("PRODUCT_VIEW", 50L), Map.of("蔬菜", 50L)));
+
+        aggregate = new UserBehaviorAggregate(1L, days, 70L, 12L, 12000.0,
+                LocalDateTime.now().minusDays(200), LocalDateTime.now().minusDays(5),
+                LocalDateTime.now().minusDays(1), true, 0L, LocalDateTime.now());
+    }
+
+    @Test
+    @DisplayName("RFM计算 - 基于聚合的累计支付数据")
+    void calculateRFM_FromAggregate() {
+        when(aggregateService.getAggregate(1L)).thenReturn(aggregate);
+
+        Map<String, Object> rfm = behaviorAnalytics.calculateRFM(1L);
+
+        assertThat(rfm.get("score")).isEqualTo(15);
+        assertThat(rfm.get("level")).isEqualTo("重要价值客户");
+        assertThat(rfm.get("totalAmount")).isEqualTo(12000.0);
+        verifyNoInteractions(eventRepository);
+    }
+
+    @Test
+    @DisplayName("购物漏斗 - 只统计30天窗口内的分桶")
+    void analyzePurchaseFunnel_WindowedBuckets() {
+        when(aggregateService.getAggregate(1L)).thenReturn(aggregate);
+
+        Map<String, Object> funnel = behaviorAnalytics.analyzePurchaseFunnel(1L);
+
+        assertThat(funnel.get("浏览商品")).isEqualTo(10L);
+        assertThat(funnel.get("加入购物车")).isEqualTo(5L);
+        assertThat(funnel.get("浏览转化率")).isEqualTo(50.0);
+        assertThat(funnel.get("支付转化率")).isEqualTo(50.0);
+    }
+
+    @Test
+    @DisplayName("兴趣偏好 - 归一化并还原编码后的品类名")
+    void analyzeInterests_DecodesKeys() {
+        when(aggregateService.getAggregate(1L)).thenReturn(aggregate);
+
+        Map<String, Double> interests = behaviorAnalytics.analyzeInterests(1L);
+
+        assertThat(interests).containsOnlyKeys("水果", "粮油.米面");
+        assertThat(interests.get("水果")).isEqualTo(1.0);
+        assertThat(interests.get("粮油.米面")).isEqualTo(0.5);
+    }
+
+    @Test
+    @DisplayName("流失风险 - 无活跃记录判定为高风险")
+    void predictChurnRisk_NoActivity_High() {
+        when(aggregateService.getAggregate(2L)).thenReturn(new UserBehaviorAggregate());
+
+        Map<String, Object> risk = behaviorAnalytics.predictChurnRisk(2L);
+
+        assertThat(risk.get("risk")).isEqualTo("高");
+        verify(aggregateService, times(1)).getAggregate(2L);
+    }
+
+    @Test
+    @DisplayName("综合洞察 - 只读取一次聚合即得到全部指标")
+    void analyzeInsights_SingleRead() {
+        when(aggregateService.getAggregate(1L)).thenReturn(aggregate);
+
+        BehaviorInsights insights = behaviorAnalytics.analyzeInsights(1L);
+
+        assertThat(insights.getRfm().getLevel()).isEqualTo("重要价值客户");
+        assertThat(insights.getFunnel().getPayments()).isEqualTo(1L);
+        assertThat(insights.getChurnRisk().getActivityScore()).isEqualTo(insights.getActivityScore());
+        assertThat(insights.getConversionRate()).isEqualTo(1.67);
+        verify(aggregateService, times(1)).getAggregate(1L);
+    }
+
+    private static String dayKey(int daysAgo) {
+        return LocalDate.now().minusDays(daysAgo).format(UserBehaviorAggregate.DAY_FORMAT);
+    }
+}
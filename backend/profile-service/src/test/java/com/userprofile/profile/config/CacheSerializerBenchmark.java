@@ -0,0 +1,146 @@
+package com.userprofile.profile.config;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.PropertyAccessor;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.jsontype.impl.LaissezFaireSubTypeValidator;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.userprofile.profile.entity.UserProfile;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
+
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 缓存序列化基准测试：默认类型JSON vs Smile(+LZ4)
+ *
+ * <p>运行方式（不随单元测试执行）：
+ * <pre>
+ * mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt -Dmdep.includeScope=test
+ * java -cp target/test-classes:target/classes:$(cat target/cp.txt) \
+ *     com.userprofile.profile.config.CacheSerializerBenchmark
+ * </pre>
+ * 启动时先打印两种格式的字节数，随后输出编码/解码吞吐量
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CacheSerializerBenchmark {
+
+    private Jackson2JsonRedisSerializer<Object> jsonSerializer;
+    private CompactRedisSerializer<UserProfile> smileSerializer;
+    private CompactRedisSerializer<UserProfile> smileLz4Serializer;
+
+    private UserProfile profile;
+    private byte[] jsonBytes;
+    private byte[] smileBytes;
+    private byte[] smileLz4Bytes;
+
+    @Setup
+    public void setUp() {
+        jsonSerializer = defaultTypingJsonSerializer();
+        smileSerializer = new CompactRedisSerializer<>(UserProfile.class, Integer.MAX_VALUE);
+        smileLz4Serializer = new CompactRedisSerializer<>(UserProfile.class, 0);
+
+        profile = sampleProfile();
+        jsonBytes = jsonSerializer.serialize(profile);
+        smileBytes = smileSerializer.serialize(profile);
+        smileLz4Bytes = smileLz4Serializer.serialize(profile);
+    }
+
+    @Benchmark
+    public byte[] encodeJson() {
+        return jsonSerializer.serialize(profile);
+    }
+
+    @Benchmark
+    public byte[] encodeSmile() {
+        return smileSerializer.serialize(profile);
+    }
+
+    @Benchmark
+    public byte[] encodeSmileLz4() {
+        return smileLz4Serializer.serialize(profile);
+    }
+
+    @Benchmark
+    public Object decodeJson() {
+        return jsonSerializer.deserialize(jsonBytes);
+    }
+
+    @Benchmark
+    public Object decodeSmile() {
+        return smileSerializer.deserialize(smileBytes);
+    }
+
+    @Benchmark
+    public Object decodeSmileLz4() {
+        return smileLz4Serializer.deserialize(smileLz4Bytes);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        CacheSerializerBenchmark sizes = new CacheSerializerBenchmark();
+        sizes.setUp();
+        System.out.printf("字节数: json=%d, smile=%d, smile+lz4=%d%n",
+                sizes.jsonBytes.length, sizes.smileBytes.length, sizes.smileLz4Bytes.length);
+
+        Options options = new OptionsBuilder()
+                .include(CacheSerializerBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+
+    /**
+     * 与CacheConfig中其余缓存相同配置的JSON序列化器
+     * 额外注册JavaTimeModule并忽略未知字段，否则UserProfile（LocalDateTime、getScoreLevel）无法往返
+     */
+    static Jackson2JsonRedisSerializer<Object> defaultTypingJsonSerializer() {
+        ObjectMapper mapper = new ObjectMapper();
+        mapper.setVisibility(PropertyAccessor.ALL, JsonAutoDetect.Visibility.ANY);
+        mapper.activateDefaultTyping(LaissezFaireSubTypeValidator.instance, ObjectMapper.DefaultTyping.NON_FINAL);
+        mapper.registerModule(new JavaTimeModule());
+        mapper.disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+        return new Jackson2JsonRedisSerializer<>(mapper, Object.class);
+    }
+
+    /**
+     * 典型的完整用户画像
+     */
+    static UserProfile sampleProfile() {
+        Map<String, Object> preferenceAnalysis = new LinkedHashMap<>();
+        preferenceAnalysis.put("priceSensitivity", "中");
+        preferenceAnalysis.put("promotionResponse", 0.72);
+        preferenceAnalysis.put("preferredChannels", List.of("APP", "小程序"));
+
+        UserProfile profile = new UserProfile();
+        profile.setId("65a1f0c2e4b0a1b2c3d4e5f6");
+        profile.setUserId(10001L);
+        profile.setUsername("user_10001");
+        profile.setDigitalBehavior(new UserProfile.DigitalBehavior(
+                List.of("水果", "蔬菜", "粮油米面", "乳制品", "母婴用品"),
+                "短视频平台", "口碑导向",
+                List.of("品牌A", "品牌B", "品牌C")));
+        profile.setCoreNeeds(new UserProfile.CoreNeeds(
+                List.of("产品品质", "配送时效", "售后服务"), "难以判断商品真伪"));
+        profile.setValueAssessment(new UserProfile.ValueAssessment(
+                "高质量", "中高消费", preferenceAnalysis, 268.5, "混合喂养", "高"));
+        profile.setStickinessAndLoyalty(new UserProfile.StickinessAndLoyalty(
+                List.of("价格波动", "会员权益"), "优惠信息不透明", 82.0));
+        profile.setProfileScore(86.5);
+        profile.setCreateTime(LocalDateTime.of(2024, 1, 12, 9, 30));
+        profile.setUpdateTime(LocalDateTime.of(2024, 6, 3, 18, 45, 12));
+        return profile;
+    }
+}
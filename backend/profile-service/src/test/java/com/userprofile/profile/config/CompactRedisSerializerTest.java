@@ -0,0 +1,90 @@
+package com.userprofile.profile.config;
+
+import com.userprofile.profile.entity.UserProfile;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * CompactRedisSerializer单元测试
+ */
+@DisplayName("CompactRedisSerializer测试")
+class CompactRedisSerializerTest {
+
+    @Test
+    @DisplayName("未压缩 - 往返一致且小于默认类型JSON")
+    void roundTrip_Smile() {
+        CompactRedisSerializer<UserProfile> serializer = new CompactRedisSerializer<>(UserProfile.class, Integer.MAX_VALUE);
+        UserProfile profile = CacheSerializerBenchmark.sampleProfile();
+
+        byte[] bytes = serializer.serialize(profile);
+
+        assertThat(bytes[0]).isEqualTo(CompactRedisSerializer.FORMAT_SMILE);
+        assertThat(serializer.deserialize(bytes)).isEqualTo(profile);
+        assertThat(bytes.length).isLessThan(CacheSerializerBenchmark.defaultTypingJsonSerializer().serialize(profile).length);
+    }
+
+    @Test
+    @DisplayName("超过阈值 - LZ4压缩后往返一致")
+    void roundTrip_Lz4() {
+        CompactRedisSerializer<UserProfile> serializer = new CompactRedisSerializer<>(UserProfile.class, 0);
+        UserProfile profile = CacheSerializerBenchmark.sampleProfile();
+
+        byte[] bytes = serializer.serialize(profile);
+
+        assertThat(bytes[0]).isEqualTo(CompactRedisSerializer.FORMAT_SMILE_LZ4);
+        assertThat(serializer.deserialize(bytes)).isEqualTo(profile);
+    }
+
+    @Test
+    @DisplayName("偏好分析 - Map<String, Object>中的混合类型值往返后类型不变")
+    @SuppressWarnings("unchecked")
+    void roundTrip_PreferenceAnalysisMixedTypes() {
+        CompactRedisSerializer<UserProfile> serializer = new CompactRedisSerializer<>(UserProfile.class);
+        Map<String, Object> nested = new LinkedHashMap<>();
+        nested.put("orders", 12L);
+        nested.put("ratio", 0.25);
+        nested.put("tags", List.of("夜间", 3));
+        Map<String, Object> preferenceAnalysis = new LinkedHashMap<>();
+        preferenceAnalysis.put("visits", 7);
+        preferenceAnalysis.put("totalSpent", 5_000_000_000L);
+        preferenceAnalysis.put("smallLong", 42L);
+        preferenceAnalysis.put("avgScore", 3.5);
+        preferenceAnalysis.put("amount", new BigDecimal("199.90"));
+        preferenceAnalysis.put("priceSensitive", true);
+        preferenceAnalysis.put("channel", "app");
+        preferenceAnalysis.put("lastVisit", new Date(1_700_000_000_000L));
+        preferenceAnalysis.put("categories", new ArrayList<>(List.of("水果", 2L, 1.5)));
+        preferenceAnalysis.put("detail", nested);
+        preferenceAnalysis.put("missing", null);
+        UserProfile profile = CacheSerializerBenchmark.sampleProfile();
+        profile.getValueAssessment().setPreferenceAnalysis(preferenceAnalysis);
+
+        UserProfile restored = serializer.deserialize(serializer.serialize(profile));
+
+        Map<String, Object> actual = restored.getValueAssessment().getPreferenceAnalysis();
+        assertThat(actual).isEqualTo(preferenceAnalysis);
+        assertThat(actual.get("smallLong")).isInstanceOf(Long.class);
+        assertThat(actual.get("amount")).isInstanceOf(BigDecimal.class);
+        assertThat(actual.get("lastVisit")).isInstanceOf(Date.class);
+        assertThat((List<Object>) actual.get("categories")).element(1).isInstanceOf(Long.class);
+        assertThat(((Map<String, Object>) actual.get("detail")).get("orders")).isInstanceOf(Long.class);
+        assertThat(restored).isEqualTo(profile);
+    }
+
+    @Test
+    @DisplayName("旧JSON格式数据 - 按未命中处理")
+    void deserialize_LegacyJsonAsMiss() {
+        CompactRedisSerializer<UserProfile> serializer = new CompactRedisSerializer<>(UserProfile.class);
+        byte[] legacy = CacheSerializerBenchmark.defaultTypingJsonSerializer()
+                .serialize(CacheSerializerBenchmark.sampleProfile());
+
+        assertThat(serializer.deserialize(legacy)).isNull();
+        assertThat(serializer.deserialize(new byte[]{0x01, 0x3a})).isNull();
+        assertThat(serializer.deserialize(null)).isNull();
+    }
+}
@@ -0,0 +1,146 @@
+package com.userprofile.profile.config;
+
+import com.userprofile.common.metrics.MetricsService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.cache.Cache;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * TwoLevelCacheManager单元测试（以ConcurrentMapCache代替Redis缓存）
+ */
+@ExtendWith(MockitoExtension.class)
+@DisplayName("TwoLevelCacheManager测试")
+class TwoLevelCacheManagerTest {
+
+    @Mock
+    private StringRedisTemplate redisTemplate;
+
+    @Mock
+    private RedisMessageListenerContainer listenerContainer;
+
+    @Mock
+    private MetricsService metricsService;
+
+    @Mock
+    private ValueOperations<String, String> valueOperations;
+
+    private ConcurrentMapCacheManager remoteCacheManager;
+    private TwoLevelCacheManager cacheManager;
+
+    @BeforeEach
+    void setUp() {
+        remoteCacheManager = new ConcurrentMapCacheManager("userProfiles", "profiles");
+        cacheManager = new TwoLevelCacheManager(remoteCacheManager, redisTemplate, listenerContainer,
+                metricsService, 100, Duration.ofMinutes(1));
+    }
+
+    @Test
+    @DisplayName("读取 - L2命中后回填L1，再次读取只走L1")
+    void get_PromotesToLocal() {
+        remoteCacheManager.getCache("userProfiles").put(1L, "profile-1");
+        Cache cache = cacheManager.getCache("userProfiles");
+
+        assertThat(cache.get(1L).get()).isEqualTo("profile-1");
+        remoteCacheManager.getCache("userProfiles").evict(1L);
+        assertThat(cache.get(1L).get()).isEqualTo("profile-1");
+
+        verify(metricsService).recordCacheHit("userProfiles.redis", true);
+        verify(metricsService).recordCacheHit("userProfiles.local", true);
+    }
+
+    @Test
+    @DisplayName("加载 - 两级都未命中时调用加载函数并记录耗时")
+    void getWithLoader_LoadsOnce() {
+        Cache cache = cacheManager.getCache("userProfiles");
+        AtomicInteger loads = new AtomicInteger();
+
+        cache.get(1L, () -> "profile-" + loads.incrementAndGet());
+        String value = cache.get(1L, () -> "profile-" + loads.incrementAndGet());
+
+        assertThat(value).isEqualTo("profile-1");
+        assertThat(loads).hasValue(1);
+        verify(metricsService).recordExecutionTime(eq("cache.load.userProfiles"), anyLong());
+    }
+
+    @Test
+    @DisplayName("失效广播 - 其他实例的消息清除本地缓存，自身消息忽略")
+    void onEviction_ClearsLocalFromOtherInstances() {
+        Cache cache = cacheManager.getCache("userProfiles");
+        cache.put(1L, "profile-1");
+
+        ArgumentCaptor<String> message = ArgumentCaptor.forClass(String.class);
+        verify(redisTemplate).convertAndSend(eq(TwoLevelCacheManager.EVICTION_CHANNEL), message.capture());
+
+        // 自身发出的消息不清除本地缓存
+        remoteCacheManager.getCache("userProfiles").evict(1L);
+        cacheManager.onEviction(message.getValue());
+        assertThat(cache.get(1L)).isNotNull();
+
+        cacheManager.onEviction("other-instance|userProfiles|1");
+        assertThat(cache.get(1L)).isNull();
+    }
+
+    @Test
+    @DisplayName("过期后 - 立即返回旧值并在后台刷新")
+    void getWithLoader_StaleWhileRevalidate() throws Exception {
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        when(valueOperations.setIfAbsent(anyString(), anyString(), any(Duration.class))).thenReturn(true);
+        cacheManager.enableEarlyRefresh("profiles", Duration.ofHours(2), 1.0);
+        remoteCacheManager.getCache("profiles")
+                .put(1L, new CacheEnvelope<>("stale", System.currentTimeMillis() - 1000, 5));
+        Cache cache = cacheManager.getCache("profiles");
+        CountDownLatch loaded = new CountDownLatch(1);
+
+        String value = cache.get(1L, () -> {
+            loaded.countDown();
+            return "fresh";
+        });
+
+        assertThat(value).isEqualTo("stale");
+        assertThat(loaded.await(5, TimeUnit.SECONDS)).isTrue();
+        await(() -> "fresh".equals(cache.get(1L, String.class)));
+        CacheEnvelope<?> stored = (CacheEnvelope<?>) remoteCacheManager.getCache("profiles").get(1L).get();
+        assertThat(stored.getExpiresAt()).isGreaterThan(System.currentTimeMillis() + Duration.ofMinutes(119).toMillis());
+    }
+
+    @Test
+    @DisplayName("提前刷新判定 - 已过期必定刷新，远离过期且加载很快时不刷新")
+    void earlyRefreshPolicy_XFetch() {
+        EarlyRefreshPolicy policy = new EarlyRefreshPolicy(Duration.ofHours(2), 1.0);
+        long now = System.currentTimeMillis();
+
+        assertThat(policy.shouldRefresh(new CacheEnvelope<>("v", now - 1, 10), now)).isTrue();
+        assertThat(policy.shouldRefresh(new CacheEnvelope<>("v", now + Duration.ofHours(1).toMillis(), 0), now)).isFalse();
+        assertThat(policy.wrap("v", 10, now).getExpiresAt()).isEqualTo(now + Duration.ofHours(2).toMillis());
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(condition.getAsBoolean()).isTrue();
+    }
+}
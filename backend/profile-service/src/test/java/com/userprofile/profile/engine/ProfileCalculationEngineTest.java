@@ -0,0 +1,67 @@
+package com.userprofile.profile.engine;
+
+import com.userprofile.profile.entity.UserProfile;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * ProfileCalculationEngine单元测试
+ */
+@DisplayName("ProfileCalculationEngine测试")
+class ProfileCalculationEngineTest {
+
+    private final ProfileCalculationEngine engine = new ProfileCalculationEngine();
+
+    @Test
+    @DisplayName("评分指纹 - 与偏好分析迭代顺序及非评分字段无关")
+    void scoreFingerprint_StableForSameInputs() {
+        Map<String, Object> preferences = new LinkedHashMap<>();
+        preferences.put("a", 0.5);
+        preferences.put("b", 0.8);
+        Map<String, Object> reordered = new LinkedHashMap<>();
+        reordered.put("b", 0.8);
+        reordered.put("a", 0.5);
+
+        UserProfile first = profile(preferences, 60.0);
+        UserProfile second = profile(reordered, 60.0);
+        second.setUsername("other");
+        second.setProfileScore(12.0);
+
+        assertThat(engine.scoreFingerprint(first))
+                .startsWith("v" + ProfileCalculationEngine.SCORING_VERSION + ":")
+                .isEqualTo(engine.scoreFingerprint(second));
+    }
+
+    @Test
+    @DisplayName("评分指纹 - 评分输入变化时指纹变化")
+    void scoreFingerprint_ChangesWithInputs() {
+        UserProfile before = profile(new HashMap<>(Map.of("a", 0.5)), 60.0);
+        UserProfile after = profile(new HashMap<>(Map.of("a", 0.5)), 65.0);
+
+        assertThat(engine.scoreFingerprint(before)).isNotEqualTo(engine.scoreFingerprint(after));
+    }
+
+    private static UserProfile profile(Map<String, Object> preferences, Double loyaltyScore) {
+        UserProfile.DigitalBehavior behavior = new UserProfile.DigitalBehavior();
+        behavior.setProductCategories(List.of("奶粉", "纸尿裤"));
+        UserProfile.ValueAssessment assessment = new UserProfile.ValueAssessment();
+        assessment.setPreferenceAnalysis(preferences);
+        assessment.setProfileQuality("high");
+        UserProfile.StickinessAndLoyalty stickiness = new UserProfile.StickinessAndLoyalty();
+        stickiness.setLoyaltyScore(loyaltyScore);
+
+        UserProfile profile = new UserProfile();
+        profile.setUserId(1L);
+        profile.setDigitalBehavior(behavior);
+        profile.setValueAssessment(assessment);
+        profile.setStickinessAndLoyalty(stickiness);
+        return profile;
+    }
+}
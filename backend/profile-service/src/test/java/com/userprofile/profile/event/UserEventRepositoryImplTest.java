@@ -0,0 +1,67 @@
+package com.userprofile.profile.event;
+
+import com.mongodb.client.result.UpdateResult;
+import com.userprofile.common.metrics.MetricsService;
+import org.bson.Document;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * UserEventRepositoryImpl单元测试
+ */
+@ExtendWith(MockitoExtension.class)
+@DisplayName("UserEventRepositoryImpl测试")
+class UserEventRepositoryImplTest {
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @Mock
+    private MetricsService metricsService;
+
+    @InjectMocks
+    private UserEventRepositoryImpl eventRepository;
+
+    @Test
+    @DisplayName("标记已处理 - 空列表直接返回，不访问数据库")
+    void markProcessed_EmptyListShortCircuits() {
+        long modified = eventRepository.markProcessed(List.of());
+
+        assertThat(modified).isZero();
+        verifyNoInteractions(mongoTemplate, metricsService);
+    }
+
+    @Test
+    @DisplayName("标记已处理 - 整批事件ID一次updateMulti写入")
+    void markProcessed_SingleUpdateMulti() {
+        when(mongoTemplate.updateMulti(any(Query.class), any(Update.class), eq(UserEvent.class)))
+                .thenReturn(UpdateResult.acknowledged(3, 3L, null));
+
+        long modified = eventRepository.markProcessed(List.of("e1", "e2", "e3"));
+
+        assertThat(modified).isEqualTo(3);
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+        verify(mongoTemplate, times(1)).updateMulti(query.capture(), update.capture(), eq(UserEvent.class));
+        verifyNoMoreInteractions(mongoTemplate);
+        assertThat(query.getValue().getQueryObject().get("id", Document.class).getList("$in", String.class))
+                .containsExactly("e1", "e2", "e3");
+        assertThat(update.getValue().getUpdateObject().get("$set", Document.class))
+                .containsEntry("processed", true);
+        verify(metricsService).recordBatchWrite(eq("events.markProcessed"), eq(3), anyLong());
+    }
+}
@@ -0,0 +1,179 @@
+package com.userprofile.profile.recommendation;
+
+import com.userprofile.common.metrics.MetricsService;
+import com.userprofile.profile.config.CacheEnvelope;
+import com.userprofile.profile.recommendation.RecommendationCache.Loaded;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * RecommendationCache单元测试
+ */
+@ExtendWith(MockitoExtension.class)
+@DisplayName("RecommendationCache测试")
+class RecommendationCacheTest {
+
+    @Mock
+    private RedisTemplate<String, Object> redisTemplate;
+
+    @Mock
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Mock
+    private RedisMessageListenerContainer listenerContainer;
+
+    @Mock
+    private MetricsService metricsService;
+
+    @Mock
+    private HashOperations<String, Object, Object> hashOperations;
+
+    @Mock
+    private ValueOperations<String, String> valueOperations;
+
+    private final List<Object> written = new ArrayList<>();
+
+    private RecommendationCache recommendationCache;
+
+    @BeforeEach
+    void setUp() {
+        recommendationCache = new RecommendationCache(redisTemplate, stringRedisTemplate, listenerContainer,
+                metricsService, 15, 100, 60);
+    }
+
+    @Test
+    @DisplayName("本地缓存命中 - 不访问Redis且不重复计算")
+    void get_LocalHit() {
+        stubWrite("3", 1L);
+        AtomicInteger loads = new AtomicInteger();
+
+        List<RecommendationResult> first = recommendationCache.get(1L, "hybrid", 10, () -> {
+            loads.incrementAndGet();
+            return Loaded.complete(List.of(new RecommendationResult("P1", 1.0, "热门推荐", "最近热销商品")));
+        });
+        first.get(0).setScore(100.0);
+        List<RecommendationResult> second = recommendationCache.get(1L, "hybrid", 10, () -> {
+            loads.incrementAndGet();
+            return Loaded.complete(List.of());
+        });
+
+        assertThat(loads).hasValue(1);
+        assertThat(second).extracting(RecommendationResult::getScore).containsExactly(1.0);
+        verify(hashOperations, times(1)).get("recommendations:1", "hybrid:10");
+        verify(redisTemplate).execute(any(RedisScript.class), any(RedisSerializer.class), any(RedisSerializer.class),
+                eq(List.of("recommendations:1", "recommendations:gen:1")), any(Object[].class));
+    }
+
+    @Test
+    @DisplayName("Redis命中 - field超过自身过期时间时按未命中处理，不受哈希key整体TTL延长的影响")
+    void get_ExpiredFieldIsMiss() {
+        stubWrite("", 1L);
+        List<RecommendationResult> stale = List.of(new RecommendationResult("P1", 1.0, "热门推荐", "最近热销商品"));
+        when(hashOperations.get("recommendations:1", "hybrid:10"))
+                .thenReturn(new CacheEnvelope<>(stale, System.currentTimeMillis() - 1, 0));
+
+        List<RecommendationResult> results = recommendationCache.get(1L, "hybrid", 10,
+                () -> Loaded.complete(List.of(new RecommendationResult("P2", 2.0, "热门推荐", "最近热销商品"))));
+
+        assertThat(results).extracting(RecommendationResult::getItemId).containsExactly("P2");
+        assertThat(written).hasSize(1);
+        assertThat(((CacheEnvelope<?>) written.get(0)).getExpiresAt()).isGreaterThan(System.currentTimeMillis());
+    }
+
+    @Test
+    @DisplayName("计算期间失效 - 版本号变化时不写入Redis，本地缓存也不保留")
+    void get_InvalidatedDuringLoadNotCached() {
+        stubWrite("3", 0L);
+        AtomicInteger loads = new AtomicInteger();
+
+        for (int i = 0; i < 2; i++) {
+            recommendationCache.get(1L, "hybrid", 10, () -> {
+                loads.incrementAndGet();
+                return Loaded.complete(List.of(new RecommendationResult("P1", 1.0, "热门推荐", "最近热销商品")));
+            });
+        }
+
+        assertThat(loads).hasValue(2);
+    }
+
+    @Test
+    @DisplayName("降级结果 - 不写入任何一级缓存，下次请求重新计算")
+    void get_DegradedNotCached() {
+        when(redisTemplate.opsForHash()).thenReturn(hashOperations);
+        when(stringRedisTemplate.opsForValue()).thenReturn(valueOperations);
+        AtomicInteger loads = new AtomicInteger();
+
+        for (int i = 0; i < 2; i++) {
+            recommendationCache.get(1L, "hybrid", 10, () -> {
+                loads.incrementAndGet();
+                return new Loaded(List.of(new RecommendationResult("P1", 1.0, "热门推荐", "最近热销商品")), false);
+            });
+        }
+
+        assertThat(loads).hasValue(2);
+        verify(redisTemplate, never()).execute(any(RedisScript.class), any(RedisSerializer.class),
+                any(RedisSerializer.class), anyList(), any(Object[].class));
+    }
+
+    @Test
+    @DisplayName("失效 - 递增版本号、清除本地缓存、删除Redis key并广播")
+    void invalidate_ClearsAllTiers() {
+        stubWrite("", 1L);
+        recommendationCache.get(1L, "hybrid", 10, () -> Loaded.complete(List.of()));
+
+        recommendationCache.invalidate(List.of(1L, 2L));
+
+        verify(stringRedisTemplate).executePipelined(any(RedisCallback.class));
+        verify(redisTemplate).delete(List.of("recommendations:1", "recommendations:2"));
+        verify(stringRedisTemplate).convertAndSend("recommendations:invalidate", "1,2");
+
+        recommendationCache.get(1L, "hybrid", 10, () -> Loaded.complete(List.of()));
+        verify(hashOperations, times(2)).get("recommendations:1", "hybrid:10");
+    }
+
+    /**
+     * 模拟Redis写入：读取到的版本号和条件写入脚本的返回值，写入的值记录在written中
+     */
+    @SuppressWarnings("unchecked")
+    private void stubWrite(String generation, long scriptResult) {
+        when(redisTemplate.opsForHash()).thenReturn(hashOperations);
+        when(stringRedisTemplate.opsForValue()).thenReturn(valueOperations);
+        when(valueOperations.get("recommendations:gen:1")).thenReturn(generation);
+        doReturn(new RedisSerializer<Object>() {
+            @Override
+            public byte[] serialize(Object value) {
+                written.add(value);
+                return new byte[0];
+            }
+
+            @Override
+            public Object deserialize(byte[] bytes) {
+                return null;
+            }
+        }).when(redisTemplate).getHashValueSerializer();
+        when(redisTemplate.execute(any(RedisScript.class), any(RedisSerializer.class), any(RedisSerializer.class),
+                anyList(), any(Object[].class))).thenReturn(scriptResult);
+    }
+}
@@ -0,0 +1,160 @@
+package com.userprofile.profile.recommendation;
+
+import com.userprofile.common.metrics.MetricsService;
+import com.userprofile.profile.analytics.UserBehaviorAnalytics;
+import com.userprofile.profile.entity.UserProfile;
+import com.userprofile.profile.event.UserEvent;
+import com.userprofile.profile.event.UserEventRepository;
+import com.userprofile.profile.repository.UserProfileRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * RecommendationEngine单元测试
+ */
+@ExtendWith(MockitoExtension.class)
+@DisplayName("RecommendationEngine测试")
+class RecommendationEngineTest {
+
+    @Mock
+    private UserProfileRepository profileRepository;
+
+    @Mock
+    private UserEventRepository eventRepository;
+
+    @Mock
+    private UserBehaviorAnalytics behaviorAnalytics;
+
+    @Mock
+    private SimilarUserIndex similarUserIndex;
+
+    @Mock
+    private TrendingService trendingService;
+
+    @Mock
+    private RecommendationCache recommendationCache;
+
+    @Spy
+    private RecommendationExecutor recommendationExecutor =
+            new RecommendationExecutor(4, 10, 5000, mock(MetricsService.class));
+
+    @InjectMocks
+    private RecommendationEngine recommendationEngine;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        // 缓存未命中，直接执行计算
+        when(recommendationCache.get(anyLong(), anyString(), anyInt(), any()))
+                .thenAnswer(inv -> ((Supplier<RecommendationCache.Loaded>) inv.getArgument(3)).get().results());
+    }
+
+    @Test
+    @DisplayName("协同过滤 - 批量获取相似用户购买记录并排除已购商品")
+    void collaborativeFiltering_BatchedNeighborPurchases() {
+        UserProfile target = new UserProfile();
+        target.setUserId(1L);
+        when(profileRepository.findRecommendationFieldsByUserId(1L)).thenReturn(Optional.of(target));
+        when(similarUserIndex.findSimilar(target, 10, 0.5)).thenReturn(List.of(
+                new SimilarUserIndex.Neighbor(2L, 0.9),
+                new SimilarUserIndex.Neighbor(3L, 0.6)));
+        when(eventRepository.findPurchasedProductIds(1L)).thenReturn(List.of("P1"));
+        when(eventRepository.findPurchasesByUserIds(List.of(2L, 3L))).thenReturn(List.of(
+                purchase(2L, "P1"), purchase(2L, "P2"), purchase(3L, "P2"), purchase(3L, "P3")));
+
+        List<RecommendationResult> results = recommendationEngine.collaborativeFilteringByUser(1L, 10);
+
+        assertThat(results).extracting(RecommendationResult::getItemId).containsExactly("P2", "P3");
+        assertThat(results.get(0).getScore()).isEqualTo(1.5, within(0.0001));
+        verify(eventRepository, never()).findByUserIdAndEventType(anyLong(), any());
+    }
+
+    @Test
+    @DisplayName("基于内容 - 排除当前用户已购商品，已购集合不在用户之间共享")
+    void contentBased_ExcludesPurchasedItemsPerUser() {
+        when(behaviorAnalytics.analyzeInterests(anyLong())).thenReturn(Map.of("水果", 1.0));
+        when(eventRepository.findRecentEvents(anyLong(), any()))
+                .thenReturn(List.of(view("P1"), view("P3"), view("P4")));
+        when(eventRepository.findPurchasedProductIds(1L)).thenReturn(List.of("P1", "P3"));
+        when(eventRepository.findPurchasedProductIds(5L)).thenReturn(List.of("P4"));
+
+        List<RecommendationResult> first = recommendationEngine.contentBasedRecommendation(1L, 10);
+        List<RecommendationResult> second = recommendationEngine.contentBasedRecommendation(5L, 10);
+
+        assertThat(first).extracting(RecommendationResult::getItemId).containsExactly("P4");
+        assertThat(second).extracting(RecommendationResult::getItemId).containsExactlyInAnyOrder("P1", "P3");
+    }
+
+    @Test
+    @DisplayName("混合推荐 - 各策略共享已购商品查询")
+    void hybridRecommendation_SharesPurchasedItems() {
+        UserProfile target = new UserProfile();
+        target.setUserId(1L);
+        when(profileRepository.findRecommendationFieldsByUserId(1L)).thenReturn(Optional.of(target));
+        when(similarUserIndex.findSimilar(target, 10, 0.5))
+                .thenReturn(List.of(new SimilarUserIndex.Neighbor(2L, 0.9)));
+        when(eventRepository.findPurchasedProductIds(1L)).thenReturn(List.of("P1"));
+        when(eventRepository.findPurchasesByUserIds(List.of(2L))).thenReturn(List.of(purchase(2L, "P2")));
+        when(behaviorAnalytics.analyzeInterests(1L)).thenReturn(Map.of("水果", 1.0));
+        when(eventRepository.findRecentEvents(eq(1L), any())).thenReturn(List.of(view("P1"), view("P4")));
+        when(trendingService.top(TrendingWindow.DAY_7, 10)).thenReturn(new LinkedHashMap<>());
+
+        List<RecommendationResult> results = recommendationEngine.hybridRecommendation(1L, 10);
+
+        assertThat(results).extracting(RecommendationResult::getItemId).containsExactlyInAnyOrder("P2", "P4");
+        verify(eventRepository, times(1)).findPurchasedProductIds(1L);
+        verify(eventRepository, times(1)).findPurchasesByUserIds(any());
+    }
+
+    @Test
+    @DisplayName("混合推荐 - 子策略失败时结果标记为降级，不写入缓存")
+    @SuppressWarnings("unchecked")
+    void hybridRecommendation_DegradedNotCacheable() {
+        when(profileRepository.findRecommendationFieldsByUserId(1L)).thenReturn(Optional.empty());
+        when(behaviorAnalytics.analyzeInterests(1L)).thenReturn(Map.of());
+        when(trendingService.top(TrendingWindow.DAY_7, 10)).thenThrow(new IllegalStateException("redis down"));
+
+        recommendationEngine.hybridRecommendation(1L, 10);
+
+        ArgumentCaptor<Supplier<RecommendationCache.Loaded>> loader = ArgumentCaptor.forClass(Supplier.class);
+        verify(recommendationCache).get(eq(1L), eq("hybrid"), eq(10), loader.capture());
+        assertThat(loader.getValue().get().complete()).isFalse();
+    }
+
+    private static UserEvent purchase(Long userId, String productId) {
+        UserEvent event = new UserEvent();
+        event.setUserId(userId);
+        event.setEventType(UserEvent.EventType.PAY);
+        event.setEventData(Map.of("productId", productId));
+        event.setWeight(1.0);
+        return event;
+    }
+
+    private static UserEvent view(String productId) {
+        UserEvent event = new UserEvent();
+        event.setUserId(1L);
+        event.setEventType(UserEvent.EventType.PRODUCT_VIEW);
+        event.setEventData(Map.of("productId", productId, "category", "水果"));
+        event.setEventTime(LocalDateTime.now().minusDays(1));
+        return event;
+    }
+}
@@ -0,0 +1,95 @@
+package com.userprofile.profile.recommendation;
+
+import com.userprofile.common.metrics.MetricsService;
+import com.userprofile.profile.recommendation.RecommendationExecutor.StrategyResult;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * RecommendationExecutor单元测试
+ */
+@DisplayName("RecommendationExecutor测试")
+class RecommendationExecutorTest {
+
+    private final MetricsService metricsService = mock(MetricsService.class);
+
+    private final RecommendationExecutor executor = new RecommendationExecutor(2, 10, 100, metricsService);
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdown();
+    }
+
+    @Test
+    @DisplayName("策略正常完成 - 返回结果并记录耗时")
+    void submit_Success() {
+        StrategyResult<String> result = executor.submit("fast", () -> List.of("P1")).join();
+
+        assertThat(result.results()).containsExactly("P1");
+        assertThat(result.succeeded()).isTrue();
+        verify(metricsService).recordRecommendationStrategy(eq("fast"), eq("success"), anyLong());
+    }
+
+    @Test
+    @DisplayName("策略超时 - 返回空结果而不阻塞")
+    void submit_TimeoutDropped() {
+        long startTime = System.currentTimeMillis();
+
+        StrategyResult<String> result = executor.<String>submit("slow", () -> {
+            sleep(2000);
+            return List.of("P1");
+        }).join();
+
+        assertThat(result.results()).isEmpty();
+        assertThat(result.succeeded()).isFalse();
+        assertThat(System.currentTimeMillis() - startTime).isLessThan(1500);
+        verify(metricsService).recordRecommendationStrategy(eq("slow"), eq("timeout"), anyLong());
+    }
+
+    @Test
+    @DisplayName("策略超时 - 中断执行线程，不继续占用线程池")
+    void submit_TimeoutInterruptsTask() throws InterruptedException {
+        CountDownLatch interrupted = new CountDownLatch(1);
+
+        executor.<String>submit("slow", () -> {
+            try {
+                Thread.sleep(2000);
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+            return List.of("P1");
+        }).join();
+
+        assertThat(interrupted.await(1, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    @DisplayName("策略异常 - 返回空结果")
+    void submit_ErrorDropped() {
+        StrategyResult<String> result = executor.<String>submit("broken", () -> {
+            throw new IllegalStateException("boom");
+        }).join();
+
+        assertThat(result.results()).isEmpty();
+        assertThat(result.succeeded()).isFalse();
+        verify(metricsService).recordRecommendationStrategy(eq("broken"), eq("error"), anyLong());
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.userprofile.profile.recommendation;
+
+import com.userprofile.profile.entity.UserProfile;
+import com.userprofile.profile.event.ProfileChangedEvent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.util.List;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.when;
+
+/**
+ * SimilarUserIndex单元测试
+ */
+@ExtendWith(MockitoExtension.class)
+@DisplayName("SimilarUserIndex测试")
+class SimilarUserIndexTest {
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @InjectMocks
+    private SimilarUserIndex similarUserIndex;
+
+    @BeforeEach
+    void setUp() {
+        when(mongoTemplate.stream(any(Query.class), eq(UserProfile.class)))
+                .thenReturn(Stream.of(
+                        profile(2L, 80.0, 70.0, List.of("水果", "蔬菜"), List.of("品牌A")),
+                        profile(3L, 78.0, 72.0, List.of("水果", "蔬菜"), List.of("品牌A")),
+                        profile(4L, 20.0, 10.0, List.of("母婴"), List.of("品牌B"))))
+                .thenReturn(Stream.empty());
+        similarUserIndex.rebuild();
+    }
+
+    @Test
+    @DisplayName("查找相似用户 - 返回特征接近的用户并排除自身")
+    void findSimilar_ReturnsClosestUsers() {
+        UserProfile target = profile(2L, 80.0, 70.0, List.of("水果", "蔬菜"), List.of("品牌A"));
+
+        List<SimilarUserIndex.Neighbor> neighbors = similarUserIndex.findSimilar(target, 10, 0.5);
+
+        assertThat(similarUserIndex.size()).isEqualTo(3);
+        assertThat(neighbors).extracting(SimilarUserIndex.Neighbor::userId).containsExactly(3L);
+        assertThat(neighbors.get(0).similarity()).isGreaterThan(0.9);
+    }
+
+    @Test
+    @DisplayName("画像变更事件 - 增量更新与删除")
+    void onProfileChanged_UpdatesIndex() {
+        UserProfile target = profile(2L, 80.0, 70.0, List.of("水果", "蔬菜"), List.of("品牌A"));
+
+        similarUserIndex.onProfileChanged(ProfileChangedEvent.updated(
+                profile(5L, 80.0, 70.0, List.of("水果", "蔬菜"), List.of("品牌A"))));
+        assertThat(similarUserIndex.findSimilar(target, 10, 0.5))
+                .extracting(SimilarUserIndex.Neighbor::userId).containsExactly(5L, 3L);
+
+        similarUserIndex.onProfileChanged(ProfileChangedEvent.deleted(3L));
+        assertThat(similarUserIndex.findSimilar(target, 10, 0.5))
+                .extracting(SimilarUserIndex.Neighbor::userId).containsExactly(5L);
+    }
+
+    @Test
+    @DisplayName("桶抽样 - 桶满后保留的用户与写入顺序无关")
+    void bucket_SampleIndependentOfInsertionOrder() {
+        long bucketKey = 42L;
+        long[] ascending = null;
+        long[] descending = null;
+        int users = SimilarUserIndex.MAX_BUCKET_SIZE * 3;
+        for (int i = 0; i < users; i++) {
+            ascending = SimilarUserIndex.with(ascending, i, bucketKey);
+            descending = SimilarUserIndex.with(descending, users - 1 - i, bucketKey);
+        }
+
+        assertThat(ascending).hasSize(SimilarUserIndex.MAX_BUCKET_SIZE).isEqualTo(descending);
+        assertThat(SimilarUserIndex.with(ascending, ascending[0], bucketKey)).isSameAs(ascending);
+    }
+
+    @Test
+    @DisplayName("没有品类/品牌的用户 - 同分段用户超出桶上限时仍能按评分找到最接近的用户")
+    void findSimilar_TokenPoorFallsBackToScoreRange() {
+        // 同一评分段、忠诚度段的用户远多于桶上限，全部落在相同的桶里
+        List<UserProfile> tokenPoor = LongStream.range(100, 100 + SimilarUserIndex.MAX_BUCKET_SIZE * 20L)
+                .mapToObj(id -> profile(id, 50.0 + (id % 900) / 100.0, 0.0, null, null))
+                .toList();
+        UserProfile closest = profile(99L, 57.775, 0.0, null, null);
+        reset(mongoTemplate);
+        when(mongoTemplate.stream(any(Query.class), eq(UserProfile.class)))
+                .thenReturn(Stream.concat(tokenPoor.stream(), Stream.of(closest)))
+                .thenReturn(Stream.empty());
+        similarUserIndex.rebuild();
+
+        List<SimilarUserIndex.Neighbor> neighbors = similarUserIndex.findSimilar(
+                profile(1L, 57.775, 0.0, null, null), 1, 0.5);
+
+        assertThat(neighbors).extracting(SimilarUserIndex.Neighbor::userId).containsExactly(99L);
+    }
+
+    private static UserProfile profile(Long userId, Double score, Double loyalty,
+                                       List<String> categories, List<String> brands) {
+        UserProfile profile = new UserProfile();
+        profile.setUserId(userId);
+        profile.setProfileScore(score);
+        UserProfile.DigitalBehavior behavior = new UserProfile.DigitalBehavior();
+        behavior.setProductCategories(categories);
+        behavior.setBrandPreferences(brands);
+        profile.setDigitalBehavior(behavior);
+        UserProfile.StickinessAndLoyalty loyaltyInfo = new UserProfile.StickinessAndLoyalty();
+        loyaltyInfo.setLoyaltyScore(loyalty);
+        profile.setStickinessAndLoyalty(loyaltyInfo);
+        return profile;
+    }
+}
@@ -0,0 +1,249 @@
+package com.userprofile.profile.recommendation;
+
+import com.userprofile.profile.event.UserEvent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisScriptingCommands;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.*;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * TrendingService单元测试
+ */
+@ExtendWith(MockitoExtension.class)
+@DisplayName("TrendingService测试")
+class TrendingServiceTest {
+
+    private static final long MINUTE = 60_000L;
+
+    @Mock
+    private StringRedisTemplate redisTemplate;
+
+    @Mock
+    private ZSetOperations<String, String> zSetOperations;
+
+    @Mock
+    private ValueOperations<String, String> valueOperations;
+
+    @InjectMocks
+    private TrendingService trendingService;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(trendingService, "maxLimit", 100);
+    }
+
+    @Test
+    @DisplayName("热门查询 - 只读取窗口汇总ZSET的TopN")
+    void top_ReadsWindowZset() {
+        LinkedHashSet<ZSetOperations.TypedTuple<String>> tuples = new LinkedHashSet<>();
+        tuples.add(new DefaultTypedTuple<>("P1", 12.0));
+        tuples.add(new DefaultTypedTuple<>("P2", 5.0));
+        when(redisTemplate.opsForZSet()).thenReturn(zSetOperations);
+        when(zSetOperations.reverseRangeWithScores("trending:24h", 0, 9)).thenReturn(tuples);
+
+        Map<String, Double> top = trendingService.top(TrendingWindow.DAY_1, 10);
+
+        assertThat(top).containsExactly(Map.entry("P1", 12.0), Map.entry("P2", 5.0));
+    }
+
+    @Test
+    @DisplayName("计数 - 非支付事件不写Redis")
+    void recordPurchases_IgnoresNonPayEvents() {
+        UserEvent view = new UserEvent();
+        view.setEventType(UserEvent.EventType.PRODUCT_VIEW);
+        view.setEventData(Map.of("productId", "P1"));
+
+        trendingService.recordPurchases(List.of(view));
+
+        verify(redisTemplate, never()).executePipelined(any(RedisCallback.class));
+    }
+
+    @Test
+    @DisplayName("热门查询 - 数量小于等于0时返回空，超过上限时按上限读取")
+    void top_ValidatesLimit() {
+        when(redisTemplate.opsForZSet()).thenReturn(zSetOperations);
+
+        assertThat(trendingService.top(TrendingWindow.HOUR_1, 0)).isEmpty();
+        assertThat(trendingService.top(TrendingWindow.HOUR_1, -5)).isEmpty();
+        trendingService.top(TrendingWindow.HOUR_1, 10_000);
+
+        verify(zSetOperations).reverseRangeWithScores("trending:1h", 0, 99);
+        verify(zSetOperations, times(1)).reverseRangeWithScores(anyString(), anyLong(), anyLong());
+    }
+
+    @Test
+    @DisplayName("窗口滑动 - 水位保存在Redis中，每个过期桶只处理一次")
+    void expireBuckets_ProcessesEachBucketOnce() {
+        FakeRedis redis = new FakeRedis();
+        long now = 1_000_000L * MINUTE;
+        redis.clock = now;
+
+        trendingService.expireBuckets(now);
+        clearInvocations(redisTemplate);
+
+        // 一分钟后1h窗口只有一个新过期的分钟桶，小时桶窗口没有变化
+        trendingService.expireBuckets(now + MINUTE);
+
+        long expiredBucket = TrendingWindow.HOUR_1.lastExpiredBucket(now + MINUTE);
+        verify(redisTemplate).execute(any(RedisScript.class),
+                eq(List.of("trending:1h", "trending:1h:" + expiredBucket, "trending:1h:expired")),
+                eq(String.valueOf(expiredBucket)));
+        verify(redisTemplate, times(1)).execute(any(RedisScript.class), anyList(), any(Object[].class));
+        assertThat(redis.strings.get("trending:1h:expired")).isEqualTo(String.valueOf(expiredBucket));
+    }
+
+    @Test
+    @DisplayName("未来时间的事件 - 按当前时间计入，窗口滑过后计数归零")
+    void recordPurchases_FutureEventExpiresWithWindow() {
+        FakeRedis redis = new FakeRedis();
+        long now = System.currentTimeMillis();
+        redis.clock = now;
+        trendingService.expireBuckets(now);
+
+        trendingService.recordPurchases(List.of(purchase("P1", LocalDateTime.now().plusHours(2))));
+        assertThat(redis.zsets.get("trending:1h")).containsEntry("P1", 1.0);
+
+        // 一个窗口之后按分钟滑动，事件所在的桶被扣减
+        for (long t = now + MINUTE; t <= now + 62 * MINUTE; t += MINUTE) {
+            redis.clock = t;
+            trendingService.expireBuckets(t);
+        }
+
+        assertThat(redis.zsets.getOrDefault("trending:1h", Map.of())).doesNotContainKey("P1");
+    }
+
+    @Test
+    @DisplayName("已扣减的桶 - 其他实例已推进水位后，时钟落后的写入被丢弃")
+    void recordPurchases_DropsIncrementAtOrBelowWatermark() {
+        FakeRedis redis = new FakeRedis();
+        long now = System.currentTimeMillis();
+        redis.clock = now;
+        // 时钟超前的实例已经扣减并删除了当前分钟所在的桶
+        redis.strings.put("trending:1h:expired", String.valueOf(TrendingWindow.HOUR_1.bucketOf(now) + 1));
+
+        trendingService.recordPurchases(List.of(purchase("P1", null)));
+
+        assertThat(redis.zsets.getOrDefault("trending:1h", Map.of())).doesNotContainKey("P1");
+        assertThat(redis.zsets.keySet()).noneMatch(key -> key.startsWith("trending:1h:"));
+        assertThat(redis.zsets.get("trending:24h")).containsEntry("P1", 1.0);
+    }
+
+    @Test
+    @DisplayName("时间窗口编码解析")
+    void trendingWindow_FromCode() {
+        assertThat(TrendingWindow.fromCode("7D")).isEqualTo(TrendingWindow.DAY_7);
+        assertThat(TrendingWindow.HOUR_1.lastExpiredBucket(120 * MINUTE)).isEqualTo(60);
+    }
+
+    @Test
+    @DisplayName("桶保留时长 - 覆盖重启后回看的最早一个桶")
+    void bucketTtl_CoversCatchUpLookback() {
+        long now = 1_000_000L * 60 * MINUTE;
+        for (TrendingWindow window : TrendingWindow.values()) {
+            long bucketMillis = now / window.bucketOf(now);
+            // 重启后回看到的最早过期桶，最坏情况下在桶开始时写入并设置TTL
+            long oldestChecked = window.lastExpiredBucket(now) - window.getBucketCount() + 1;
+
+            assertThat(oldestChecked * bucketMillis + window.bucketTtlSeconds() * 1000).isGreaterThan(now);
+        }
+    }
+
+    private static UserEvent purchase(String productId, LocalDateTime eventTime) {
+        UserEvent event = new UserEvent();
+        event.setEventType(UserEvent.EventType.PAY);
+        event.setEventData(Map.of("productId", productId));
+        event.setEventTime(eventTime);
+        return event;
+    }
+
+    private static String string(byte[] value) {
+        return new String(value, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 用内存结构模拟两个Lua脚本和键过期，时间由clock控制
+     */
+    private class FakeRedis {
+        final Map<String, Map<String, Double>> zsets = new HashMap<>();
+        final Map<String, String> strings = new HashMap<>();
+        final Map<String, Long> expiresAt = new HashMap<>();
+        long clock;
+
+        @SuppressWarnings("unchecked")
+        FakeRedis() {
+            RedisConnection connection = mock(RedisConnection.class);
+            RedisScriptingCommands scripting = mock(RedisScriptingCommands.class);
+            lenient().when(connection.scriptingCommands()).thenReturn(scripting);
+            lenient().when(scripting.eval(any(byte[].class), eq(ReturnType.INTEGER), eq(3), any(byte[][].class)))
+                    .thenAnswer(inv -> {
+                        byte[][] keysAndArgs = Arrays.copyOfRange(inv.getArguments(), 3, inv.getArguments().length,
+                                byte[][].class);
+                        return increment(string(keysAndArgs[0]), string(keysAndArgs[1]), string(keysAndArgs[2]),
+                                Long.parseLong(string(keysAndArgs[3])), string(keysAndArgs[4]),
+                                Long.parseLong(string(keysAndArgs[5])));
+                    });
+            lenient().when(redisTemplate.executePipelined(any(RedisCallback.class))).thenAnswer(inv -> {
+                ((RedisCallback<Object>) inv.getArgument(0)).doInRedis(connection);
+                return List.of();
+            });
+            lenient().when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+            lenient().when(valueOperations.get(anyString())).thenAnswer(inv -> strings.get(inv.<String>getArgument(0)));
+            lenient().when(redisTemplate.execute(any(RedisScript.class), anyList(), any(Object[].class)))
+                    .thenAnswer(inv -> {
+                        List<String> keys = inv.getArgument(1);
+                        return expire(keys.get(0), keys.get(1), keys.get(2), Long.parseLong(inv.getArgument(2)));
+                    });
+        }
+
+        private long increment(String windowKey, String bucketKey, String watermarkKey, long bucket,
+                               String productId, long ttlSeconds) {
+            String watermark = strings.get(watermarkKey);
+            if (watermark != null && bucket <= Long.parseLong(watermark)) {
+                return 0;
+            }
+            zsets.computeIfAbsent(bucketKey, k -> new HashMap<>()).merge(productId, 1.0, Double::sum);
+            expiresAt.put(bucketKey, clock + ttlSeconds * 1000);
+            zsets.computeIfAbsent(windowKey, k -> new HashMap<>()).merge(productId, 1.0, Double::sum);
+            return 1;
+        }
+
+        private long expire(String windowKey, String bucketKey, String watermarkKey, long bucket) {
+            Long expiry = expiresAt.get(bucketKey);
+            if (expiry != null && expiry <= clock) {
+                zsets.remove(bucketKey);
+            }
+            Map<String, Double> members = zsets.remove(bucketKey);
+            Map<String, Double> window = zsets.computeIfAbsent(windowKey, k -> new HashMap<>());
+            if (members != null) {
+                members.forEach((member, count) -> {
+                    if (window.merge(member, -count, Double::sum) <= 0) {
+                        window.remove(member);
+                    }
+                });
+            }
+            String watermark = strings.get(watermarkKey);
+            if (watermark == null || bucket > Long.parseLong(watermark)) {
+                strings.put(watermarkKey, String.valueOf(bucket));
+            }
+            return members != null ? members.size() : 0;
+        }
+    }
+}
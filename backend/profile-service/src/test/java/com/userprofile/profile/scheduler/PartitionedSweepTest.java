@@ -0,0 +1,140 @@
+package com.userprofile.profile.scheduler;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.redisson.api.RBucket;
+import org.redisson.api.RLock;
+import org.redisson.api.RSet;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.Codec;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * PartitionedSweep单元测试
+ */
+@ExtendWith(MockitoExtension.class)
+@DisplayName("PartitionedSweep测试")
+class PartitionedSweepTest {
+
+    private static final String JOB = "profile:test-job";
+
+    @Mock
+    private RedissonClient redissonClient;
+
+    @Mock
+    private ProfileSweeper profileSweeper;
+
+    @Mock
+    private RSet<String> doneSet;
+
+    @Mock
+    private RBucket<String> boundsBucket;
+
+    @Mock
+    private RLock freeLock;
+
+    @Mock
+    private RLock heldLock;
+
+    private PartitionedSweep partitionedSweep;
+
+    @BeforeEach
+    void setUp() {
+        partitionedSweep = new PartitionedSweep(redissonClient, profileSweeper, 3, 10);
+        lenient().when(redissonClient.<String>getSet(startsWith(JOB + ":done:"), any(Codec.class)))
+                .thenReturn(doneSet);
+        lenient().when(redissonClient.<String>getBucket(eq(JOB + ":bounds"), any(Codec.class))).thenReturn(boundsBucket);
+        lenient().when(boundsBucket.get()).thenReturn("100,200," + Long.MAX_VALUE);
+    }
+
+    @Test
+    @DisplayName("分区认领 - 跳过已完成和被其他实例持有的分区，完成后记录")
+    void run_ClaimsFreePartitionsOnly() {
+        // 分区0已完成；分区1被其他实例持有，第二轮时已被其完成；分区2空闲
+        when(doneSet.readAll()).thenReturn(Set.of("0"), Set.of("0", "1", "2"));
+        when(redissonClient.getLock(JOB + ":partition:1")).thenReturn(heldLock);
+        when(redissonClient.getLock(JOB + ":partition:2")).thenReturn(freeLock);
+        when(heldLock.tryLock()).thenReturn(false);
+        when(freeLock.tryLock()).thenReturn(true);
+        when(freeLock.isHeldByCurrentThread()).thenReturn(true);
+        when(profileSweeper.sweepPartition(eq(JOB + ":p2"), eq(new ProfileSweeper.UserIdRange(200, Long.MAX_VALUE)),
+                any(Duration.class), any()))
+                .thenReturn(new ProfileSweeper.SweepResult(5, 0, true, 1));
+        when(doneSet.size()).thenReturn(3);
+
+        long processed = partitionedSweep.run(JOB, Duration.ofMinutes(1), view -> { });
+
+        assertThat(processed).isEqualTo(5);
+        verify(doneSet).add("2");
+        verify(freeLock).unlock();
+        verify(heldLock, never()).unlock();
+        verify(redissonClient, never()).getLock(JOB + ":partition:0");
+        verify(boundsBucket).delete();
+    }
+
+    @Test
+    @DisplayName("时间预算 - 分区未完成时不记录完成，保留断点交给后续执行")
+    void run_PartitionPausedNotMarkedDone() {
+        when(doneSet.readAll()).thenReturn(Set.of("0", "1"));
+        when(redissonClient.getLock(JOB + ":partition:2")).thenReturn(freeLock);
+        when(freeLock.tryLock()).thenReturn(true);
+        when(freeLock.isHeldByCurrentThread()).thenReturn(true);
+        when(profileSweeper.sweepPartition(eq(JOB + ":p2"), eq(new ProfileSweeper.UserIdRange(200, Long.MAX_VALUE)),
+                any(Duration.class), any()))
+                .thenAnswer(inv -> {
+                    Thread.sleep(60);
+                    return new ProfileSweeper.SweepResult(3, 0, false, 60);
+                });
+
+        long processed = partitionedSweep.run(JOB, Duration.ofMillis(50), view -> { });
+
+        assertThat(processed).isEqualTo(3);
+        verify(doneSet, never()).add(anyString());
+        verify(freeLock).unlock();
+        verify(boundsBucket, never()).delete();
+    }
+
+    @Test
+    @DisplayName("分区边界 - 本轮没有边界时计算并保存，其他实例先保存的边界优先")
+    void run_UsesBoundsSavedByFirstInstance() {
+        when(boundsBucket.get()).thenReturn(null, "10,20," + Long.MAX_VALUE);
+        when(profileSweeper.partitionRanges(3)).thenReturn(List.of(
+                new ProfileSweeper.UserIdRange(Long.MIN_VALUE, 5),
+                new ProfileSweeper.UserIdRange(5, 15),
+                new ProfileSweeper.UserIdRange(15, Long.MAX_VALUE)));
+        when(boundsBucket.setIfAbsent(eq("5,15," + Long.MAX_VALUE), any(Duration.class))).thenReturn(false);
+        when(doneSet.readAll()).thenReturn(Set.of("0", "2"), Set.of("0", "1", "2"));
+        when(redissonClient.getLock(JOB + ":partition:1")).thenReturn(freeLock);
+        when(freeLock.tryLock()).thenReturn(true);
+        when(freeLock.isHeldByCurrentThread()).thenReturn(true);
+        when(profileSweeper.sweepPartition(eq(JOB + ":p1"), any(), any(Duration.class), any()))
+                .thenReturn(new ProfileSweeper.SweepResult(4, 0, true, 1));
+
+        partitionedSweep.run(JOB, Duration.ofMinutes(1), view -> { });
+
+        verify(profileSweeper).sweepPartition(eq(JOB + ":p1"), eq(new ProfileSweeper.UserIdRange(10, 20)),
+                any(Duration.class), any());
+    }
+
+    @Test
+    @DisplayName("分区边界 - 编码后再解码，区间首尾相接")
+    void bounds_RoundTrip() {
+        List<ProfileSweeper.UserIdRange> ranges = List.of(
+                new ProfileSweeper.UserIdRange(Long.MIN_VALUE, 7),
+                new ProfileSweeper.UserIdRange(7, 7),
+                new ProfileSweeper.UserIdRange(7, Long.MAX_VALUE));
+
+        assertThat(PartitionedSweep.decodeBounds(PartitionedSweep.encodeBounds(ranges))).isEqualTo(ranges);
+    }
+}
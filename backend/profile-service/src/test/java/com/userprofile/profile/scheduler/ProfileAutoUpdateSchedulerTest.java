@@ -0,0 +1,192 @@
+package com.userprofile.profile.scheduler;
+
+import com.userprofile.profile.analytics.UserBehaviorAggregateService;
+import com.userprofile.profile.analytics.UserBehaviorAnalytics;
+import com.userprofile.profile.event.UserEvent;
+import com.userprofile.profile.event.UserEventRepository;
+import com.userprofile.profile.repository.UserProfileRepository;
+import com.userprofile.profile.segmentation.UserSegmentationService;
+import com.userprofile.profile.service.UserProfileService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * ProfileAutoUpdateScheduler单元测试
+ */
+@ExtendWith(MockitoExtension.class)
+@DisplayName("ProfileAutoUpdateScheduler测试")
+class ProfileAutoUpdateSchedulerTest {
+
+    private static final String EVENT_UPDATE_JOB = "profile:update-from-events";
+
+    @Mock
+    private UserEventRepository eventRepository;
+
+    @Mock
+    private UserProfileRepository profileRepository;
+
+    @Mock
+    private UserProfileService profileService;
+
+    @Mock
+    private UserBehaviorAnalytics behaviorAnalytics;
+
+    @Mock
+    private UserBehaviorAggregateService aggregateService;
+
+    @Mock
+    private SchedulerCheckpointRepository checkpointRepository;
+
+    @Mock
+    private ProfileSweeper profileSweeper;
+
+    @Mock
+    private PartitionedSweep partitionedSweep;
+
+    @Mock
+    private UserSegmentationService segmentationService;
+
+    @InjectMocks
+    private ProfileAutoUpdateScheduler scheduler;
+
+    /**
+     * 每次markProcessed调用时传入的事件ID（调度器调用后会清空传入的列表，这里在调用时复制）
+     */
+    private final List<List<String>> ackCalls = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(scheduler, "eventBatchSize", 1000);
+        ReflectionTestUtils.setField(scheduler, "eventAckBatchSize", 5000);
+        lenient().when(eventRepository.markProcessed(anyCollection())).thenAnswer(inv -> {
+            Collection<String> ids = inv.getArgument(0);
+            ackCalls.add(new ArrayList<>(ids));
+            return (long) ids.size();
+        });
+        lenient().when(profileRepository.findByUserId(anyLong())).thenReturn(Optional.empty());
+    }
+
+    @Test
+    @DisplayName("事件更新 - 从断点续跑时只读取lastUserId之后的事件，跑完清除断点")
+    void updateProfilesFromEvents_ResumesAfterCheckpoint() {
+        SchedulerCheckpoint checkpoint = new SchedulerCheckpoint(EVENT_UPDATE_JOB, 100L, 300L,
+                LocalDateTime.now(), LocalDateTime.now());
+        when(checkpointRepository.findById(EVENT_UPDATE_JOB)).thenReturn(Optional.of(checkpoint));
+        when(eventRepository.streamUnprocessedEvents(100L))
+                .thenReturn(Stream.of(event("e1", 101L), event("e2", 102L)));
+
+        scheduler.updateProfilesFromEvents();
+
+        verify(eventRepository).streamUnprocessedEvents(100L);
+        verify(profileRepository, never()).findByUserId(100L);
+        verify(profileRepository).findByUserId(101L);
+        verify(profileRepository).findByUserId(102L);
+        assertThat(ackCalls).flatMap(ids -> ids).containsExactly("e1", "e2");
+        verify(checkpointRepository).deleteById(EVENT_UPDATE_JOB);
+    }
+
+    @Test
+    @DisplayName("事件更新 - 单个用户的事件跨多个批次时只更新一次画像，全部事件都被确认")
+    void updateProfilesFromEvents_UserSpanningSeveralBatches() {
+        ReflectionTestUtils.setField(scheduler, "eventBatchSize", 2);
+        when(checkpointRepository.findById(EVENT_UPDATE_JOB)).thenReturn(Optional.empty());
+        when(eventRepository.streamUnprocessedEvents(null)).thenReturn(Stream.of(
+                event("e1", 1L), event("e2", 1L), event("e3", 1L), event("e4", 1L), event("e5", 1L),
+                event("e6", 2L)));
+
+        scheduler.updateProfilesFromEvents();
+
+        verify(profileRepository, times(1)).findByUserId(1L);
+        verify(profileRepository, times(1)).findByUserId(2L);
+        assertThat(ackCalls).flatMap(ids -> ids).containsExactly("e1", "e2", "e3", "e4", "e5", "e6");
+    }
+
+    @Test
+    @DisplayName("事件更新 - 画像更新失败的用户，其事件（包括后续批次）都不会被标记为已处理")
+    void updateProfilesFromEvents_FailedUserEventsNotAcknowledged() {
+        ReflectionTestUtils.setField(scheduler, "eventBatchSize", 2);
+        when(checkpointRepository.findById(EVENT_UPDATE_JOB)).thenReturn(Optional.empty());
+        when(profileRepository.findByUserId(2L)).thenThrow(new IllegalStateException("mongo timeout"));
+        when(eventRepository.streamUnprocessedEvents(null)).thenReturn(Stream.of(
+                event("a1", 1L),
+                event("b1", 2L), event("b2", 2L), event("b3", 2L), event("b4", 2L), event("b5", 2L),
+                event("c1", 3L)));
+
+        scheduler.updateProfilesFromEvents();
+
+        verify(profileRepository, times(1)).findByUserId(2L);
+        assertThat(ackCalls).flatMap(ids -> ids).containsExactly("a1", "c1");
+        verify(checkpointRepository).deleteById(EVENT_UPDATE_JOB);
+    }
+
+    @Test
+    @DisplayName("事件更新 - 写断点前先确认断点之前用户的事件，断点不会越过未确认的事件")
+    void updateProfilesFromEvents_AcknowledgesBeforeCheckpoint() {
+        when(checkpointRepository.findById(EVENT_UPDATE_JOB)).thenReturn(Optional.empty());
+        when(eventRepository.streamUnprocessedEvents(null))
+                .thenReturn(LongStream.rangeClosed(1, 101).mapToObj(userId -> event("e" + userId, userId)));
+        List<Long> savedLastUserIds = new ArrayList<>();
+        List<Integer> ackedAtSave = new ArrayList<>();
+        when(checkpointRepository.save(any(SchedulerCheckpoint.class))).thenAnswer(inv -> {
+            SchedulerCheckpoint saved = inv.getArgument(0);
+            savedLastUserIds.add(saved.getLastUserId());
+            ackedAtSave.add(ackCalls.stream().mapToInt(List::size).sum());
+            return saved;
+        });
+
+        scheduler.updateProfilesFromEvents();
+
+        assertThat(savedLastUserIds).containsExactly(100L);
+        assertThat(ackedAtSave).containsExactly(100);
+        InOrder inOrder = inOrder(eventRepository, checkpointRepository);
+        inOrder.verify(eventRepository).markProcessed(anyCollection());
+        inOrder.verify(checkpointRepository).save(any(SchedulerCheckpoint.class));
+        inOrder.verify(eventRepository).markProcessed(anyCollection());
+        inOrder.verify(checkpointRepository).deleteById(EVENT_UPDATE_JOB);
+        assertThat(ackCalls.get(1)).containsExactly("e101");
+    }
+
+    @Test
+    @DisplayName("事件确认 - 跨用户累积到event-ack-batch-size时批量标记，剩余的在结束时一次标记")
+    void updateProfilesFromEvents_FlushesAcksAtThreshold() {
+        ReflectionTestUtils.setField(scheduler, "eventAckBatchSize", 3);
+        when(checkpointRepository.findById(EVENT_UPDATE_JOB)).thenReturn(Optional.empty());
+        when(eventRepository.streamUnprocessedEvents(null)).thenReturn(Stream.of(
+                event("a1", 1L), event("a2", 1L),
+                event("b1", 2L), event("b2", 2L),
+                event("c1", 3L)));
+
+        scheduler.updateProfilesFromEvents();
+
+        assertThat(ackCalls).containsExactly(List.of("a1", "a2", "b1", "b2"), List.of("c1"));
+        verify(eventRepository, times(2)).markProcessed(anyCollection());
+    }
+
+    private static UserEvent event(String id, Long userId) {
+        UserEvent event = new UserEvent();
+        event.setId(id);
+        event.setUserId(userId);
+        event.setEventType(UserEvent.EventType.PRODUCT_VIEW);
+        event.setEventTime(LocalDateTime.now());
+        return event;
+    }
+}
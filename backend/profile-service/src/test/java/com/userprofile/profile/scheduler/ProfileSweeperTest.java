@@ -0,0 +1,161 @@
+package com.userprofile.profile.scheduler;
+
+import com.userprofile.profile.repository.ProfileScoreView;
+import com.userprofile.profile.repository.UserProfileRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * ProfileSweeper单元测试
+ */
+@ExtendWith(MockitoExtension.class)
+@DisplayName("ProfileSweeper测试")
+class ProfileSweeperTest {
+
+    private static final String JOB = "profile:test-job";
+
+    @Mock
+    private UserProfileRepository profileRepository;
+
+    @Mock
+    private SchedulerCheckpointRepository checkpointRepository;
+
+    private ProfileSweeper sweeper;
+
+    @BeforeEach
+    void setUp() {
+        sweeper = new ProfileSweeper(profileRepository, checkpointRepository, 2, 4);
+    }
+
+    @AfterEach
+    void tearDown() {
+        sweeper.shutdown();
+    }
+
+    @Test
+    @DisplayName("键集分页 - 按上一页最后的userId翻页，单个用户失败不影响其他用户")
+    void sweep_KeysetPagesAndIsolatesFailures() {
+        stubPage(Long.MIN_VALUE, 1L, 2L);
+        stubPage(2L, 3L, 4L);
+        stubPage(4L, 5L);
+        Set<Long> visited = ConcurrentHashMap.newKeySet();
+
+        ProfileSweeper.SweepResult result = sweeper.sweep(JOB, view -> {
+            if (view.userId() == 3L) {
+                throw new IllegalStateException("boom");
+            }
+            visited.add(view.userId());
+        });
+
+        assertThat(visited).containsExactlyInAnyOrder(1L, 2L, 4L, 5L);
+        assertThat(result.processed()).isEqualTo(5);
+        assertThat(result.failed()).isEqualTo(1);
+        assertThat(result.completed()).isTrue();
+        verifyNoInteractions(checkpointRepository);
+    }
+
+    @Test
+    @DisplayName("断点续跑 - 从断点之后继续，完整跑完后清除断点")
+    void sweepResumable_ResumesFromCheckpoint() {
+        when(checkpointRepository.findById(JOB)).thenReturn(Optional.of(
+                new SchedulerCheckpoint(JOB, 2L, 2L, LocalDateTime.now(), LocalDateTime.now())));
+        stubPage(2L, 3L);
+        Set<Long> visited = ConcurrentHashMap.newKeySet();
+
+        ProfileSweeper.SweepResult result = sweeper.sweepResumable(JOB, Duration.ofMinutes(1),
+                view -> visited.add(view.userId()));
+
+        assertThat(visited).containsExactly(3L);
+        assertThat(result.completed()).isTrue();
+        verify(checkpointRepository).save(argThat(c -> c.getLastUserId() == 3L && c.getProcessedCount() == 3L));
+        verify(checkpointRepository).deleteById(JOB);
+        verify(profileRepository, never()).findByUserIdGreaterThanOrderByUserIdAsc(eq(Long.MIN_VALUE), any());
+    }
+
+    @Test
+    @DisplayName("时间预算 - 超出预算时在页边界暂停并保留断点")
+    void sweepResumable_StopsWhenBudgetExhausted() {
+        when(checkpointRepository.findById(JOB)).thenReturn(Optional.empty());
+
+        ProfileSweeper.SweepResult result = sweeper.sweepResumable(JOB, Duration.ZERO, view -> { });
+
+        assertThat(result.completed()).isFalse();
+        assertThat(result.processed()).isZero();
+        verify(checkpointRepository, never()).deleteById(any());
+        verifyNoInteractions(profileRepository);
+    }
+
+    @Test
+    @DisplayName("分区区间 - 按用户数切成首尾相接的连续区间，从上一个分割点跳到下一个")
+    void partitionRanges_SplitsByRank() {
+        // userId为10、20、…、100共10个用户，切成3个区间：排名3和6的userId（40、70）作为分割点
+        when(profileRepository.count()).thenReturn(10L);
+        when(profileRepository.findUserIdPageAfter(Long.MIN_VALUE, PageRequest.of(3, 1)))
+                .thenReturn(List.of(new ProfileScoreView(40L, null)));
+        when(profileRepository.findUserIdPageAfter(40L, PageRequest.of(2, 1)))
+                .thenReturn(List.of(new ProfileScoreView(70L, null)));
+
+        assertThat(sweeper.partitionRanges(3)).containsExactly(
+                new ProfileSweeper.UserIdRange(Long.MIN_VALUE, 40L),
+                new ProfileSweeper.UserIdRange(40L, 70L),
+                new ProfileSweeper.UserIdRange(70L, Long.MAX_VALUE));
+    }
+
+    @Test
+    @DisplayName("分区区间 - 用户数少于区间数时多出的区间为空，仍覆盖全部userId")
+    void partitionRanges_FewerUsersThanPartitions() {
+        when(profileRepository.count()).thenReturn(1L);
+        when(profileRepository.findUserIdPageAfter(Long.MIN_VALUE, PageRequest.of(0, 1)))
+                .thenReturn(List.of(new ProfileScoreView(5L, null)));
+
+        assertThat(sweeper.partitionRanges(3)).containsExactly(
+                new ProfileSweeper.UserIdRange(Long.MIN_VALUE, 5L),
+                new ProfileSweeper.UserIdRange(5L, 5L),
+                new ProfileSweeper.UserIdRange(5L, Long.MAX_VALUE));
+        verify(profileRepository, times(1)).findUserIdPageAfter(any(), any());
+    }
+
+    @Test
+    @DisplayName("区间遍历 - 断点落在区间之前时从区间起点读取，只读取区间内的用户")
+    void sweepPartition_ReadsWithinRange() {
+        when(checkpointRepository.findById(JOB)).thenReturn(Optional.empty());
+        when(profileRepository.findScoreViewPageInRange(eq(40L), eq(70L), any(Pageable.class)))
+                .thenReturn(List.of(new ProfileScoreView(50L, 1.0)));
+        Set<Long> visited = ConcurrentHashMap.newKeySet();
+
+        ProfileSweeper.SweepResult result = sweeper.sweepPartition(JOB, new ProfileSweeper.UserIdRange(40L, 70L),
+                Duration.ofMinutes(1), view -> visited.add(view.userId()));
+
+        assertThat(visited).containsExactly(50L);
+        assertThat(result.completed()).isTrue();
+        verify(checkpointRepository).deleteById(JOB);
+    }
+
+    private void stubPage(long after, Long... userIds) {
+        List<ProfileScoreView> page = Arrays.stream(userIds)
+                .map(id -> new ProfileScoreView(id, 50.0))
+                .toList();
+        when(profileRepository.findByUserIdGreaterThanOrderByUserIdAsc(eq(after), any(Pageable.class)))
+                .thenReturn(page);
+    }
+}
@@ -0,0 +1,122 @@
+package com.userprofile.profile.segmentation;
+
+import com.userprofile.profile.entity.UserProfile;
+import com.userprofile.profile.event.ProfileChangedEvent;
+import com.userprofile.profile.segmentation.UserSegment.SegmentCondition.Operator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.roaringbitmap.longlong.Roaring64NavigableMap;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.util.List;
+import java.util.OptionalLong;
+import java.util.function.Predicate;
+
+import static com.userprofile.profile.segmentation.SegmentConditionCompilerTest.condition;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * DynamicSegmentMaintainer单元测试
+ */
+@ExtendWith(MockitoExtension.class)
+@DisplayName("DynamicSegmentMaintainer测试")
+class DynamicSegmentMaintainerTest {
+
+    @Mock
+    private UserSegmentRepository segmentRepository;
+
+    @Mock
+    private SegmentMembershipStore membershipStore;
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @InjectMocks
+    private DynamicSegmentMaintainer maintainer;
+
+    /**
+     * 模拟GridFS中的成员位图
+     */
+    private final Roaring64NavigableMap stored = Roaring64NavigableMap.bitmapOf(1L, 2L);
+
+    @BeforeEach
+    void setUp() {
+        UserSegment highScore = new UserSegment();
+        highScore.setId("high");
+        highScore.setName("高分用户");
+        highScore.setConditions(List.of(condition("profileScore", Operator.GREATER_OR_EQUAL, 80, null)));
+        when(segmentRepository.findByTypeAndActive(UserSegment.SegmentType.DYNAMIC, true))
+                .thenReturn(List.of(highScore));
+        maintainer.reloadDefinitions();
+    }
+
+    @Test
+    @DisplayName("画像变更 - 只评估变更的用户，增量合并后一次写入并更新用户数")
+    void appliesDeltasForChangedProfiles() {
+        stubStoreUpdate();
+
+        maintainer.onProfileChanged(ProfileChangedEvent.updated(profile(3L, 90.0)));
+        maintainer.onProfileChanged(ProfileChangedEvent.updated(profile(1L, 50.0)));
+        maintainer.onProfileChanged(ProfileChangedEvent.updated(profile(3L, 95.0)));
+        maintainer.onProfileChanged(ProfileChangedEvent.deleted(2L));
+        maintainer.flush();
+
+        assertThat(stored.toArray()).containsExactly(3L);
+        verify(membershipStore, times(1)).update(eq("high"), any());
+        verify(mongoTemplate).updateFirst(any(Query.class), any(Update.class), eq(UserSegment.class));
+        verify(segmentRepository, never()).findAll();
+    }
+
+    @Test
+    @DisplayName("画像变更 - 成员没有变化时不更新分群文档")
+    void skipsUnchangedMembership() {
+        stubStoreUpdate();
+
+        maintainer.onProfileChanged(ProfileChangedEvent.updated(profile(1L, 85.0)));
+        maintainer.onProfileChanged(ProfileChangedEvent.updated(profile(5L, 10.0)));
+        maintainer.flush();
+
+        assertThat(stored.toArray()).containsExactly(1L, 2L);
+        verifyNoInteractions(mongoTemplate);
+    }
+
+    @Test
+    @DisplayName("写入失败 - 增量放回队列，与之后的变更合并后重试，以最后一次评估为准")
+    void requeuesFailedDeltas() {
+        when(membershipStore.update(eq("high"), any())).thenThrow(new IllegalStateException("GridFS不可用"));
+        maintainer.onProfileChanged(ProfileChangedEvent.updated(profile(3L, 90.0)));
+        maintainer.onProfileChanged(ProfileChangedEvent.updated(profile(4L, 90.0)));
+        maintainer.flush();
+
+        reset(membershipStore);
+        stubStoreUpdate();
+        maintainer.onProfileChanged(ProfileChangedEvent.updated(profile(4L, 30.0)));
+        maintainer.flush();
+
+        assertThat(stored.toArray()).containsExactly(1L, 2L, 3L);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void stubStoreUpdate() {
+        when(membershipStore.update(eq("high"), any())).thenAnswer(inv -> {
+            Predicate<Roaring64NavigableMap> mutation = inv.getArgument(1);
+            return mutation.test(stored) ? OptionalLong.of(stored.getLongCardinality()) : OptionalLong.empty();
+        });
+    }
+
+    private static UserProfile profile(Long userId, Double score) {
+        UserProfile profile = new UserProfile();
+        profile.setUserId(userId);
+        profile.setProfileScore(score);
+        return profile;
+    }
+}
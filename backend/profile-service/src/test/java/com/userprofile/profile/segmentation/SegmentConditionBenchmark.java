@@ -0,0 +1,156 @@
+package com.userprofile.profile.segmentation;
+
+import com.userprofile.profile.entity.UserProfile;
+import com.userprofile.profile.segmentation.UserSegment.SegmentCondition;
+import com.userprofile.profile.segmentation.UserSegment.SegmentCondition.Operator;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * 分群条件评估基准测试：原解释执行 vs 编译后的谓词树
+ *
+ * <p>运行方式（不随单元测试执行）：
+ * <pre>
+ * mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt -Dmdep.includeScope=test
+ * java -cp target/test-classes:target/classes:$(cat target/cp.txt) \
+ *     com.userprofile.profile.segmentation.SegmentConditionBenchmark
+ * </pre>
+ * 已启用GC profiler，gc.alloc.rate.norm为每次操作（评估全部画像一遍）的分配字节数
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SegmentConditionBenchmark {
+
+    private static final int PROFILES = 100_000;
+
+    private UserProfile[] profiles;
+    private List<SegmentCondition> conditions;
+    private Predicate<UserProfile> compiled;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        profiles = new UserProfile[PROFILES];
+        for (int i = 0; i < PROFILES; i++) {
+            UserProfile profile = new UserProfile();
+            profile.setUserId((long) i);
+            profile.setUsername((random.nextBoolean() ? "user_" : "guest_") + i);
+            profile.setProfileScore(random.nextInt(10) == 0 ? null : random.nextDouble() * 100);
+            profiles[i] = profile;
+        }
+
+        // (profileScore >= 60 AND username包含user) OR profileScore < 10
+        conditions = List.of(
+                new SegmentCondition("profileScore", Operator.GREATER_OR_EQUAL, 60, "AND"),
+                new SegmentCondition("username", Operator.CONTAINS, "user", "OR"),
+                new SegmentCondition("profileScore", Operator.LESS_THAN, 10, null));
+        compiled = SegmentConditionCompiler.compile(conditions);
+    }
+
+    @Benchmark
+    public int interpreted() {
+        int matched = 0;
+        for (UserProfile profile : profiles) {
+            if (LegacyInterpreter.matchesConditions(profile, conditions)) {
+                matched++;
+            }
+        }
+        return matched;
+    }
+
+    @Benchmark
+    public int compiled() {
+        int matched = 0;
+        for (UserProfile profile : profiles) {
+            if (compiled.test(profile)) {
+                matched++;
+            }
+        }
+        return matched;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(SegmentConditionBenchmark.class.getSimpleName())
+                .addProfiler("gc")
+                .build();
+        new Runner(options).run();
+    }
+
+    /**
+     * 编译器引入前UserSegmentationService中的解释执行逻辑，作为对照
+     */
+    static final class LegacyInterpreter {
+
+        static boolean matchesConditions(UserProfile profile, List<SegmentCondition> conditions) {
+            if (conditions == null || conditions.isEmpty()) {
+                return true;
+            }
+
+            boolean result = true;
+            String currentLogic = "AND";
+
+            for (SegmentCondition condition : conditions) {
+                boolean conditionMet = evaluateCondition(profile, condition);
+
+                if ("OR".equals(currentLogic)) {
+                    result = result || conditionMet;
+                } else {
+                    result = result && conditionMet;
+                }
+
+                currentLogic = condition.getLogic() != null ? condition.getLogic() : "AND";
+            }
+
+            return result;
+        }
+
+        private static boolean evaluateCondition(UserProfile profile, SegmentCondition condition) {
+            Object fieldValue = getFieldValue(profile, condition.getField());
+
+            if (fieldValue == null) {
+                return condition.getOperator() == Operator.IS_NULL;
+            }
+
+            return switch (condition.getOperator()) {
+                case EQUALS -> fieldValue.equals(condition.getValue());
+                case NOT_EQUALS -> !fieldValue.equals(condition.getValue());
+                case GREATER_THAN -> compareNumeric(fieldValue, condition.getValue()) > 0;
+                case LESS_THAN -> compareNumeric(fieldValue, condition.getValue()) < 0;
+                case GREATER_OR_EQUAL -> compareNumeric(fieldValue, condition.getValue()) >= 0;
+                case LESS_OR_EQUAL -> compareNumeric(fieldValue, condition.getValue()) <= 0;
+                case CONTAINS -> fieldValue.toString().contains(condition.getValue().toString());
+                case NOT_CONTAINS -> !fieldValue.toString().contains(condition.getValue().toString());
+                case IS_NOT_NULL -> true;
+                default -> false;
+            };
+        }
+
+        private static Object getFieldValue(UserProfile profile, String field) {
+            return switch (field) {
+                case "profileScore" -> profile.getProfileScore();
+                case "userId" -> profile.getUserId();
+                case "username" -> profile.getUsername();
+                default -> null;
+            };
+        }
+
+        private static int compareNumeric(Object value1, Object value2) {
+            double d1 = ((Number) value1).doubleValue();
+            double d2 = ((Number) value2).doubleValue();
+            return Double.compare(d1, d2);
+        }
+    }
+}
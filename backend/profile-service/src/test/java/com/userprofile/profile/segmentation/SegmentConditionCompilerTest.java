@@ -0,0 +1,117 @@
+package com.userprofile.profile.segmentation;
+
+import com.userprofile.common.exception.BusinessException;
+import com.userprofile.profile.entity.UserProfile;
+import com.userprofile.profile.segmentation.UserSegment.SegmentCondition;
+import com.userprofile.profile.segmentation.UserSegment.SegmentCondition.Operator;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.function.Predicate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * SegmentConditionCompiler单元测试
+ */
+@DisplayName("SegmentConditionCompiler测试")
+class SegmentConditionCompilerTest {
+
+    @Test
+    @DisplayName("数值条件 - 整数常量与Double字段按数值比较，支持IN/NOT_IN/BETWEEN")
+    void numberOperators() {
+        UserProfile profile = profile(80.0, "vip", List.of("奶粉", "纸尿裤"));
+
+        assertThat(matches(profile, condition("profileScore", Operator.EQUALS, 80, null))).isTrue();
+        assertThat(matches(profile, condition("profileScore", Operator.IN, List.of(60, 80), null))).isTrue();
+        assertThat(matches(profile, condition("profileScore", Operator.NOT_IN, "60,70", null))).isTrue();
+        assertThat(matches(profile, condition("profileScore", Operator.BETWEEN, List.of(60, 80), null))).isTrue();
+        assertThat(matches(profile, condition("profileScore", Operator.BETWEEN, List.of(81, 90), null))).isFalse();
+    }
+
+    @Test
+    @DisplayName("字符串与列表条件 - CONTAINS子串匹配，列表字段匹配任一元素")
+    void stringAndListOperators() {
+        UserProfile profile = profile(50.0, "vip_user", List.of("奶粉", "纸尿裤"));
+
+        assertThat(matches(profile, condition("username", Operator.CONTAINS, "vip", null))).isTrue();
+        assertThat(matches(profile, condition("username", Operator.IN, List.of("a", "vip_user"), null))).isTrue();
+        assertThat(matches(profile, condition("productCategories", Operator.CONTAINS, "奶粉", null))).isTrue();
+        assertThat(matches(profile, condition("productCategories", Operator.IN, List.of("辅食", "纸尿裤"), null))).isTrue();
+        assertThat(matches(profile, condition("productCategories", Operator.NOT_IN, List.of("辅食"), null))).isTrue();
+    }
+
+    @Test
+    @DisplayName("空值 - 除IS_NULL外均不匹配")
+    void nullField() {
+        UserProfile profile = profile(null, null, null);
+
+        assertThat(matches(profile, condition("profileScore", Operator.IS_NULL, null, null))).isTrue();
+        assertThat(matches(profile, condition("profileScore", Operator.NOT_EQUALS, 1, null))).isFalse();
+        assertThat(matches(profile, condition("loyaltyScore", Operator.NOT_IN, List.of(1), null))).isFalse();
+        assertThat(matches(profile, condition("productCategories", Operator.IS_NULL, null, null))).isTrue();
+    }
+
+    @Test
+    @DisplayName("条件组合 - 按顺序左结合，logic决定与下一个条件的关系")
+    void leftAssociativeLogic() {
+        UserProfile profile = profile(30.0, "a", null);
+        // (score >= 80 OR username == a) AND score < 20 -> false
+        Predicate<UserProfile> predicate = SegmentConditionCompiler.compile(List.of(
+                condition("profileScore", Operator.GREATER_OR_EQUAL, 80, "OR"),
+                condition("username", Operator.EQUALS, "a", "AND"),
+                condition("profileScore", Operator.LESS_THAN, 20, null)));
+
+        assertThat(predicate.test(profile)).isFalse();
+        assertThat(SegmentConditionCompiler.compile(List.of(
+                condition("profileScore", Operator.GREATER_OR_EQUAL, 80, "OR"),
+                condition("username", Operator.EQUALS, "a", null))).test(profile)).isTrue();
+    }
+
+    @Test
+    @DisplayName("编译校验 - 未知字段、类型不匹配和非法常量在编译时拒绝")
+    void compileErrors() {
+        assertThatThrownBy(() -> SegmentConditionCompiler.compile(List.of(condition("password", Operator.EQUALS, "x", null))))
+                .isInstanceOf(BusinessException.class);
+        assertThatThrownBy(() -> SegmentConditionCompiler.compile(List.of(condition("username", Operator.GREATER_THAN, 1, null))))
+                .isInstanceOf(BusinessException.class);
+        assertThatThrownBy(() -> SegmentConditionCompiler.compile(List.of(condition("profileScore", Operator.EQUALS, "abc", null))))
+                .isInstanceOf(BusinessException.class);
+        assertThatThrownBy(() -> SegmentConditionCompiler.compile(List.of(condition("profileScore", Operator.BETWEEN, List.of(9, 1), null))))
+                .isInstanceOf(BusinessException.class);
+    }
+
+    @Test
+    @DisplayName("派生字段 - scoreLevel按profileScore计算，读取时只需要存储字段")
+    void derivedField() {
+        UserProfile profile = profile(85.0, "vip", null);
+
+        assertThat(matches(profile, condition("scoreLevel", Operator.EQUALS, "优秀", null))).isTrue();
+        assertThat(matches(profile, condition("scoreLevel", Operator.IN, "良好,一般", null))).isFalse();
+        assertThat(SegmentField.SCORE_LEVEL.getPath()).isNull();
+        assertThat(SegmentField.storedPaths()).contains("profileScore").doesNotContainNull();
+    }
+
+    private static boolean matches(UserProfile profile, SegmentCondition condition) {
+        return SegmentConditionCompiler.compile(List.of(condition)).test(profile);
+    }
+
+    static SegmentCondition condition(String field, Operator operator, Object value, String logic) {
+        return new SegmentCondition(field, operator, value, logic);
+    }
+
+    static UserProfile profile(Double score, String username, List<String> categories) {
+        UserProfile profile = new UserProfile();
+        profile.setUserId(1L);
+        profile.setUsername(username);
+        profile.setProfileScore(score);
+        if (categories != null) {
+            UserProfile.DigitalBehavior behavior = new UserProfile.DigitalBehavior();
+            behavior.setProductCategories(categories);
+            profile.setDigitalBehavior(behavior);
+        }
+        return profile;
+    }
+}
@@ -0,0 +1,68 @@
+package com.userprofile.profile.segmentation;
+
+import com.userprofile.profile.segmentation.SegmentCriteriaTranslator.Translation;
+import com.userprofile.profile.segmentation.UserSegment.SegmentCondition.Operator;
+import org.bson.Document;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static com.userprofile.profile.segmentation.SegmentConditionCompilerTest.condition;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * SegmentCriteriaTranslator单元测试
+ */
+@DisplayName("SegmentCriteriaTranslator测试")
+class SegmentCriteriaTranslatorTest {
+
+    @Test
+    @DisplayName("单个条件 - 常量按字段类型解析后下推，否定条件要求字段非空")
+    void singleCondition() {
+        Translation gte = SegmentCriteriaTranslator.translate(List.of(
+                condition("profileScore", Operator.GREATER_OR_EQUAL, "80", null)));
+        Translation notContains = SegmentCriteriaTranslator.translate(List.of(
+                condition("productCategories", Operator.NOT_CONTAINS, "奶粉", null)));
+
+        assertThat(gte.exact()).isTrue();
+        assertThat(gte.criteria().getCriteriaObject())
+                .isEqualTo(new Document("profileScore", new Document("$gte", 80.0)));
+        assertThat(notContains.criteria().getCriteriaObject()).isEqualTo(new Document("$and", List.of(
+                new Document("digitalBehavior.productCategories", new Document("$ne", "奶粉")),
+                new Document("digitalBehavior.productCategories.0", new Document("$exists", true)))));
+    }
+
+    @Test
+    @DisplayName("组合条件 - 按顺序左结合，A OR B AND C 即 (A OR B) AND C")
+    void leftAssociativeChaining() {
+        Translation translation = SegmentCriteriaTranslator.translate(List.of(
+                condition("profileScore", Operator.GREATER_THAN, 80, "OR"),
+                condition("username", Operator.EQUALS, "vip", "AND"),
+                condition("consumptionLevel", Operator.IS_NULL, null, null)));
+
+        assertThat(translation.exact()).isTrue();
+        assertThat(translation.criteria().getCriteriaObject()).isEqualTo(new Document("$and", List.of(
+                new Document("$or", List.of(
+                        new Document("profileScore", new Document("$gt", 80.0)),
+                        new Document("username", "vip"))),
+                new Document("valueAssessment.consumptionLevel", null))));
+    }
+
+    @Test
+    @DisplayName("派生字段 - AND中省略得到超集，OR中整个条件无法下推")
+    void derivedFieldFallsBack() {
+        Translation and = SegmentCriteriaTranslator.translate(List.of(
+                condition("profileScore", Operator.GREATER_THAN, 60, null),
+                condition("scoreLevel", Operator.EQUALS, "优秀", null)));
+        Translation or = SegmentCriteriaTranslator.translate(List.of(
+                condition("profileScore", Operator.GREATER_THAN, 60, "OR"),
+                condition("scoreLevel", Operator.EQUALS, "优秀", null)));
+
+        assertThat(and.exact()).isFalse();
+        assertThat(and.criteria().getCriteriaObject())
+                .isEqualTo(new Document("profileScore", new Document("$gt", 60.0)));
+        assertThat(or.exact()).isFalse();
+        assertThat(or.criteria()).isNull();
+    }
+}
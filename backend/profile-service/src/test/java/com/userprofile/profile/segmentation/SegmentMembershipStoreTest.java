@@ -0,0 +1,32 @@
+package com.userprofile.profile.segmentation;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.roaringbitmap.longlong.Roaring64NavigableMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * SegmentMembershipStore单元测试
+ */
+@DisplayName("SegmentMembershipStore测试")
+class SegmentMembershipStoreTest {
+
+    @Test
+    @DisplayName("全量对账 - 以全量结果为准，遍历期间被增量修改的用户保留当前值")
+    void reconcileKeepsChangesMadeDuringSweep() {
+        // 遍历开始时成员为1、2、3；遍历期间增量维护加入了4、移除了3
+        Roaring64NavigableMap baseline = Roaring64NavigableMap.bitmapOf(1L, 2L, 3L);
+        Roaring64NavigableMap members = Roaring64NavigableMap.bitmapOf(1L, 2L, 4L);
+        // 全量结果基于遍历时读到的画像：1已不满足、5漏了增量、3和4读到的是旧画像
+        Roaring64NavigableMap computed = Roaring64NavigableMap.bitmapOf(2L, 3L, 5L);
+
+        SegmentMembershipStore.Reconciliation reconciliation =
+                SegmentMembershipStore.applyReconciliation(members, baseline, computed);
+
+        assertThat(members.toArray()).containsExactly(2L, 4L, 5L);
+        assertThat(reconciliation.cardinality()).isEqualTo(3);
+        assertThat(reconciliation.corrected()).isEqualTo(2);
+        assertThat(reconciliation.retained()).isEqualTo(2);
+    }
+}
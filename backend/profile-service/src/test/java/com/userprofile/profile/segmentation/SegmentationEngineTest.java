@@ -0,0 +1,126 @@
+package com.userprofile.profile.segmentation;
+
+import com.userprofile.profile.analytics.BehaviorInsights;
+import com.userprofile.profile.analytics.UserBehaviorAnalytics;
+import com.userprofile.profile.entity.UserProfile;
+import com.userprofile.profile.scheduler.ProfileSweeper;
+import com.userprofile.profile.segmentation.UserSegment.SegmentCondition.Operator;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import static com.userprofile.profile.segmentation.SegmentConditionCompilerTest.condition;
+import static com.userprofile.profile.segmentation.SegmentConditionCompilerTest.profile;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * SegmentationEngine单元测试
+ */
+@ExtendWith(MockitoExtension.class)
+@DisplayName("SegmentationEngine测试")
+class SegmentationEngineTest {
+
+    @Mock
+    private ProfileSweeper profileSweeper;
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @Mock
+    private UserBehaviorAnalytics behaviorAnalytics;
+
+    @InjectMocks
+    private SegmentationEngine engine;
+
+    @Test
+    @DisplayName("共享条件 - 多个分群中相同的条件只编译一次，每个画像只评估一次")
+    void sharedConditionsEvaluatedOnce() {
+        SegmentationEngine.SharedConditions shared = new SegmentationEngine.SharedConditions();
+        Predicate<ProfileEvaluation> highScoreVip = shared.compile(List.of(
+                condition("profileScore", Operator.GREATER_OR_EQUAL, 80, null),
+                condition("username", Operator.CONTAINS, "vip", null)));
+        Predicate<ProfileEvaluation> highScoreMilk = shared.compile(List.of(
+                condition("profileScore", Operator.GREATER_OR_EQUAL, 80, null),
+                condition("productCategories", Operator.CONTAINS, "奶粉", null)));
+
+        AtomicInteger evaluations = new AtomicInteger();
+        List<Predicate<UserProfile>> counting = new ArrayList<>();
+        shared.conditions().forEach(c -> counting.add(p -> {
+            evaluations.incrementAndGet();
+            return c.test(p);
+        }));
+        ProfileEvaluation evaluation = new ProfileEvaluation(
+                profile(90.0, "vip_user", List.of("奶粉")), counting, userId -> null);
+
+        assertThat(highScoreVip.test(evaluation)).isTrue();
+        assertThat(highScoreMilk.test(evaluation)).isTrue();
+        assertThat(shared.conditions()).hasSize(3);
+        assertThat(evaluations).hasValue(3);
+    }
+
+    @Test
+    @DisplayName("单次遍历 - 动态分群与自动分群一起评估，行为聚合每个用户只读取一次")
+    @SuppressWarnings("unchecked")
+    void evaluatesAllSegmentsInOnePass() {
+        UserProfile high = profile(90.0, "a", null);
+        high.setUserId(1L);
+        UserProfile low = profile(30.0, "b", null);
+        low.setUserId(2L);
+        when(mongoTemplate.find(any(Query.class), eq(UserProfile.class))).thenReturn(List.of(high, low));
+        when(profileSweeper.sweep(anyString(), any(ProfileSweeper.PageLoader.class), any(), any(Consumer.class)))
+                .thenAnswer(inv -> {
+                    ProfileSweeper.PageLoader<UserProfile> loader = inv.getArgument(1);
+                    Consumer<UserProfile> action = inv.getArgument(3);
+                    loader.load(Long.MIN_VALUE).forEach(action);
+                    return new ProfileSweeper.SweepResult(2, 0, true, 1);
+                });
+        when(behaviorAnalytics.analyzeSegmentationInsights(anyLong())).thenAnswer(inv -> BehaviorInsights.builder()
+                .rfm(new BehaviorInsights.Rfm(0, 0, 0, 0, inv.getArgument(0).equals(1L) ? "重要价值客户" : "低价值客户",
+                        null, 0, 0.0))
+                .churnRisk(new BehaviorInsights.ChurnRisk("低", 0, List.of(), null, 0.0))
+                .build());
+
+        UserSegment excellent = new UserSegment();
+        excellent.setId("excellent");
+        excellent.setConditions(List.of(condition("scoreLevel", Operator.EQUALS, "优秀", null)));
+
+        SegmentationEngine.PassResult result = engine.evaluate(List.of(excellent),
+                EnumSet.of(AutoSegmentation.RFM, AutoSegmentation.CHURN_RISK));
+
+        assertThat(result.dynamicMembers().get("excellent").toArray()).containsExactly(1L);
+        assertThat(result.autoMembers().get(AutoSegmentation.RFM).get("重要价值客户").toArray()).containsExactly(1L);
+        assertThat(result.autoMembers().get(AutoSegmentation.CHURN_RISK).get("低流失风险").toArray())
+                .containsExactly(1L, 2L);
+        verify(profileSweeper, times(1)).sweep(anyString(), any(ProfileSweeper.PageLoader.class), any(),
+                any(Consumer.class));
+        verify(behaviorAnalytics, times(2)).analyzeSegmentationInsights(anyLong());
+
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).find(query.capture(), eq(UserProfile.class));
+        assertThat(query.getValue().getFieldsObject().keySet())
+                .containsExactlyInAnyOrderElementsOf(
+                        SegmentationEngine.projection(true, EnumSet.noneOf(AutoSegmentation.class)));
+    }
+
+    @Test
+    @DisplayName("投影 - 只有评分分群时只读取userId和profileScore")
+    void projectionForScoreOnly() {
+        assertThat(SegmentationEngine.projection(false, EnumSet.of(AutoSegmentation.PROFILE_SCORE)))
+                .containsExactly("userId", "profileScore");
+    }
+}
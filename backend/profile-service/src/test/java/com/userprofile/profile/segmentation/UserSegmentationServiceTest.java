@@ -0,0 +1,223 @@
+package com.userprofile.profile.segmentation;
+
+import com.userprofile.profile.entity.UserProfile;
+import com.userprofile.profile.scheduler.ProfileSweeper;
+import org.bson.Document;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.roaringbitmap.longlong.Roaring64NavigableMap;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.util.*;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * UserSegmentationService单元测试
+ */
+@ExtendWith(MockitoExtension.class)
+@DisplayName("UserSegmentationService测试")
+class UserSegmentationServiceTest {
+
+    @Mock
+    private UserSegmentRepository segmentRepository;
+
+    @Mock
+    private SegmentationEngine segmentationEngine;
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @Mock
+    private SegmentMembershipStore membershipStore;
+
+    @Mock
+    private DynamicSegmentMaintainer segmentMaintainer;
+
+    @InjectMocks
+    private UserSegmentationService segmentationService;
+
+    @Test
+    @DisplayName("评分分群 - 每个组保存为一个分群，成员写入位图存储")
+    void segmentByProfileScore_SavesGroups() {
+        Map<String, Roaring64NavigableMap> groups = new LinkedHashMap<>();
+        AutoSegmentation.PROFILE_SCORE.getGroups().forEach(group -> groups.put(group, new Roaring64NavigableMap()));
+        groups.get("高价值用户(80+)").addLong(1L);
+        groups.get("潜力用户(40-59)").addLong(2L);
+        groups.get("低活跃用户(<20)").addLong(3L);
+        when(segmentationEngine.evaluate(List.of(), EnumSet.of(AutoSegmentation.PROFILE_SCORE)))
+                .thenReturn(new SegmentationEngine.PassResult(Map.of(),
+                        Map.of(AutoSegmentation.PROFILE_SCORE, groups), null));
+        when(segmentRepository.save(any(UserSegment.class))).thenAnswer(inv -> {
+            UserSegment segment = inv.getArgument(0);
+            segment.setId(segment.getName());
+            return segment;
+        });
+
+        Map<String, UserSegment> segments = segmentationService.segmentByProfileScore();
+
+        assertThat(segments).hasSize(5);
+        assertThat(segments.get("高价值用户(80+)").getUserCount()).isEqualTo(1);
+        assertThat(segments.get("高价值用户(80+)").getUserIds()).isNull();
+        verify(membershipStore).save("评分-高价值用户(80+)", Roaring64NavigableMap.bitmapOf(1L));
+        verify(membershipStore).save("评分-潜力用户(40-59)", Roaring64NavigableMap.bitmapOf(2L));
+        verify(membershipStore).save("评分-低活跃用户(<20)", Roaring64NavigableMap.bitmapOf(3L));
+    }
+
+    @Test
+    @DisplayName("刷新动态分群 - 全部分群一次遍历评估并在锁内对账，条件无效的分群保持不变")
+    void refreshDynamicSegments_SinglePass() {
+        UserSegment valid = new UserSegment();
+        valid.setId("valid");
+        UserSegment invalid = new UserSegment();
+        invalid.setId("invalid");
+        List<UserSegment> dynamicSegments = List.of(valid, invalid);
+        Roaring64NavigableMap baseline = Roaring64NavigableMap.bitmapOf(7L, 9L);
+        Roaring64NavigableMap computed = Roaring64NavigableMap.bitmapOf(7L, 8L);
+        when(segmentRepository.findByTypeAndActive(UserSegment.SegmentType.DYNAMIC, true)).thenReturn(dynamicSegments);
+        when(membershipStore.load("valid")).thenReturn(Optional.of(baseline));
+        when(segmentationEngine.evaluate(dynamicSegments, Set.of())).thenReturn(new SegmentationEngine.PassResult(
+                Map.of("valid", computed), Map.of(), new ProfileSweeper.SweepResult(3, 0, true, 1)));
+        when(membershipStore.reconcile("valid", baseline, computed))
+                .thenReturn(new SegmentMembershipStore.Reconciliation(2, 2, 0));
+
+        segmentationService.refreshDynamicSegments();
+
+        verify(segmentationEngine, times(1)).evaluate(any(), any());
+        ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+        verify(mongoTemplate).updateFirst(any(Query.class), update.capture(), eq(UserSegment.class));
+        assertThat(update.getValue().getUpdateObject().get("$set", Document.class).get("userCount")).isEqualTo(2);
+        verify(membershipStore, never()).reconcile(eq("invalid"), any(), any());
+        verify(membershipStore, never()).save(any(), any());
+    }
+
+    @Test
+    @DisplayName("刷新动态分群 - 遍历未完成或有用户评估失败时不更新成员")
+    void refreshDynamicSegments_SkipsIncompleteSweep() {
+        UserSegment segment = new UserSegment();
+        segment.setId("dynamic");
+        List<UserSegment> dynamicSegments = List.of(segment);
+        when(segmentRepository.findByTypeAndActive(UserSegment.SegmentType.DYNAMIC, true)).thenReturn(dynamicSegments);
+        when(membershipStore.load("dynamic")).thenReturn(Optional.empty());
+        when(segmentationEngine.evaluate(dynamicSegments, Set.of())).thenReturn(new SegmentationEngine.PassResult(
+                Map.of("dynamic", Roaring64NavigableMap.bitmapOf(1L)), Map.of(),
+                new ProfileSweeper.SweepResult(10, 1, true, 1)));
+
+        segmentationService.refreshDynamicSegments();
+
+        verify(membershipStore, never()).reconcile(any(), any(), any());
+        verify(membershipStore, never()).save(any(), any());
+        verify(mongoTemplate, never()).updateFirst(any(Query.class), any(Update.class), eq(UserSegment.class));
+    }
+
+    @Test
+    @DisplayName("分群集合运算 - 交集与差集在位图上计算，不修改缓存的成员位图")
+    void combineSegments_OnBitmaps() {
+        Roaring64NavigableMap highRfm = Roaring64NavigableMap.bitmapOf(1L, 2L, 3L);
+        Roaring64NavigableMap highChurn = Roaring64NavigableMap.bitmapOf(2L, 3L, 4L);
+        when(membershipStore.load("rfm")).thenReturn(Optional.of(highRfm));
+        when(membershipStore.load("churn")).thenReturn(Optional.of(highChurn));
+
+        SegmentCombineRequest request = new SegmentCombineRequest();
+        request.setSegmentIds(List.of("rfm", "churn"));
+        request.setOperation(SegmentCombineRequest.SetOperation.INTERSECTION);
+        long intersection = segmentationService.countCombination(request);
+        request.setOperation(SegmentCombineRequest.SetOperation.DIFFERENCE);
+        long difference = segmentationService.countCombination(request);
+
+        assertThat(intersection).isEqualTo(2);
+        assertThat(difference).isEqualTo(1);
+        assertThat(highRfm.getLongCardinality()).isEqualTo(3);
+    }
+
+    @Test
+    @DisplayName("分群成员 - 旧数据首次读取时迁移到位图存储，按userId分页")
+    void getMembers_MigratesLegacyUserIds() {
+        UserSegment legacy = new UserSegment();
+        legacy.setId("legacy");
+        legacy.setUserIds(List.of(30L, 10L, 20L));
+        when(membershipStore.load("legacy")).thenReturn(Optional.empty());
+        when(segmentRepository.findById("legacy")).thenReturn(Optional.of(legacy));
+        when(segmentRepository.save(legacy)).thenReturn(legacy);
+
+        List<Long> page = segmentationService.getMemberPage("legacy", 10L, 1);
+
+        assertThat(page).containsExactly(20L);
+        assertThat(legacy.getUserIds()).isNull();
+        assertThat(legacy.getUserCount()).isEqualTo(3);
+        verify(membershipStore).save("legacy", Roaring64NavigableMap.bitmapOf(10L, 20L, 30L));
+    }
+
+    @Test
+    @DisplayName("分群成员 - 迁移时位图写入失败，旧数据保留在分群文档中")
+    void getMembers_MigrationKeepsLegacyUserIdsOnStoreFailure() {
+        UserSegment legacy = new UserSegment();
+        legacy.setId("legacy");
+        legacy.setUserIds(List.of(10L, 20L));
+        when(membershipStore.load("legacy")).thenReturn(Optional.empty());
+        when(segmentRepository.findById("legacy")).thenReturn(Optional.of(legacy));
+        doThrow(new IllegalStateException("gridfs down")).when(membershipStore).save(eq("legacy"), any());
+
+        assertThatThrownBy(() -> segmentationService.isMember("legacy", 10L))
+                .isInstanceOf(IllegalStateException.class);
+
+        assertThat(legacy.getUserIds()).containsExactly(10L, 20L);
+        verify(segmentRepository, never()).save(any(UserSegment.class));
+    }
+
+    @Test
+    @DisplayName("条件分群 - 条件可完全下推时只查询userId，不在JVM中过滤")
+    void executeSegmentation_PushesDownCriteria() {
+        UserProfile matched = new UserProfile();
+        matched.setUserId(1L);
+        when(mongoTemplate.stream(any(Query.class), eq(UserProfile.class))).thenReturn(Stream.of(matched));
+
+        List<Long> userIds = segmentationService.executeSegmentation(List.of(
+                new UserSegment.SegmentCondition("profileScore",
+                        UserSegment.SegmentCondition.Operator.GREATER_OR_EQUAL, 60, null)));
+
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).stream(query.capture(), eq(UserProfile.class));
+        assertThat(query.getValue().getQueryObject())
+                .isEqualTo(new Document("profileScore", new Document("$gte", 60.0)));
+        assertThat(query.getValue().getFieldsObject()).isEqualTo(new Document("userId", 1));
+        assertThat(userIds).containsExactly(1L);
+    }
+
+    @Test
+    @DisplayName("条件分群 - 包含派生字段时查询超集，再用编译后的谓词过滤")
+    void executeSegmentation_FiltersDerivedFieldInJvm() {
+        UserProfile high = new UserProfile();
+        high.setUserId(1L);
+        high.setProfileScore(85.0);
+        UserProfile low = new UserProfile();
+        low.setUserId(2L);
+        low.setProfileScore(30.0);
+        when(mongoTemplate.stream(any(Query.class), eq(UserProfile.class))).thenReturn(Stream.of(high, low));
+
+        List<Long> userIds = segmentationService.executeSegmentation(List.of(
+                new UserSegment.SegmentCondition("profileScore",
+                        UserSegment.SegmentCondition.Operator.IS_NOT_NULL, null, null),
+                new UserSegment.SegmentCondition("scoreLevel",
+                        UserSegment.SegmentCondition.Operator.EQUALS, "优秀", null)));
+
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).stream(query.capture(), eq(UserProfile.class));
+        assertThat(query.getValue().getQueryObject())
+                .isEqualTo(new Document("profileScore", new Document("$ne", null)));
+        assertThat(query.getValue().getFieldsObject()).containsKeys("userId", "profileScore");
+        assertThat(userIds).containsExactly(1L);
+    }
+}
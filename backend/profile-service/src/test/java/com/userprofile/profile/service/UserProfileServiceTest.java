@@ -1,9 +1,13 @@
 package com.userprofile.profile.service;
 
+import com.userprofile.common.exception.BusinessException;
+import com.userprofile.profile.config.TwoLevelCache;
 import com.userprofile.profile.dto.UserProfileDTO;
 import com.userprofile.profile.engine.ProfileCalculationEngine;
 import com.userprofile.profile.entity.UserProfile;
+import com.userprofile.profile.event.ProfileChangedEvent;
 import com.userprofile.profile.repository.UserProfileRepository;
+import org.bson.Document;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -12,6 +16,13 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import java.time.LocalDateTime;
 import java.util.*;
@@ -19,6 +30,7 @@ import java.util.*;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
 import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.Mockito.*;
 
@@ -35,6 +47,21 @@ class UserProfileServiceTest {
     @Mock
     private ProfileCalculationEngine calculationEngine;
 
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Mock
+    private CacheManager cacheManager;
+
+    @Mock
+    private TwoLevelCache profileCache;
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @Mock
+    private BulkOperations bulkOperations;
+
     @InjectMocks
     private UserProfileService profileService;
 
@@ -288,6 +315,77 @@ class UserProfileServiceTest {
         verify(profileRepository, times(1)).save(any(UserProfile.class));
     }
 
+    @Test
+    @DisplayName("批量重算评分 - 只对输入变化的画像发起一次无序bulk写，批量失效缓存并以写入后的画像发布变更")
+    void recalculateScores_BulkWritesChangedOnly() {
+        UserProfile unchanged = new UserProfile();
+        unchanged.setUserId(2L);
+        unchanged.setProfileScore(60.0);
+        unchanged.setScoreFingerprint("v1:same");
+        LocalDateTime readTime = LocalDateTime.of(2024, 1, 1, 8, 0);
+        testProfile.setUpdateTime(readTime);
+        when(profileRepository.findByUserIdIn(List.of(1L, 2L))).thenReturn(List.of(testProfile, unchanged));
+        when(calculationEngine.scoreFingerprint(testProfile)).thenReturn("v1:new");
+        when(calculationEngine.scoreFingerprint(unchanged)).thenReturn("v1:same");
+        when(calculationEngine.calculateProfileScore(testProfile)).thenReturn(77.0);
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, UserProfile.class)).thenReturn(bulkOperations);
+        when(cacheManager.getCache("userProfiles")).thenReturn(profileCache);
+        // 模拟条件写入匹配：重新读取到的画像带有本批写入的updateTime
+        UserProfile reloaded = new UserProfile();
+        reloaded.setUserId(1L);
+        reloaded.setScoreFingerprint("v1:new");
+        when(bulkOperations.updateOne(any(Query.class), any(Update.class))).thenAnswer(inv -> {
+            reloaded.setUpdateTime((LocalDateTime) inv.<Update>getArgument(1).getUpdateObject()
+                    .get("$set", Document.class).get("updateTime"));
+            return bulkOperations;
+        });
+        when(profileRepository.findByUserIdIn(Set.of(1L))).thenReturn(List.of(reloaded));
+
+        UserProfileService.BatchRecalculationResult result = profileService.recalculateScores(List.of(1L, 2L));
+
+        assertThat(result.updated()).isEqualTo(1);
+        assertThat(result.skipped()).isEqualTo(1);
+        assertThat(result.conflicts()).isZero();
+        ArgumentCaptor<Query> filter = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+        verify(bulkOperations, times(1)).updateOne(filter.capture(), update.capture());
+        assertThat(filter.getValue().getQueryObject())
+                .isEqualTo(new Document("userId", 1L).append("updateTime", readTime));
+        assertThat(update.getValue().getUpdateObject().get("$set", Document.class).get("profileScore"))
+                .isEqualTo(77.0);
+        verify(bulkOperations, times(1)).execute();
+        verify(profileCache).evictAll(List.of(1L));
+        verify(profileCache, never()).putAll(any(), anyBoolean());
+        ArgumentCaptor<ProfileChangedEvent> event = ArgumentCaptor.forClass(ProfileChangedEvent.class);
+        verify(eventPublisher).publishEvent(event.capture());
+        assertThat(event.getValue().getProfile()).isSameAs(reloaded);
+        verify(profileRepository, never()).save(any());
+    }
+
+    @Test
+    @DisplayName("批量重算评分 - 读取后被并发更新的画像不覆盖，计为冲突，不失效缓存也不发布变更")
+    void recalculateScores_ConcurrentUpdateReportedAsConflict() {
+        testProfile.setUpdateTime(LocalDateTime.of(2024, 1, 1, 8, 0));
+        when(profileRepository.findByUserIdIn(List.of(1L))).thenReturn(List.of(testProfile));
+        when(calculationEngine.scoreFingerprint(testProfile)).thenReturn("v1:stale");
+        when(calculationEngine.calculateProfileScore(testProfile)).thenReturn(40.0);
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, UserProfile.class)).thenReturn(bulkOperations);
+        when(cacheManager.getCache("userProfiles")).thenReturn(profileCache);
+        // 并发的画像更新在读取之后写入了新的输入和评分，条件写入未匹配
+        UserProfile concurrent = new UserProfile();
+        concurrent.setUserId(1L);
+        concurrent.setScoreFingerprint("v1:fresh");
+        concurrent.setUpdateTime(LocalDateTime.of(2024, 1, 1, 8, 1));
+        when(profileRepository.findByUserIdIn(Set.of(1L))).thenReturn(List.of(concurrent));
+
+        UserProfileService.BatchRecalculationResult result = profileService.recalculateScores(List.of(1L));
+
+        assertThat(result.updated()).isZero();
+        assertThat(result.conflicts()).isEqualTo(1);
+        verify(profileCache).evictAll(List.of());
+        verify(eventPublisher, never()).publishEvent(any());
+    }
+
     @Test
     @DisplayName("创建画像 - 所有字段完整映射")
     void createOrUpdateProfile_AllFields_Complete() {
@@ -384,4 +482,52 @@ class UserProfileServiceTest {
         assertThat(saved.getDigitalBehavior()).isNull();
         assertThat(saved.getCoreNeeds()).isNull();
     }
+
+    @Test
+    @DisplayName("批量获取画像 - 缓存命中部分不回源，未命中部分一次查询并回填")
+    void getProfiles_CacheThenBatchQuery() {
+        ReflectionTestUtils.setField(profileService, "batchMaxSize", 500);
+        UserProfile cached = new UserProfile();
+        cached.setUserId(2L);
+        when(cacheManager.getCache("userProfiles")).thenReturn(profileCache);
+        when(profileCache.getAll(List.of(1L, 2L, 3L))).thenReturn(Map.of(2L, cached));
+        when(profileRepository.findByUserIdIn(List.of(1L, 3L))).thenReturn(List.of(testProfile));
+
+        List<UserProfile> result = profileService.getProfiles(List.of(1L, 2L, 3L, 2L), null);
+
+        assertThat(result).extracting(UserProfile::getUserId).containsExactly(1L, 2L);
+        verify(profileCache).putAll(Map.of(1L, testProfile), true);
+        verify(profileRepository, never()).findByUserId(anyLong());
+    }
+
+    @Test
+    @DisplayName("批量获取画像 - 按字段裁剪且不修改缓存对象")
+    void getProfiles_FieldProjection() {
+        ReflectionTestUtils.setField(profileService, "batchMaxSize", 500);
+        when(cacheManager.getCache("userProfiles")).thenReturn(profileCache);
+        when(profileCache.getAll(List.of(1L))).thenReturn(Map.of(1L, testProfile));
+
+        List<UserProfile> result = profileService.getProfiles(List.of(1L), List.of("profileScore"));
+
+        assertThat(result.get(0).getProfileScore()).isEqualTo(85.5);
+        assertThat(result.get(0).getUsername()).isEqualTo("testuser");
+        assertThat(result.get(0).getDigitalBehavior()).isNull();
+        assertThat(testProfile.getDigitalBehavior()).isNotNull();
+    }
+
+    @Test
+    @DisplayName("批量获取画像 - 用户ID列表为空、超过上限或字段非法时拒绝")
+    void getProfiles_InvalidRequest() {
+        ReflectionTestUtils.setField(profileService, "batchMaxSize", 2);
+
+        assertThatThrownBy(() -> profileService.getProfiles(null, null))
+                .isInstanceOf(BusinessException.class);
+        assertThatThrownBy(() -> profileService.recalculateScoresBatch(null))
+                .isInstanceOf(BusinessException.class);
+        assertThatThrownBy(() -> profileService.getProfiles(List.of(1L, 2L, 3L), null))
+                .isInstanceOf(BusinessException.class);
+        assertThatThrownBy(() -> profileService.getProfiles(List.of(1L), List.of("password")))
+                .isInstanceOf(BusinessException.class)
+                .hasMessageContaining("password");
+    }
 }